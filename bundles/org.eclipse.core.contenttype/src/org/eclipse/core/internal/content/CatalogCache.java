@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.content;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.zip.CRC32;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.content.IContentType;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Keeps the content types read from the extension registry in a file of this
+ * bundle's data area, so the next session can create them without reading the
+ * registry. The configuration elements of the content types are only looked up
+ * when their describers are needed.
+ * <p>
+ * The cache is only used if the installed bundles, the manifests of the bundles
+ * contributing content types and the locale have not changed since it was written. It is disabled by default, and enabled by setting the system property
+ * {@link #PROP_CATALOG_CACHE} to <code>true</code>.
+ * </p>
+ */
+public final class CatalogCache {
+	/**
+	 * System property enabling the catalog cache.
+	 */
+	static final String PROP_CATALOG_CACHE = "org.eclipse.core.contenttype.catalogCache"; //$NON-NLS-1$
+
+	private static final String CACHE_FILE = "catalog.cache"; //$NON-NLS-1$
+	private static final int CACHE_VERSION = 1;
+
+	private final File file;
+
+	/**
+	 * Returns the catalog cache, or <code>null</code> if it is disabled or this
+	 * bundle has no data area.
+	 */
+	static CatalogCache getDefault() {
+		if (!Boolean.getBoolean(PROP_CATALOG_CACHE))
+			return null;
+		BundleContext context = Activator.getContext();
+		File file = context == null ? null : context.getDataFile(CACHE_FILE);
+		return file == null ? null : new CatalogCache(file);
+	}
+
+	/**
+	 * Public for tests only, should not be called by anyone else.
+	 */
+	public CatalogCache(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Returns a checksum of everything the content types read from the extension
+	 * registry depend on: the installed bundles, the content type extensions and
+	 * the manifests they are read from, and the locale their names are translated to.
+	 * A bundle's modification time alone is not enough, as the manifest of a
+	 * bundle installed from a directory may change without the bundle being updated.
+	 */
+	private static long computeStamp() {
+		CRC32 checksum = new CRC32();
+		BundleContext context = Activator.getContext();
+		Bundle[] bundles = context == null ? new Bundle[0] : context.getBundles();
+		for (int i = 0; i < bundles.length; i++) {
+			update(checksum, bundles[i].getBundleId());
+			update(checksum, bundles[i].getLastModified());
+			update(checksum, (bundles[i].getState() & (Bundle.INSTALLED | Bundle.UNINSTALLED)) == 0 ? 1 : 0);
+		}
+		IExtensionRegistry registry = RegistryFactory.getRegistry();
+		if (registry != null) {
+			// sorted, so that the checksum does not depend on the order of the extensions
+			Map contributors = new TreeMap();
+			IExtensionPoint oldPoint = registry.getExtensionPoint(IContentConstants.RUNTIME_NAME, ContentTypeBuilder.PT_CONTENTTYPES);
+			update(checksum, oldPoint == null ? -1 : oldPoint.getExtensions().length);
+			addContributors(oldPoint, contributors);
+			IExtensionPoint newPoint = registry.getExtensionPoint(IContentConstants.CONTENT_NAME, ContentTypeBuilder.PT_CONTENTTYPES);
+			update(checksum, newPoint == null ? -1 : newPoint.getExtensions().length);
+			addContributors(newPoint, contributors);
+			for (Iterator i = contributors.entrySet().iterator(); i.hasNext();) {
+				Map.Entry contributor = (Map.Entry) i.next();
+				update(checksum, (String) contributor.getKey());
+				update(checksum, ((Long) contributor.getValue()).longValue());
+			}
+		}
+		// the framework sets the default locale from the -nl argument
+		update(checksum, Locale.getDefault().toString());
+		return (checksum.getValue() << 32) | bundles.length;
+	}
+
+	/**
+	 * Adds the contributors of the extensions of the given extension point to
+	 * the given map, with the time their manifest was last modified.
+	 */
+	private static void addContributors(IExtensionPoint point, Map contributors) {
+		if (point == null)
+			return;
+		IExtension[] extensions = point.getExtensions();
+		for (int i = 0; i < extensions.length; i++) {
+			IContributor contributor = extensions[i].getContributor();
+			if (!contributors.containsKey(contributor.getName()))
+				contributors.put(contributor.getName(), new Long(getManifestTimestamp(contributor)));
+		}
+	}
+
+	/**
+	 * Returns the time the plug-in or fragment manifest of the given contributor
+	 * was last modified, or <code>-1</code> if it is not known.
+	 */
+	private static long getManifestTimestamp(IContributor contributor) {
+		Bundle bundle = ContributorFactoryOSGi.resolve(contributor);
+		if (bundle == null)
+			return -1;
+		URL manifest = bundle.getEntry("plugin.xml"); //$NON-NLS-1$
+		if (manifest == null)
+			manifest = bundle.getEntry("fragment.xml"); //$NON-NLS-1$
+		if (manifest == null)
+			return -1;
+		try {
+			return manifest.openConnection().getLastModified();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private static void update(CRC32 checksum, long value) {
+		for (int shift = 0; shift < 64; shift += 8)
+			checksum.update((int) (value >>> shift));
+	}
+
+	private static void update(CRC32 checksum, String value) {
+		for (int i = 0; i < value.length(); i++)
+			update(checksum, value.charAt(i));
+	}
+
+	/**
+	 * Adds the content types of the cache to the given catalog, if the cache is
+	 * valid. Returns <code>false</code> otherwise, leaving the catalog untouched.
+	 * Public for tests only, should not be called by anyone else.
+	 */
+	public boolean load(ContentTypeCatalog catalog) {
+		if (!file.isFile())
+			return false;
+		List loaded = new ArrayList();
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (input.readInt() != CACHE_VERSION || input.readLong() != computeStamp())
+				return false;
+			for (int count = input.readInt(); count > 0; count--)
+				loaded.add(readContentType(input, catalog));
+		} catch (IOException e) {
+			if (ContentTypeManager.DEBUGGING)
+				ContentMessages.message("Could not read the catalog cache: " + e); //$NON-NLS-1$
+			return false;
+		} finally {
+			if (input != null)
+				try {
+					input.close();
+				} catch (IOException e) {
+					// ignore
+				}
+		}
+		for (Iterator i = loaded.iterator(); i.hasNext();)
+			catalog.addContentType((ContentType) i.next());
+		catalog.setCached();
+		return true;
+	}
+
+	/**
+	 * Writes the content types of the given catalog, as read from the extension
+	 * registry. Public for tests only, should not be called by anyone else.
+	 */
+	public void save(ContentTypeCatalog catalog) {
+		File tmpFile = new File(file.getParentFile(), CACHE_FILE + ".tmp"); //$NON-NLS-1$
+		DataOutputStream output = null;
+		try {
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			output.writeInt(CACHE_VERSION);
+			output.writeLong(computeStamp());
+			ContentType[] types = catalog.internalGetContentTypes();
+			output.writeInt(types.length);
+			for (int i = 0; i < types.length; i++)
+				writeContentType(output, types[i]);
+			output.close();
+			output = null;
+			// replace the previous cache only once the new one is complete
+			file.delete();
+			if (!tmpFile.renameTo(file))
+				tmpFile.delete();
+		} catch (IOException e) {
+			if (ContentTypeManager.DEBUGGING)
+				ContentMessages.message("Could not write the catalog cache: " + e); //$NON-NLS-1$
+		} catch (InvalidRegistryObjectException e) {
+			// the registry changed while writing, the next catalog will be written instead
+		} finally {
+			if (output != null) {
+				try {
+					output.close();
+				} catch (IOException e) {
+					// ignore
+				}
+				tmpFile.delete();
+			}
+		}
+	}
+
+	private static ContentType readContentType(DataInputStream input, ContentTypeCatalog catalog) throws IOException {
+		String id = input.readUTF();
+		String name = input.readUTF();
+		byte priority = input.readByte();
+		String baseTypeId = readString(input);
+		String aliasTargetId = readString(input);
+		boolean builtInAssociations = input.readBoolean();
+		boolean definesDescriber = input.readBoolean();
+		Map defaultProperties = null;
+		int propertyCount = input.readInt();
+		if (propertyCount > 0) {
+			defaultProperties = new HashMap();
+			for (int i = 0; i < propertyCount; i++)
+				defaultProperties.put(new QualifiedName(readString(input), input.readUTF()), input.readUTF());
+		}
+		ContentType contentType = ContentType.createContentType(catalog, id, name, priority, null, null, baseTypeId, aliasTargetId, defaultProperties, null);
+		contentType.setCachedDefinition(builtInAssociations, definesDescriber);
+		for (int count = input.readInt(); count > 0; count--)
+			contentType.internalAddFileSpec(input.readUTF(), IContentType.FILE_NAME_SPEC | ContentType.SPEC_PRE_DEFINED);
+		for (int count = input.readInt(); count > 0; count--)
+			contentType.internalAddFileSpec(input.readUTF(), IContentType.FILE_EXTENSION_SPEC | ContentType.SPEC_PRE_DEFINED);
+		return contentType;
+	}
+
+	private static void writeContentType(DataOutputStream output, ContentType contentType) throws IOException {
+		output.writeUTF(contentType.getId());
+		output.writeUTF(contentType.getName());
+		output.writeByte(contentType.getPriority());
+		writeString(output, contentType.getBaseTypeId());
+		writeString(output, contentType.getAliasTargetId());
+		output.writeBoolean(contentType.hasBuiltInAssociations());
+		output.writeBoolean(contentType.definesDescriber());
+		Map defaultProperties = contentType.getDefaultProperties();
+		output.writeInt(defaultProperties == null ? 0 : defaultProperties.size());
+		if (defaultProperties != null)
+			for (Iterator i = defaultProperties.entrySet().iterator(); i.hasNext();) {
+				Map.Entry entry = (Map.Entry) i.next();
+				QualifiedName key = (QualifiedName) entry.getKey();
+				writeString(output, key.getQualifier());
+				output.writeUTF(key.getLocalName());
+				output.writeUTF((String) entry.getValue());
+			}
+		writeStrings(output, contentType.getFileSpecs(IContentType.FILE_NAME_SPEC | IContentType.IGNORE_USER_DEFINED));
+		writeStrings(output, contentType.getFileSpecs(IContentType.FILE_EXTENSION_SPEC | IContentType.IGNORE_USER_DEFINED));
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		return input.readBoolean() ? input.readUTF() : null;
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		output.writeBoolean(value != null);
+		if (value != null)
+			output.writeUTF(value);
+	}
+
+	private static void writeStrings(DataOutputStream output, String[] values) throws IOException {
+		output.writeInt(values.length);
+		for (int i = 0; i < values.length; i++)
+			output.writeUTF(values[i]);
+	}
+}
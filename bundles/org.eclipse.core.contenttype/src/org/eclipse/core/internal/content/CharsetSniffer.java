@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import org.eclipse.core.runtime.content.IContentDescription;
+
+/**
+ * Reads the byte order mark and the XML declaration at the beginning of some
+ * contents, working on their bytes. The first describer needing them sniffs
+ * the contents, and the result is kept in the properties shared by all
+ * describers evaluated on the same contents. The XML declaration is only
+ * decoded when asked for.
+ */
+public final class CharsetSniffer {
+	private static final String PROPERTY = "org.eclipse.core.internal.content.CharsetSniffer"; //$NON-NLS-1$
+	private static final String XML_DECL_END = "?>"; //$NON-NLS-1$
+	// the longest XML declaration looked for, in characters
+	private static final int XML_DECL_SIZE = 50;
+	// a BOM followed by the longest XML declaration, in bytes
+	private static final int SNIFF_SIZE = 3 + XML_DECL_SIZE * 4;
+
+	private final byte[] bom;
+	private final byte[] header;
+	private final int headerLength;
+	private String xmlDecl;
+
+	/**
+	 * Returns the sniffer for the given contents, sniffing them if no describer
+	 * has done so yet. The contents are reset afterwards.
+	 */
+	public static CharsetSniffer sniff(InputStream contents, Map properties) throws IOException {
+		CharsetSniffer sniffer = (CharsetSniffer) properties.get(PROPERTY);
+		if (sniffer == null) {
+			sniffer = new CharsetSniffer(contents);
+			properties.put(PROPERTY, sniffer);
+		}
+		return sniffer;
+	}
+
+	private CharsetSniffer(InputStream contents) throws IOException {
+		header = new byte[SNIFF_SIZE];
+		int read = 0;
+		for (int count; read < header.length && (count = contents.read(header, read, header.length - read)) != -1;)
+			read += count;
+		headerLength = read;
+		contents.reset();
+		bom = findByteOrderMark();
+	}
+
+	private byte[] findByteOrderMark() {
+		if (headerLength >= 3 && header[0] == (byte) 0xEF && header[1] == (byte) 0xBB && header[2] == (byte) 0xBF)
+			return IContentDescription.BOM_UTF_8;
+		if (headerLength >= 2 && header[0] == (byte) 0xFE && header[1] == (byte) 0xFF)
+			return IContentDescription.BOM_UTF_16BE;
+		if (headerLength >= 2 && header[0] == (byte) 0xFF && header[1] == (byte) 0xFE)
+			return IContentDescription.BOM_UTF_16LE;
+		return null;
+	}
+
+	/**
+	 * Returns the byte order mark of the contents, or <code>null</code> if they
+	 * have none.
+	 */
+	public byte[] getByteOrderMark() {
+		return bom;
+	}
+
+	/**
+	 * Returns the beginning of the contents following the byte order mark, up
+	 * to the end of the XML declaration if there is one. The contents are
+	 * decoded with the encoding given by the byte order mark, UTF-8 by default.
+	 */
+	public String getXMLDeclaration() throws UnsupportedEncodingException {
+		if (xmlDecl == null)
+			xmlDecl = readXMLDecl();
+		return xmlDecl;
+	}
+
+	private String readXMLDecl() throws UnsupportedEncodingException {
+		String encoding = "UTF-8"; //$NON-NLS-1$
+		if (bom == IContentDescription.BOM_UTF_16BE)
+			encoding = "UTF-16BE"; //$NON-NLS-1$
+		else if (bom == IContentDescription.BOM_UTF_16LE)
+			encoding = "UTF-16LE"; //$NON-NLS-1$
+		byte[] xmlDeclEndBytes = XML_DECL_END.getBytes(encoding);
+		int start = bom == null ? 0 : bom.length;
+		int end = Math.min(headerLength, start + XML_DECL_SIZE * xmlDeclEndBytes.length);
+		// count is incremented when subsequent bytes match the xmlDeclEnd bytes,
+		// the end of xmlDecl is reached when count equals the xmlDeclEnd length
+		int count = 0;
+		int i = start;
+		while (i < end) {
+			if (header[i++] == xmlDeclEndBytes[count])
+				count++;
+			else
+				count = 0;
+			if (count == xmlDeclEndBytes.length)
+				break;
+		}
+		return new String(header, start, i - start, encoding);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2009 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,7 +17,6 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.content.*;
 import org.eclipse.core.runtime.preferences.IScopeContext;
 import org.eclipse.osgi.util.NLS;
-import org.osgi.service.prefs.BackingStoreException;
 import org.osgi.service.prefs.Preferences;
 
 /**
@@ -67,6 +66,8 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 	private DefaultDescription defaultDescription;
 	private Map defaultProperties;
 	private Object describer;
+	// for content types read from the catalog cache: whether the configuration element, not looked up yet, defines a describer
+	private boolean describerElementPending;
 	// we need a Cloneable list
 	private ArrayList fileSpecs = EMPTY_LIST;
 	String id;
@@ -79,6 +80,10 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 	private ContentType baseType;
 	// -1 means unknown
 	private byte depth = -1;
+	// the position of this content type in a depth-first numbering of the valid content
+	// types of its catalog, and the last position of its sub-types (-1 if not numbered)
+	private int hierarchyIndex = -1;
+	private int lastSubtypeIndex = -1;
 
 	public static ContentType createContentType(ContentTypeCatalog catalog, String uniqueId, String name, byte priority, String[] fileExtensions, String[] fileNames, String baseTypeId, String aliasTargetId, Map defaultProperties, IConfigurationElement contentTypeElement) {
 		ContentType contentType = new ContentType(catalog.getManager());
@@ -145,20 +150,92 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 		// we are adding stuff, newValue must be non-null
 		Assert.isNotNull(newValue);
 		setPreference(contentTypeNode, getPreferenceKey(type), newValue);
-		try {
-			contentTypeNode.flush();
-		} catch (BackingStoreException bse) {
-			String message = NLS.bind(ContentMessages.content_errorSavingSettings, id);
-			IStatus status = new Status(IStatus.ERROR, ContentMessages.OWNER_NAME, 0, message, bse);
-			throw new CoreException(status);
-		}
+		manager.flushSettings(contentTypeNode, id);
 		// notify listeners
-		manager.fireContentTypeChangeEvent(this);
+		manager.contentTypeChanged(this);
+	}
+
+	/**
+	 * Returns whether the definition of this content type has a describer, even
+	 * an empty one.
+	 */
+	boolean definesDescriber() {
+		if (contentTypeElement == null)
+			return describerElementPending;
+		return contentTypeElement.getAttributeAsIs(DESCRIBER_ELEMENT) != null || contentTypeElement.getChildren(DESCRIBER_ELEMENT).length > 0;
+	}
+
+	/**
+	 * Returns a copy of this content type for a new catalog, with the file specs
+	 * defined in the extension registry. Neither the user settings nor what is
+	 * computed when the catalog is organized are copied.
+	 */
+	ContentType copy(ContentTypeCatalog newCatalog) {
+		ContentType copy = new ContentType(manager);
+		copy.catalog = newCatalog;
+		copy.defaultDescription = new DefaultDescription(copy);
+		copy.id = id;
+		copy.name = name;
+		copy.priority = priority;
+		copy.builtInAssociations = builtInAssociations;
+		List currentFileSpecs = fileSpecs;
+		for (Iterator i = currentFileSpecs.iterator(); i.hasNext();) {
+			FileSpec spec = (FileSpec) i.next();
+			if ((spec.getType() & SPEC_PRE_DEFINED) != 0)
+				copy.internalAddFileSpec(spec.getText(), spec.getType());
+		}
+		copy.defaultProperties = defaultProperties;
+		copy.contentTypeElement = contentTypeElement;
+		copy.baseTypeId = baseTypeId;
+		copy.aliasTargetId = aliasTargetId;
+		copy.describerElementPending = describerElementPending;
+		copy.reuseDescriber(this);
+		return copy;
 	}
 
-	int describe(IContentDescriber selectedDescriber, ILazySource contents, ContentDescription description) throws IOException {
+	/**
+	 * Describes the given contents. The properties are shared by the XML and binary
+	 * signature describers so that the contents are parsed only once, even if several
+	 * describers or several content types look at them. The description is
+	 * <code>null</code> when looking for the content types of the contents.
+	 */
+	int describe(IContentDescriber selectedDescriber, ILazySource contents, ContentDescription description, Map properties) throws IOException {
+		if (!DescriberStats.isEnabled())
+			return internalDescribe(selectedDescriber, contents, description, properties);
+		long start = System.currentTimeMillis();
+		if (description != null) {
+			// describing the contents is not part of finding their content type
+			int result = internalDescribe(selectedDescriber, contents, description, properties);
+			DescriberStats.getStats(this).descriptionCalled(selectedDescriber, System.currentTimeMillis() - start);
+			return result;
+		}
+		ILazySource metered = DescriberStats.meter(contents);
+		int result = internalDescribe(selectedDescriber, metered, description, properties);
+		DescriberStats.getStats(this).describerCalled(selectedDescriber, result, System.currentTimeMillis() - start, DescriberStats.getRead(metered));
+		return result;
+	}
+
+	private int internalDescribe(IContentDescriber selectedDescriber, ILazySource contents, ContentDescription description, Map properties) throws IOException {
 		try {
-			return contents.isText() ? ((ITextContentDescriber) selectedDescriber).describe((Reader) contents, description) : selectedDescriber.describe((InputStream) contents, description);
+			if (contents.isText()) {
+				if (selectedDescriber instanceof XMLRootElementContentDescriber2)
+					return ((XMLRootElementContentDescriber2) selectedDescriber).describe((Reader) contents, description, properties);
+				if (selectedDescriber instanceof XMLRootElementContentDescriber)
+					return ((XMLRootElementContentDescriber) selectedDescriber).describe((Reader) contents, description, properties);
+				return ((ITextContentDescriber) selectedDescriber).describe((Reader) contents, description);
+			}
+			if (selectedDescriber instanceof XMLRootElementContentDescriber2)
+				return ((XMLRootElementContentDescriber2) selectedDescriber).describe((InputStream) contents, description, properties);
+			if (selectedDescriber instanceof XMLRootElementContentDescriber)
+				return ((XMLRootElementContentDescriber) selectedDescriber).describe((InputStream) contents, description, properties);
+			// subclasses may override describe(InputStream, IContentDescription), only the
+			// describers known not to do so can share the properties
+			Class describerClass = selectedDescriber.getClass();
+			if (describerClass == TextContentDescriber.class || describerClass == org.eclipse.core.runtime.content.XMLContentDescriber.class)
+				return ((TextContentDescriber) selectedDescriber).describe((InputStream) contents, description, properties);
+			if (selectedDescriber instanceof BinarySignatureDescriber)
+				return ((BinarySignatureDescriber) selectedDescriber).describe((InputStream) contents, description, properties);
+			return selectedDescriber.describe((InputStream) contents, description);
 		} catch (RuntimeException re) {
 			// describer seems to be buggy. just disable it (logging the reason)
 			invalidateDescriber(re);
@@ -215,6 +292,14 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 		return this;
 	}
 
+	IConfigurationElement getContentTypeElement() {
+		return contentTypeElement;
+	}
+
+	Map getDefaultProperties() {
+		return defaultProperties;
+	}
+
 	/**
 	 * @see IContentType
 	 */
@@ -239,7 +324,11 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 		return propertyValue;
 	}
 
-	byte getDepth() {
+	/**
+	 * Returns the number of base types above this content type. Public for
+	 * tests only, should not be called by anyone else.
+	 */
+	public byte getDepth() {
 		byte tmpDepth = depth;
 		if (tmpDepth >= 0)
 			return tmpDepth;
@@ -261,8 +350,13 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 					return baseType.getDescriber();
 				return (NO_DESCRIBER == tmpDescriber) ? null : (IContentDescriber) tmpDescriber;
 			}
-			final String describerValue = contentTypeElement.getAttributeAsIs(DESCRIBER_ELEMENT);
-			if (describerValue != null || contentTypeElement.getChildren(DESCRIBER_ELEMENT).length > 0)
+			if (describerElementPending) {
+				// read from the catalog cache, the configuration element is only needed now
+				contentTypeElement = catalog.findContentTypeElement(id);
+				describerElementPending = false;
+			}
+			final String describerValue = contentTypeElement == null ? null : contentTypeElement.getAttributeAsIs(DESCRIBER_ELEMENT);
+			if (describerValue != null || (contentTypeElement != null && contentTypeElement.getChildren(DESCRIBER_ELEMENT).length > 0))
 				try {
 					if ("".equals(describerValue)) { //$NON-NLS-1$
 						describer = NO_DESCRIBER;
@@ -299,14 +393,14 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 	 * @see IContentType
 	 */
 	public IContentDescription getDescriptionFor(InputStream contents, QualifiedName[] options) throws IOException {
-		return internalGetDescriptionFor(ContentTypeManager.readBuffer(contents), options);
+		return internalGetDescriptionFor(ContentTypeManager.readBuffer(contents), options, new HashMap());
 	}
 
 	/**
 	 * @see IContentType
 	 */
 	public IContentDescription getDescriptionFor(Reader contents, QualifiedName[] options) throws IOException {
-		return internalGetDescriptionFor(ContentTypeManager.readBuffer(contents), options);
+		return internalGetDescriptionFor(ContentTypeManager.readBuffer(contents), options, new HashMap());
 	}
 
 	/**
@@ -416,9 +510,10 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 		// update file specs atomically so threads traversing the list of file specs don't have to synchronize		
 		ArrayList tmpFileSpecs = (ArrayList) fileSpecs.clone();
 		tmpFileSpecs.add(newFileSpec);
-		catalog.associate(this, newFileSpec.getText(), newFileSpec.getType());
 		// set the new file specs atomically 
 		fileSpecs = tmpFileSpecs;
+		// the catalog must see the new file specs when it compiles them again
+		catalog.associate(this, newFileSpec.getText(), newFileSpec.getType());
 		return true;
 	}
 
@@ -443,7 +538,11 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 		return defaultProperties == null ? null : (String) defaultProperties.get(key);
 	}
 
-	BasicDescription internalGetDescriptionFor(ILazySource buffer, QualifiedName[] options) throws IOException {
+	/**
+	 * Returns the description for the given contents. The properties may already 
+	 * hold what describers found in the contents when the content type was selected.
+	 */
+	BasicDescription internalGetDescriptionFor(ILazySource buffer, QualifiedName[] options, Map properties) throws IOException {
 		if (buffer == null)
 			return defaultDescription;
 		// use temporary local var to avoid sync'ing
@@ -455,7 +554,7 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 			// it is an error to provide a Reader to a non-text content type
 			throw new UnsupportedOperationException();
 		ContentDescription description = new ContentDescription(options, this);
-		if (describe(tmpDescriber, buffer, description) == IContentDescriber.INVALID)
+		if (describe(tmpDescriber, buffer, description, properties) == IContentDescriber.INVALID)
 			// the contents were actually invalid for the content type
 			return null;
 		// the describer didn't add any details, return default description
@@ -487,9 +586,10 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 			FileSpec spec = (FileSpec) i.next();
 			if ((spec.getType() == typeMask) && fileSpec.equals(spec.getText())) {
 				i.remove();
-				catalog.dissociate(this, spec.getText(), spec.getType());
 				// update the list of file specs
 				fileSpecs = tmpFileSpecs;
+				// the catalog must see the new file specs when it compiles them again
+				catalog.dissociate(this, spec.getText(), spec.getType());
 				return true;
 			}
 		}
@@ -499,6 +599,8 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 	public IContentDescriber invalidateDescriber(Throwable reason) {
 		String message = NLS.bind(ContentMessages.content_invalidContentDescriber, id);
 		log(message, reason);
+		if (DescriberStats.isEnabled())
+			DescriberStats.getStats(this).describerInvalidated(reason);
 		return (IContentDescriber) (describer = new InvalidDescriber());
 	}
 
@@ -528,6 +630,12 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 			return false;
 		if (this == another)
 			return true;
+		if (hierarchyIndex >= 0 && another instanceof ContentType) {
+			ContentType other = (ContentType) another;
+			if (other.catalog == catalog && other.hierarchyIndex >= 0)
+				// sub-types are numbered right after their base type
+				return other.hierarchyIndex < hierarchyIndex && hierarchyIndex <= other.lastSubtypeIndex;
+		}
 		return baseType != null && baseType.isKindOf(another);
 	}
 
@@ -565,15 +673,29 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 		String preferenceKey = getPreferenceKey(type);
 		String newValue = Util.toListString(userSet);
 		setPreference(contentTypeNode, preferenceKey, newValue);
-		try {
-			contentTypeNode.flush();
-		} catch (BackingStoreException bse) {
-			String message = NLS.bind(ContentMessages.content_errorSavingSettings, id);
-			IStatus status = new Status(IStatus.ERROR, ContentMessages.OWNER_NAME, 0, message, bse);
-			throw new CoreException(status);
-		}
+		manager.flushSettings(contentTypeNode, id);
 		// notify listeners		
-		manager.fireContentTypeChangeEvent(this);
+		manager.contentTypeChanged(this);
+	}
+
+	/**
+	 * Shares the describer of a content type with the same definition in a
+	 * previous catalog, if it was created. Whether the describer is inherited
+	 * depends on the base type, so it is found again in that case.
+	 */
+	void reuseDescriber(ContentType previous) {
+		Object previousDescriber = previous.describer;
+		// a describer disabled after a failure is created again, as on a full rebuild
+		if (previousDescriber instanceof IContentDescriber && !(previousDescriber instanceof InvalidDescriber))
+			describer = previousDescriber;
+	}
+
+	/**
+	 * Completes the definition of a content type read from the catalog cache.
+	 */
+	void setCachedDefinition(boolean hasBuiltInAssociations, boolean definesDescriber) {
+		builtInAssociations = hasBuiltInAssociations;
+		describerElementPending = definesDescriber;
 	}
 
 	void setAliasTarget(ContentType newTarget) {
@@ -597,15 +719,9 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 		// persist the change
 		Preferences contentTypeNode = manager.getPreferences().node(id);
 		setPreference(contentTypeNode, PREF_DEFAULT_CHARSET, userCharset);
-		try {
-			contentTypeNode.flush();
-		} catch (BackingStoreException bse) {
-			String message = NLS.bind(ContentMessages.content_errorSavingSettings, id);
-			IStatus status = new Status(IStatus.ERROR, ContentMessages.OWNER_NAME, 0, message, bse);
-			throw new CoreException(status);
-		}
+		manager.flushSettings(contentTypeNode, id);
 		// notify listeners
-		manager.fireContentTypeChangeEvent(this);
+		manager.contentTypeChanged(this);
 	}
 
 	static void setPreference(Preferences node, String key, String value) {
@@ -625,6 +741,16 @@ public final class ContentType implements IContentType, IContentTypeInfo {
 		return id;
 	}
 
+	/**
+	 * Sets the position of this content type in the numbering of the hierarchy
+	 * of its catalog, the last position of its sub-types, and its depth.
+	 */
+	void setHierarchyIndex(int index, int lastSubtype, int newDepth) {
+		hierarchyIndex = index;
+		lastSubtypeIndex = lastSubtype;
+		depth = (byte) newDepth;
+	}
+
 	void setBaseType(ContentType baseType) {
 		this.baseType = baseType;
 	}
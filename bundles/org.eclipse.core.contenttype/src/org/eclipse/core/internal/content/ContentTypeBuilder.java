@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2009 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -26,17 +26,37 @@ import org.osgi.service.prefs.BackingStoreException;
  *  is oblivious to).
  */
 public class ContentTypeBuilder {
+	/**
+	 * A file association read from the extension registry. The identifier of the
+	 * content type is kept, as the element cannot be read once its extension
+	 * has been removed.
+	 */
+	static final class FileAssociation {
+		final String contentTypeId;
+		final IConfigurationElement element;
+
+		FileAssociation(String contentTypeId, IConfigurationElement element) {
+			this.contentTypeId = contentTypeId;
+			this.element = element;
+		}
+	}
+
 	public static final String PT_CONTENTTYPES = "contentTypes"; //$NON-NLS-1$	
 	private ContentTypeCatalog catalog;
 
-	private static String getUniqueId(String namespace, String baseTypeId) {
-		if (baseTypeId == null)
+	/**
+	 * Returns the unique identifier of a content type referred to by the given
+	 * identifier, which is simple if the content type is defined in the given
+	 * namespace.
+	 */
+	private static String getUniqueId(String namespace, String contentTypeId) {
+		if (contentTypeId == null)
 			return null;
-		int separatorPosition = baseTypeId.lastIndexOf('.');
-		// base type is defined in the same namespace
+		int separatorPosition = contentTypeId.lastIndexOf('.');
+		// content type is defined in the same namespace
 		if (separatorPosition == -1)
-			baseTypeId = namespace + '.' + baseTypeId;
-		return baseTypeId;
+			contentTypeId = namespace + '.' + contentTypeId;
+		return contentTypeId;
 	}
 
 	private static QualifiedName parseQualifiedName(String namespace, String value) {
@@ -67,7 +87,10 @@ public class ContentTypeBuilder {
 		return ContentType.PRIORITY_NORMAL;
 	}
 
-	protected ContentTypeBuilder(ContentTypeCatalog catalog) {
+	/**
+	 * Public for tests only, should not be called by anyone else.
+	 */
+	public ContentTypeBuilder(ContentTypeCatalog catalog) {
 		this.catalog = catalog;
 	}
 
@@ -94,6 +117,74 @@ public class ContentTypeBuilder {
 		applyPreferences();
 	}
 
+	/**
+	 * Builds the catalog from the given cache, if it is valid for the current
+	 * extension registry. Returns <code>false</code> otherwise, leaving the
+	 * catalog empty.
+	 */
+	public boolean buildCatalog(CatalogCache cache) {
+		if (!cache.load(catalog))
+			return false;
+		applyPreferences();
+		return true;
+	}
+
+	/**
+	 * Builds the catalog from the content types of a previous catalog, only reading
+	 * the extensions added since. The content types and file associations of removed
+	 * extensions are dropped, and the content types that lost file associations are
+	 * created again from their definition. Other content types are copied, keeping
+	 * the describers already created.
+	 */
+	public void buildCatalog(ContentTypeCatalog previous, IExtension[] addedExtensions) {
+		// content types needing their file associations to be applied again
+		Set recreated = new HashSet();
+		FileAssociation[] previousAssociations = previous.internalGetFileAssociations();
+		List validAssociations = new ArrayList(previousAssociations.length);
+		for (int i = 0; i < previousAssociations.length; i++)
+			if (previousAssociations[i].element.isValid()) {
+				validAssociations.add(previousAssociations[i]);
+				catalog.addFileAssociation(previousAssociations[i]);
+			} else
+				recreated.add(previousAssociations[i].contentTypeId);
+		ContentType[] previousTypes = previous.internalGetContentTypes();
+		for (int i = 0; i < previousTypes.length; i++) {
+			IConfigurationElement contentTypeCE = previousTypes[i].getContentTypeElement();
+			if (contentTypeCE != null && !contentTypeCE.isValid())
+				// its extension has been removed
+				continue;
+			if (contentTypeCE == null || !recreated.contains(previousTypes[i].getId())) {
+				catalog.addContentType(previousTypes[i].copy(catalog));
+				continue;
+			}
+			ContentType contentType = registerContentType(contentTypeCE);
+			if (contentType != null)
+				contentType.reuseDescriber(previousTypes[i]);
+		}
+		List addedAssociationCEs = new ArrayList();
+		for (int i = 0; i < addedExtensions.length; i++) {
+			if (!addedExtensions[i].isValid())
+				// removed in the meantime
+				continue;
+			IConfigurationElement[] addedCEs = addedExtensions[i].getConfigurationElements();
+			for (int j = 0; j < addedCEs.length; j++)
+				if (addedCEs[j].getName().equals("content-type")) { //$NON-NLS-1$
+					ContentType contentType = registerContentType(addedCEs[j]);
+					if (contentType != null)
+						recreated.add(contentType.getId());
+				} else if (addedCEs[j].getName().equals("file-association")) //$NON-NLS-1$
+					addedAssociationCEs.add(addedCEs[j]);
+		}
+		for (Iterator i = validAssociations.iterator(); i.hasNext();) {
+			FileAssociation association = (FileAssociation) i.next();
+			if (recreated.contains(association.contentTypeId))
+				applyFileAssociation(association);
+		}
+		for (Iterator i = addedAssociationCEs.iterator(); i.hasNext();)
+			registerFileAssociation((IConfigurationElement) i.next());
+		applyPreferences();
+	}
+
 	/**
 	 * Applies any existing preferences to content types as a batch operation.
 	 */
@@ -127,11 +218,7 @@ public class ContentTypeBuilder {
 
 		if (simpleId == null)
 			missingMandatoryAttribute(ContentMessages.content_missingIdentifier, namespace);
-		String uniqueId;
-		if (simpleId.lastIndexOf('.') == -1)
-			uniqueId = namespace + '.' + simpleId;
-		else
-			uniqueId = simpleId;
+		String uniqueId = getUniqueId(namespace, simpleId);
 		if (name == null)
 			missingMandatoryAttribute(ContentMessages.content_missingName, uniqueId);
 
@@ -201,18 +288,38 @@ public class ContentTypeBuilder {
 		return allContentTypeCEs;
 	}
 
+	/**
+	 * Returns the configuration elements defining content types, by content type
+	 * identifier.
+	 */
+	Map getContentTypeElements() {
+		IConfigurationElement[] allContentTypeCEs = getConfigurationElements();
+		Map result = new HashMap();
+		for (int i = 0; i < allContentTypeCEs.length; i++) {
+			if (!allContentTypeCEs[i].getName().equals("content-type")) //$NON-NLS-1$
+				continue;
+			String simpleId = allContentTypeCEs[i].getAttributeAsIs("id"); //$NON-NLS-1$
+			if (simpleId == null)
+				continue;
+			result.put(getUniqueId(allContentTypeCEs[i].getContributor().getName(), simpleId), allContentTypeCEs[i]);
+		}
+		return result;
+	}
+
 	private void missingMandatoryAttribute(String messageKey, String argument) throws CoreException {
 		String message = NLS.bind(messageKey, argument);
 		throw new CoreException(new Status(IStatus.ERROR, ContentMessages.OWNER_NAME, 0, message, null));
 	}
 
-	private void registerContentType(IConfigurationElement contentTypeCE) {
+	private ContentType registerContentType(IConfigurationElement contentTypeCE) {
 		try {
 			ContentType contentType = createContentType(contentTypeCE);
 			catalog.addContentType(contentType);
+			return contentType;
 		} catch (CoreException e) {
 			// failed validation
 			RuntimeLog.log(e.getStatus());
+			return null;
 		}
 	}
 
@@ -222,9 +329,16 @@ public class ContentTypeBuilder {
 	private void registerFileAssociation(IConfigurationElement fileAssociationElement) {
 		//TODO: need to ensure the config. element is valid		
 		String contentTypeId = getUniqueId(fileAssociationElement.getContributor().getName(), fileAssociationElement.getAttribute("content-type")); //$NON-NLS-1$
-		ContentType target = catalog.internalGetContentType(contentTypeId);
+		FileAssociation association = new FileAssociation(contentTypeId, fileAssociationElement);
+		// remembered even if the content type is missing, it may be added later 
+		catalog.addFileAssociation(association);
+		applyFileAssociation(association);
+	}
+
+	private void applyFileAssociation(FileAssociation association) {
+		ContentType target = catalog.internalGetContentType(association.contentTypeId);
 		if (target == null)
 			return;
-		addFileAssociation(fileAssociationElement, target);
+		addFileAssociation(association.element, target);
 	}
 }
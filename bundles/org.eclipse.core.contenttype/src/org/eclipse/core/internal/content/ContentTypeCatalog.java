@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2010 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,18 +16,45 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.content.*;
 import org.eclipse.core.runtime.content.IContentTypeManager.ISelectionPolicy;
 import org.eclipse.core.runtime.preferences.IScopeContext;
-import org.eclipse.osgi.util.NLS;
 
 public final class ContentTypeCatalog {
 	private static final IContentType[] NO_CONTENT_TYPES = new IContentType[0];
 
 	/**
-	 * All fields are guarded by lock on "this"
+	 * All fields are only modified while holding the lock on "this". Once the catalog
+	 * is organized, the collections they refer to are never modified: writers copy them
+	 * and replace the field instead, so readers don't need to lock.
 	 */
-	private final Map allChildren = new HashMap();
-	private final Map contentTypes = new HashMap();
-	private final Map fileExtensions = new HashMap();
-	private final Map fileNames = new HashMap();
+	private volatile Map allChildren = Collections.EMPTY_MAP;
+	/**
+	 * The valid content types that are not aliases, computed when the catalog is organized.
+	 */
+	private volatile IContentType[] allContentTypes = NO_CONTENT_TYPES;
+	private volatile Map contentTypes = new HashMap();
+	private volatile Map fileExtensions = new HashMap();
+	private volatile Map fileNames = new HashMap();
+	/**
+	 * The file specs compiled for lock-free lookups, or <code>null</code> if they
+	 * need to be compiled again.
+	 */
+	private volatile FileSpecIndex fileSpecIndex;
+	/**
+	 * The descriptions of local files in the default context, or <code>null</code>
+	 * if they are not cached.
+	 */
+	private final DescriptionCache descriptionCache = new DescriptionCache();
+	/**
+	 * The file associations read from the extension registry, including those
+	 * whose content type does not exist (element type: <code>ContentTypeBuilder.FileAssociation</code>).
+	 */
+	private List fileAssociations = new ArrayList();
+	/**
+	 * Whether the content types were read from the catalog cache rather than from the
+	 * extension registry, in which case their configuration elements are looked up
+	 * on demand in this map (null until first needed).
+	 */
+	private boolean cached;
+	private Map contentTypeElements;
 	private int generation;
 	private ContentTypeManager manager;
 
@@ -137,10 +164,35 @@ public final class ContentTypeCatalog {
 		this.generation = generation;
 	}
 
-	synchronized void addContentType(IContentType contentType) {
+	/**
+	 * Adds a content type to this catalog, before it is organized. Public for
+	 * tests only, should not be called by anyone else.
+	 */
+	synchronized public void addContentType(IContentType contentType) {
 		contentTypes.put(contentType.getId(), contentType);
 	}
 
+	synchronized void addFileAssociation(ContentTypeBuilder.FileAssociation association) {
+		fileAssociations.add(association);
+	}
+
+	/**
+	 * Returns what the policy of the given matcher selects among the given
+	 * candidates. Cacheable policies are only asked once per catalog for the
+	 * same candidates.
+	 */
+	private IContentType[] applyPolicy(ContentTypeMatcher matcher, IContentType[] candidates, boolean fileName, boolean contents) {
+		IContentTypeManager.ISelectionPolicy policy = matcher.getPolicy();
+		if (!(policy instanceof IContentTypeManager.ICacheableSelectionPolicy))
+			return applyPolicy(policy, candidates, fileName, contents);
+		IContentType[] selected = matcher.getCachedSelection(this, candidates, fileName, contents);
+		if (selected == null) {
+			selected = applyPolicy(policy, candidates, fileName, contents);
+			matcher.cacheSelection(this, candidates, fileName, contents, selected);
+		}
+		return selected;
+	}
+
 	/**
 	 * Applies a client-provided selection policy. 
 	 */
@@ -160,17 +212,20 @@ public final class ContentTypeCatalog {
 		return result[0];
 	}
 
-	private void associate(ContentType contentType) {
+	/**
+	 * Adds the built-in file specs of the given content type to the given maps, which
+	 * must not have been published yet.
+	 */
+	private static void associate(ContentType contentType, Map names, Map extensions) {
 		String[] builtInFileNames = contentType.getFileSpecs(IContentType.IGNORE_USER_DEFINED | IContentType.FILE_NAME_SPEC);
 		for (int i = 0; i < builtInFileNames.length; i++)
-			associate(contentType, builtInFileNames[i], IContentType.FILE_NAME_SPEC);
+			associate(names, contentType, builtInFileNames[i]);
 		String[] builtInFileExtensions = contentType.getFileSpecs(IContentType.IGNORE_USER_DEFINED | IContentType.FILE_EXTENSION_SPEC);
 		for (int i = 0; i < builtInFileExtensions.length; i++)
-			associate(contentType, builtInFileExtensions[i], IContentType.FILE_EXTENSION_SPEC);
+			associate(extensions, contentType, builtInFileExtensions[i]);
 	}
 
-	synchronized void associate(ContentType contentType, String text, int type) {
-		Map fileSpecMap = ((type & IContentType.FILE_NAME_SPEC) != 0) ? fileNames : fileExtensions;
+	private static void associate(Map fileSpecMap, ContentType contentType, String text) {
 		String mappingKey = FileSpec.getMappingKeyFor(text);
 		Set existing = (Set) fileSpecMap.get(mappingKey);
 		if (existing == null)
@@ -178,76 +233,106 @@ public final class ContentTypeCatalog {
 		existing.add(contentType);
 	}
 
-	private int collectMatchingByContents(int valid, IContentType[] subset, List destination, ILazySource contents, Map properties) throws IOException {
+	synchronized void associate(ContentType contentType, String text, int type) {
+		boolean byName = (type & IContentType.FILE_NAME_SPEC) != 0;
+		String mappingKey = FileSpec.getMappingKeyFor(text);
+		// copy on write, readers may be traversing the current map
+		Map fileSpecMap = new HashMap(byName ? fileNames : fileExtensions);
+		Set existing = (Set) fileSpecMap.get(mappingKey);
+		Set updated = existing == null ? new HashSet() : new HashSet(existing);
+		updated.add(contentType);
+		fileSpecMap.put(mappingKey, updated);
+		if (byName)
+			fileNames = fileSpecMap;
+		else
+			fileExtensions = fileSpecMap;
+		fileSpecIndex = null;
+		descriptionCache.clear();
+	}
+
+	/**
+	 * Evaluates the describers of the given content types, adding the valid ones
+	 * to the destination after the ones already found valid, and the indeterminate
+	 * ones at the end. If <code>stopAtValid</code> is <code>true</code>, stops at
+	 * the first valid content type. Returns the number of valid content types.
+	 */
+	private int collectMatchingByContents(int valid, IContentType[] subset, List destination, ILazySource contents, Map properties, boolean stopAtValid) throws IOException {
+		int[] statuses = null;
+		DescriberExecutor executor = subset.length > 1 && !stopAtValid ? DescriberExecutor.getDefault() : null;
+		if (executor != null)
+			statuses = executor.describe(subset, contents, properties);
 		for (int i = 0; i < subset.length; i++) {
 			ContentType current = (ContentType) subset[i];
-			IContentDescriber describer = current.getDescriber();
-			int status = IContentDescriber.INDETERMINATE;
-			if (describer != null) {
-				if (contents.isText() && !(describer instanceof ITextContentDescriber))
-					// for text streams we skip content types that do not provide text-based content describers
-					continue;
-				status = describe(current, contents, null, properties);
-				if (status == IContentDescriber.INVALID)
-					continue;
-			}
-			if (status == IContentDescriber.VALID)
+			int status = statuses != null ? statuses[i] : describe(current, contents, properties);
+			if (status == IContentDescriber.INVALID)
+				continue;
+			if (status == IContentDescriber.VALID) {
 				destination.add(valid++, current);
-			else
+				if (stopAtValid)
+					break;
+			} else
 				destination.add(current);
 		}
 		return valid;
 	}
 
-	int describe(ContentType type, ILazySource contents, ContentDescription description, Map properties) throws IOException {
+	/**
+	 * Returns the validation status of the given contents for a content type,
+	 * <code>INVALID</code> if its describer can't handle them.
+	 */
+	static int describe(ContentType type, ILazySource contents, Map properties) throws IOException {
 		IContentDescriber describer = type.getDescriber();
-		try {
-			if (contents.isText()) {
-				if (describer instanceof XMLRootElementContentDescriber2) {
-					return ((XMLRootElementContentDescriber2) describer).describe((Reader) contents, description, properties);
-				} else if (describer instanceof XMLRootElementContentDescriber) {
-					return ((XMLRootElementContentDescriber) describer).describe((Reader) contents, description, properties);
-				}
-				return ((ITextContentDescriber) describer).describe((Reader) contents, description);
-			} else {
-				if (describer instanceof XMLRootElementContentDescriber2) {
-					return ((XMLRootElementContentDescriber2) describer).describe((InputStream) contents, description, properties);
-				} else if (describer instanceof XMLRootElementContentDescriber) {
-					return ((XMLRootElementContentDescriber) describer).describe((InputStream) contents, description, properties);
-				}
-				return (describer).describe((InputStream) contents, description);
-			}
-		} catch (RuntimeException re) {
-			// describer seems to be buggy. just disable it (logging the reason)
-			type.invalidateDescriber(re);
-		} catch (Error e) {
-			// describer got some serious problem. disable it (logging the reason) and throw the error again 
-			type.invalidateDescriber(e);
-			throw e;
-		} catch (LowLevelIOException llioe) {
-			// throw the actual exception
-			throw llioe.getActualException();
-		} catch (IOException ioe) {
-			// bugs 67841/ 62443  - non-low level IOException should be "ignored"
-			if (ContentTypeManager.DEBUGGING) {
-				String message = NLS.bind(ContentMessages.content_errorReadingContents, type.getId());
-				ContentType.log(message, ioe);
-			}
-			// we don't know what the describer would say if the exception didn't occur
+		if (describer == null)
 			return IContentDescriber.INDETERMINATE;
-		} finally {
-			contents.rewind();
-		}
-		return IContentDescriber.INVALID;
+		if (contents.isText() && !(describer instanceof ITextContentDescriber))
+			// for text streams we skip content types that do not provide text-based content describers
+			return IContentDescriber.INVALID;
+		return type.describe(describer, contents, null, properties);
 	}
 
 	synchronized void dissociate(ContentType contentType, String text, int type) {
-		Map fileSpecMap = ((type & IContentType.FILE_NAME_SPEC) != 0) ? fileNames : fileExtensions;
+		boolean byName = (type & IContentType.FILE_NAME_SPEC) != 0;
 		String mappingKey = FileSpec.getMappingKeyFor(text);
-		Set existing = (Set) fileSpecMap.get(mappingKey);
-		if (existing == null)
+		Set existing = (Set) (byName ? fileNames : fileExtensions).get(mappingKey);
+		if (existing == null || !existing.contains(contentType))
 			return;
-		existing.remove(contentType);
+		// copy on write, readers may be traversing the current map
+		Map fileSpecMap = new HashMap(byName ? fileNames : fileExtensions);
+		Set updated = new HashSet(existing);
+		updated.remove(contentType);
+		fileSpecMap.put(mappingKey, updated);
+		if (byName)
+			fileNames = fileSpecMap;
+		else
+			fileExtensions = fileSpecMap;
+		fileSpecIndex = null;
+		descriptionCache.clear();
+	}
+
+	/**
+	 * Computes the content types matching each file name and file extension
+	 * in the default context.
+	 */
+	private FileSpecIndex compileFileSpecs() {
+		IScopeContext context = manager.getContext();
+		return new FileSpecIndex(compileFileSpecs(context, fileNames, IContentType.FILE_NAME_SPEC), compileFileSpecs(context, fileExtensions, IContentType.FILE_EXTENSION_SPEC));
+	}
+
+	private Map compileFileSpecs(IScopeContext context, Map associations, int fileSpecType) {
+		Map result = new HashMap(associations.size() * 2);
+		for (Iterator i = associations.entrySet().iterator(); i.hasNext();) {
+			Map.Entry entry = (Map.Entry) i.next();
+			String mappingKey = (String) entry.getKey();
+			Set selected = selectMatchingByName(context, (Set) entry.getValue(), Collections.EMPTY_SET, mappingKey, fileSpecType);
+			if (selected.isEmpty())
+				continue;
+			IContentType[] general = (IContentType[]) selected.toArray(new IContentType[selected.size()]);
+			IContentType[] lexicographical = (IContentType[]) selected.toArray(new IContentType[selected.size()]);
+			Arrays.sort(general, policyConstantGeneralIsBetter);
+			Arrays.sort(lexicographical, policyLexicographical);
+			result.put(mappingKey, new IContentType[][] {general, lexicographical});
+		}
+		return result;
 	}
 
 	/**
@@ -295,46 +380,110 @@ public final class ContentTypeCatalog {
 
 	IContentType[] findContentTypesFor(ContentTypeMatcher matcher, InputStream contents, String fileName) throws IOException {
 		final ILazySource buffer = ContentTypeManager.readBuffer(contents);
-		IContentType[] selected = internalFindContentTypesFor(matcher, buffer, fileName, true);
+		IContentType[] selected = internalFindContentTypesFor(matcher, buffer, fileName, true, new HashMap());
 		// give the policy a chance to change the results
-		ISelectionPolicy policy = matcher.getPolicy();
-		if (policy != null)
-			selected = applyPolicy(policy, selected, fileName != null, true);
+		if (matcher.getPolicy() != null)
+			selected = applyPolicy(matcher, selected, fileName != null, true);
 		return selected;
 	}
 
+	/**
+	 * Finds the content types of many files, reporting them to the requestor as
+	 * each file is done. Files are sorted by extension, the name-based candidates
+	 * are computed once for each distinct file name, files without candidates
+	 * are not read, and the same buffer is used for reading all files.
+	 * 
+	 * @see IContentTypeMatcher#findContentTypesFor(File[], IContentTypeMatcher.IContentTypeRequestor)
+	 */
+	void findContentTypesFor(ContentTypeMatcher matcher, File[] files, IContentTypeMatcher.IContentTypeRequestor requestor) {
+		File[] sorted = (File[]) files.clone();
+		Arrays.sort(sorted, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				String extension1 = ContentTypeManager.getFileExtension(((File) o1).getName());
+				String extension2 = ContentTypeManager.getFileExtension(((File) o2).getName());
+				return FileSpec.getMappingKeyFor(extension1).compareTo(FileSpec.getMappingKeyFor(extension2));
+			}
+		});
+		ISelectionPolicy policy = matcher.getPolicy();
+		Map candidatesByName = new HashMap();
+		LazyInputStream buffer = null;
+		for (int i = 0; i < sorted.length; i++) {
+			File file = sorted[i];
+			String fileName = file.getName();
+			String mappingKey = FileSpec.getMappingKeyFor(fileName);
+			IContentType[][] subset = (IContentType[][]) candidatesByName.get(mappingKey);
+			if (subset == null) {
+				subset = internalFindContentTypesFor(matcher, fileName, policyLexicographical);
+				candidatesByName.put(mappingKey, subset);
+			}
+			IContentType[] selected = NO_CONTENT_TYPES;
+			if (subset[0].length + subset[1].length > 0) {
+				InputStream contents = null;
+				try {
+					contents = new FileInputStream(file);
+					if (buffer == null)
+						buffer = new LazyInputStream(contents, ContentTypeManager.BLOCK_SIZE);
+					else
+						buffer.reuse(contents);
+					buffer.setBudget(ReadBudget.create());
+					selected = internalFindContentTypesFor(buffer, subset, policySpecificIsBetter, policyGeneralIsBetter, new HashMap(), isBestMatchOnly(matcher));
+				} catch (IOException e) {
+					if (!requestor.acceptException(file, e))
+						return;
+					continue;
+				} finally {
+					if (contents != null)
+						try {
+							contents.close();
+						} catch (IOException e) {
+							// ignore
+						}
+				}
+			}
+			// give the policy a chance to change the results
+			if (policy != null)
+				selected = applyPolicy(matcher, selected, true, true);
+			IContentType[] result = new IContentType[selected.length];
+			for (int j = 0; j < result.length; j++)
+				result[j] = new ContentTypeHandler((ContentType) selected[j], generation);
+			if (!requestor.acceptContentTypes(file, result))
+				return;
+		}
+	}
+
 	IContentType[] findContentTypesFor(ContentTypeMatcher matcher, final String fileName) {
 		IContentType[] selected = concat(internalFindContentTypesFor(matcher, fileName, policyConstantGeneralIsBetter));
 		// give the policy a chance to change the results
-		ISelectionPolicy policy = matcher.getPolicy();
-		if (policy != null)
-			selected = applyPolicy(policy, selected, true, false);
+		if (matcher.getPolicy() != null)
+			selected = applyPolicy(matcher, selected, true, false);
 		return selected;
 	}
 
-	synchronized public IContentType[] getAllContentTypes() {
-		List result = new ArrayList(contentTypes.size());
-		for (Iterator i = contentTypes.values().iterator(); i.hasNext();) {
-			ContentType type = (ContentType) i.next();
-			if (type.isValid() && !type.isAlias())
-				result.add(type);
+	/**
+	 * Returns all valid content types that are not aliases. The returned array
+	 * is shared and must not be modified.
+	 */
+	public IContentType[] getAllContentTypes() {
+		return allContentTypes;
+	}
+
+	/**
+	 * Returns the file specs compiled for the default context, compiling them
+	 * first if they have changed.
+	 */
+	private FileSpecIndex getFileSpecIndex() {
+		FileSpecIndex index = fileSpecIndex;
+		if (index != null)
+			return index;
+		synchronized (this) {
+			if (fileSpecIndex == null)
+				fileSpecIndex = compileFileSpecs();
+			return fileSpecIndex;
 		}
-		return (IContentType[]) result.toArray(new IContentType[result.size()]);
 	}
 
 	private ContentType[] getChildren(ContentType parent) {
-		ContentType[] children = (ContentType[]) allChildren.get(parent);
-		if (children != null)
-			return children;
-		List result = new ArrayList(5);
-		for (Iterator i = this.contentTypes.values().iterator(); i.hasNext();) {
-			ContentType next = (ContentType) i.next();
-			if (next.getBaseType() == parent)
-				result.add(next);
-		}
-		children = (ContentType[]) result.toArray(new ContentType[result.size()]);
-		allChildren.put(parent, children);
-		return children;
+		return (ContentType[]) allChildren.get(parent);
 	}
 
 	public ContentType getContentType(String contentTypeIdentifier) {
@@ -343,27 +492,62 @@ public final class ContentTypeCatalog {
 	}
 
 	private IContentDescription getDescriptionFor(ContentTypeMatcher matcher, ILazySource contents, String fileName, QualifiedName[] options) throws IOException {
-		IContentType[] selected = internalFindContentTypesFor(matcher, contents, fileName, false);
+		// what the describers find in the contents is kept for describing them afterwards
+		Map properties = new HashMap();
+		IContentType[] selected = internalFindContentTypesFor(matcher, contents, fileName, false, properties);
 		if (selected.length == 0)
 			return null;
 		// give the policy a chance to change the results
-		ISelectionPolicy policy = matcher.getPolicy();
-		if (policy != null) {
-			selected = applyPolicy(policy, selected, fileName != null, true);
+		if (matcher.getPolicy() != null) {
+			selected = applyPolicy(matcher, selected, fileName != null, true);
 			if (selected.length == 0)
 				return null;
 		}
-		return matcher.getSpecificDescription(((ContentType) selected[0]).internalGetDescriptionFor(contents, options));
+		return matcher.getSpecificDescription(((ContentType) selected[0]).internalGetDescriptionFor(contents, options, properties));
 	}
 
 	public IContentDescription getDescriptionFor(ContentTypeMatcher matcher, InputStream contents, String fileName, QualifiedName[] options) throws IOException {
 		return getDescriptionFor(matcher, ContentTypeManager.readBuffer(contents), fileName, options);
 	}
 
+	public IContentDescription getDescriptionFor(ContentTypeMatcher matcher, File file, QualifiedName[] options) throws IOException {
+		// the file specs of other contexts are not part of the catalog, they may change at any time
+		Object key = null;
+		int cacheVersion = 0;
+		if (DescriptionCache.isEnabled() && matcher.getContext().equals(manager.getContext())) {
+			key = DescriptionCache.getKey(file, matcher.getPolicy(), options);
+			cacheVersion = descriptionCache.getVersion();
+			Object cached = descriptionCache.get(key);
+			if (DescriptionCache.isCached(cached))
+				return (IContentDescription) cached;
+		}
+		IContentDescription description;
+		LazyFileInputStream contents = ContentTypeManager.readBuffer(file);
+		try {
+			description = getDescriptionFor(matcher, (ILazySource) contents, file.getName(), options);
+		} finally {
+			contents.close();
+		}
+		if (key != null)
+			descriptionCache.put(key, description, cacheVersion);
+		return description;
+	}
+
 	public IContentDescription getDescriptionFor(ContentTypeMatcher matcher, Reader contents, String fileName, QualifiedName[] options) throws IOException {
 		return getDescriptionFor(matcher, ContentTypeManager.readBuffer(contents), fileName, options);
 	}
 
+	/**
+	 * Returns whether the content types were read from the catalog cache.
+	 */
+	boolean isCached() {
+		return cached;
+	}
+
+	void setCached() {
+		cached = true;
+	}
+
 	public int getGeneration() {
 		return generation;
 	}
@@ -395,12 +579,21 @@ public final class ContentTypeCatalog {
 		return true;
 	}
 
-	private IContentType[] internalFindContentTypesFor(ILazySource buffer, IContentType[][] subset, Comparator validPolicy, Comparator indeterminatePolicy) throws IOException {
-		Map properties = new HashMap();
+	/**
+	 * Returns whether the given matcher only wants the best match of lookups
+	 * by contents.
+	 */
+	private static boolean isBestMatchOnly(ContentTypeMatcher matcher) {
+		return matcher.getPolicy() instanceof IContentTypeManager.IBestMatchSelectionPolicy;
+	}
+
+	private IContentType[] internalFindContentTypesFor(ILazySource buffer, IContentType[][] subset, Comparator validPolicy, Comparator indeterminatePolicy, Map properties, boolean bestMatchOnly) throws IOException {
+		if (bestMatchOnly)
+			return findBestMatchByContents(buffer, subset, validPolicy, indeterminatePolicy, properties);
 		final List appropriate = new ArrayList(5);
-		final int validFullName = collectMatchingByContents(0, subset[0], appropriate, buffer, properties);
+		final int validFullName = collectMatchingByContents(0, subset[0], appropriate, buffer, properties, false);
 		final int appropriateFullName = appropriate.size();
-		final int validExtension = collectMatchingByContents(validFullName, subset[1], appropriate, buffer, properties) - validFullName;
+		final int validExtension = collectMatchingByContents(validFullName, subset[1], appropriate, buffer, properties, false) - validFullName;
 		final int appropriateExtension = appropriate.size() - appropriateFullName;
 		IContentType[] result = (IContentType[]) appropriate.toArray(new IContentType[appropriate.size()]);
 		if (validFullName > 1)
@@ -414,13 +607,42 @@ public final class ContentTypeCatalog {
 		return result;
 	}
 
-	private IContentType[] internalFindContentTypesFor(ContentTypeMatcher matcher, ILazySource buffer, String fileName, boolean forceValidation) throws IOException {
+	/**
+	 * Evaluates the content types from the best match to the worst one, and
+	 * returns the first valid one only. If none is valid, the indeterminate
+	 * ones are returned as they would have been otherwise.
+	 */
+	private IContentType[] findBestMatchByContents(ILazySource buffer, IContentType[][] subset, Comparator validPolicy, Comparator indeterminatePolicy, Map properties) throws IOException {
+		final List appropriate = new ArrayList(5);
+		for (int i = 0; i < subset.length; i++) {
+			// the candidates are sorted the way valid content types would be
+			IContentType[] candidates = (IContentType[]) subset[i].clone();
+			Arrays.sort(candidates, validPolicy);
+			if (collectMatchingByContents(0, candidates, appropriate, buffer, properties, true) > 0)
+				return new IContentType[] {(IContentType) appropriate.get(0)};
+		}
+		// keep the original order of the indeterminate content types before sorting them
+		Set indeterminate = new HashSet(appropriate);
+		IContentType[] result = new IContentType[indeterminate.size()];
+		int count = 0;
+		for (int i = 0; i < subset.length; i++) {
+			int start = count;
+			for (int j = 0; j < subset[i].length; j++)
+				if (indeterminate.contains(subset[i][j]))
+					result[count++] = subset[i][j];
+			if (count - start > 1)
+				Arrays.sort(result, start, count, indeterminatePolicy);
+		}
+		return result;
+	}
+
+	private IContentType[] internalFindContentTypesFor(ContentTypeMatcher matcher, ILazySource buffer, String fileName, boolean forceValidation, Map properties) throws IOException {
 		final IContentType[][] subset;
 		final Comparator validPolicy;
 		Comparator indeterminatePolicy;
 		if (fileName == null) {
 			// we only have a single array, by need to provide a two-dimensional, 2-element array 
-			subset = new IContentType[][] {getAllContentTypes(), NO_CONTENT_TYPES};
+			subset = new IContentType[][] {(IContentType[]) getAllContentTypes().clone(), NO_CONTENT_TYPES};
 			indeterminatePolicy = policyConstantGeneralIsBetter;
 			validPolicy = policyConstantSpecificIsBetter;
 		} else {
@@ -447,7 +669,7 @@ public final class ContentTypeCatalog {
 			// only eligible content type is binary and contents are text, ignore it
 			return NO_CONTENT_TYPES;			
 		}
-		return internalFindContentTypesFor(buffer, subset, validPolicy, indeterminatePolicy);
+		return internalFindContentTypesFor(buffer, subset, validPolicy, indeterminatePolicy, properties, isBestMatchOnly(matcher));
 	}
 
 	/**
@@ -456,29 +678,29 @@ public final class ContentTypeCatalog {
 	 * @return all matching content types in the preferred order 
 	 * @see IContentTypeManager#findContentTypesFor(String)
 	 */
-	synchronized private IContentType[][] internalFindContentTypesFor(ContentTypeMatcher matcher, final String fileName, Comparator sortingPolicy) {
+	private IContentType[][] internalFindContentTypesFor(ContentTypeMatcher matcher, final String fileName, Comparator sortingPolicy) {
 		IScopeContext context = matcher.getContext();
-		IContentType[][] result = {NO_CONTENT_TYPES, NO_CONTENT_TYPES};
+		if (context.equals(manager.getContext()))
+			// the file specs of the default context are compiled, no need to lock
+			return getFileSpecIndex().find(fileName, sortingPolicy == policyLexicographical ? FileSpecIndex.LEXICOGRAPHICAL : FileSpecIndex.GENERAL_IS_BETTER);
+		return internalFindContentTypesFor(matcher, context, fileName, sortingPolicy);
+	}
 
-		final Set allByFileName;
+	/**
+	 * File name based content type matching for a context other than the default one,
+	 * where user-defined file specs come from the context's preferences. 
+	 */
+	private IContentType[][] internalFindContentTypesFor(ContentTypeMatcher matcher, IScopeContext context, final String fileName, Comparator sortingPolicy) {
+		IContentType[][] result = {NO_CONTENT_TYPES, NO_CONTENT_TYPES};
 
-		if (context.equals(manager.getContext()))
-			allByFileName = getDirectlyAssociated(fileName, IContentTypeSettings.FILE_NAME_SPEC);
-		else {
-			allByFileName = new HashSet(getDirectlyAssociated(fileName, IContentTypeSettings.FILE_NAME_SPEC | IContentType.IGNORE_USER_DEFINED));
-			allByFileName.addAll(matcher.getDirectlyAssociated(this, fileName, IContentTypeSettings.FILE_NAME_SPEC));
-		}
+		final Set allByFileName = new HashSet(getDirectlyAssociated(fileName, IContentTypeSettings.FILE_NAME_SPEC | IContentType.IGNORE_USER_DEFINED));
+		allByFileName.addAll(matcher.getDirectlyAssociated(this, fileName, IContentTypeSettings.FILE_NAME_SPEC));
 		Set selectedByName = selectMatchingByName(context, allByFileName, Collections.EMPTY_SET, fileName, IContentType.FILE_NAME_SPEC);
 		result[0] = (IContentType[]) selectedByName.toArray(new IContentType[selectedByName.size()]);
 		final String fileExtension = ContentTypeManager.getFileExtension(fileName);
 		if (fileExtension != null) {
-			final Set allByFileExtension;
-			if (context.equals(manager.getContext()))
-				allByFileExtension = getDirectlyAssociated(fileExtension, IContentTypeSettings.FILE_EXTENSION_SPEC);
-			else {
-				allByFileExtension = new HashSet(getDirectlyAssociated(fileExtension, IContentTypeSettings.FILE_EXTENSION_SPEC | IContentType.IGNORE_USER_DEFINED));
-				allByFileExtension.addAll(matcher.getDirectlyAssociated(this, fileExtension, IContentTypeSettings.FILE_EXTENSION_SPEC));
-			}
+			final Set allByFileExtension = new HashSet(getDirectlyAssociated(fileExtension, IContentTypeSettings.FILE_EXTENSION_SPEC | IContentType.IGNORE_USER_DEFINED));
+			allByFileExtension.addAll(matcher.getDirectlyAssociated(this, fileExtension, IContentTypeSettings.FILE_EXTENSION_SPEC));
 			Set selectedByExtension = selectMatchingByName(context, allByFileExtension, selectedByName, fileExtension, IContentType.FILE_EXTENSION_SPEC);
 			if (!selectedByExtension.isEmpty())
 				result[1] = (IContentType[]) selectedByExtension.toArray(new IContentType[selectedByExtension.size()]);
@@ -527,10 +749,36 @@ public final class ContentTypeCatalog {
 		return result == null ? Collections.EMPTY_SET : result;
 	}
 
-	synchronized ContentType internalGetContentType(String contentTypeIdentifier) {
+	/**
+	 * Returns the configuration element defining the given content type, for a
+	 * catalog read from the catalog cache.
+	 * 
+	 * @throws InvalidRegistryObjectException if it no longer exists
+	 */
+	synchronized IConfigurationElement findContentTypeElement(String contentTypeIdentifier) {
+		if (contentTypeElements == null)
+			contentTypeElements = manager.createBuilder(this).getContentTypeElements();
+		IConfigurationElement element = (IConfigurationElement) contentTypeElements.get(contentTypeIdentifier);
+		if (element == null)
+			throw new InvalidRegistryObjectException();
+		return element;
+	}
+
+	ContentType internalGetContentType(String contentTypeIdentifier) {
 		return (ContentType) contentTypes.get(contentTypeIdentifier);
 	}
 
+	/**
+	 * Returns all content types, including invalid ones and aliases.
+	 */
+	synchronized ContentType[] internalGetContentTypes() {
+		return (ContentType[]) contentTypes.values().toArray(new ContentType[contentTypes.size()]);
+	}
+
+	synchronized ContentTypeBuilder.FileAssociation[] internalGetFileAssociations() {
+		return (ContentTypeBuilder.FileAssociation[]) fileAssociations.toArray(new ContentTypeBuilder.FileAssociation[fileAssociations.size()]);
+	}
+
 	private void makeAliases() {
 		// process all content types marking aliases appropriately
 		for (Iterator i = contentTypes.values().iterator(); i.hasNext();) {
@@ -546,22 +794,99 @@ public final class ContentTypeCatalog {
 
 	/**
 	 * Resolves inter-content type associations (inheritance and aliasing).
+	 * Public for tests only, should not be called by anyone else.
 	 */
-	synchronized protected void organize() {
+	synchronized public void organize() {
 		// build the aliasing
 		makeAliases();
 		// do the validation
+		Map names = copyAssociations(fileNames);
+		Map extensions = copyAssociations(fileExtensions);
+		List all = new ArrayList(contentTypes.size());
 		for (Iterator i = contentTypes.values().iterator(); i.hasNext();) {
 			ContentType type = (ContentType) i.next();
-			if (ensureValid(type))
-				associate(type);
+			if (ensureValid(type)) {
+				associate(type, names, extensions);
+				if (!type.isAlias())
+					all.add(type);
+			}
 		}
+		// publish the results, from now on they are only replaced, never modified
+		contentTypes = Collections.unmodifiableMap(contentTypes);
+		allContentTypes = (IContentType[]) all.toArray(new IContentType[all.size()]);
+		allChildren = computeChildren();
+		numberHierarchy();
+		fileNames = names;
+		fileExtensions = extensions;
 		if (ContentTypeManager.DEBUGGING)
 			for (Iterator i = contentTypes.values().iterator(); i.hasNext();) {
 				ContentType type = (ContentType) i.next();
 				if (!type.isValid())
 					ContentMessages.message("Invalid: " + type); //$NON-NLS-1$
 			}
+		// compile the file specs so that lookups by name don't need to lock
+		fileSpecIndex = compileFileSpecs();
+	}
+
+	/**
+	 * Returns a copy of the given file spec associations that can be modified
+	 * without affecting the original.
+	 */
+	private static Map copyAssociations(Map associations) {
+		Map copy = new HashMap(associations.size() * 2);
+		for (Iterator i = associations.entrySet().iterator(); i.hasNext();) {
+			Map.Entry entry = (Map.Entry) i.next();
+			copy.put(entry.getKey(), new HashSet((Set) entry.getValue()));
+		}
+		return copy;
+	}
+
+	/**
+	 * Maps each content type to its direct sub-types.
+	 */
+	private Map computeChildren() {
+		Map children = new HashMap(contentTypes.size() * 2);
+		for (Iterator i = contentTypes.values().iterator(); i.hasNext();) {
+			ContentType type = (ContentType) i.next();
+			IContentType baseType = type.getBaseType();
+			if (baseType == null)
+				continue;
+			List siblings = (List) children.get(baseType);
+			if (siblings == null)
+				children.put(baseType, siblings = new ArrayList(5));
+			siblings.add(type);
+		}
+		for (Iterator i = children.entrySet().iterator(); i.hasNext();) {
+			Map.Entry entry = (Map.Entry) i.next();
+			List siblings = (List) entry.getValue();
+			entry.setValue(siblings.toArray(new ContentType[siblings.size()]));
+		}
+		return children;
+	}
+
+	/**
+	 * Numbers the valid content types depth-first, so that the sub-types of each content
+	 * type are numbered right after it. Checking whether a content type is a kind of
+	 * another then takes a couple of comparisons instead of walking up the hierarchy.
+	 */
+	private void numberHierarchy() {
+		int next = 0;
+		for (int i = 0; i < allContentTypes.length; i++) {
+			ContentType type = (ContentType) allContentTypes[i];
+			if (type.getBaseType() == null)
+				next = numberHierarchy(type, next, 0);
+		}
+	}
+
+	private int numberHierarchy(ContentType type, int index, int depth) {
+		int next = index + 1;
+		ContentType[] children = getChildren(type);
+		if (children != null)
+			for (int i = 0; i < children.length; i++)
+				if (children[i].isValid() && !children[i].isAlias())
+					next = numberHierarchy(children[i], next, depth + 1);
+		type.setHierarchyIndex(index, next - 1, depth);
+		return next;
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2004, 2009 IBM Corporation and others.
+ *  Copyright (c) 2004, 2014 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -10,11 +10,14 @@
  *******************************************************************************/
 package org.eclipse.core.internal.content;
 
-import java.io.InputStream;
-import java.io.Reader;
+import java.io.*;
+import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.content.*;
 import org.eclipse.core.runtime.preferences.*;
+import org.eclipse.osgi.util.NLS;
+import org.osgi.service.prefs.BackingStoreException;
+import org.osgi.service.prefs.Preferences;
 
 public class ContentTypeManager extends ContentTypeMatcher implements IContentTypeManager, IRegistryChangeListener {
 	private static ContentTypeManager instance;
@@ -23,8 +26,22 @@ public class ContentTypeManager extends ContentTypeMatcher implements IContentTy
 	public static final String CONTENT_TYPE_PREF_NODE = IContentConstants.RUNTIME_NAME + IPath.SEPARATOR + "content-types"; //$NON-NLS-1$
 	private static final String OPTION_DEBUG_CONTENT_TYPES = "org.eclipse.core.contenttype/debug"; //$NON-NLS-1$;
 	static final boolean DEBUGGING = Activator.getDefault().getBooleanDebugOption(OPTION_DEBUG_CONTENT_TYPES, false);
-	private ContentTypeCatalog catalog;
+	/**
+	 * The current catalog, only published once it is organized. Only modified
+	 * while holding the lock on "this".
+	 */
+	private volatile ContentTypeCatalog catalog;
 	private int catalogGeneration;
+	/**
+	 * The catalog the next one will be built from, or <code>null</code> if it
+	 * must be built from scratch.
+	 */
+	private ContentTypeCatalog previousCatalog;
+	/**
+	 * The content type extensions added since the previous catalog was built
+	 * (element type: <code>IExtension</code>).
+	 */
+	private final List addedExtensions = new ArrayList();
 
 	/** 
 	 * List of registered listeners (element type: 
@@ -34,6 +51,24 @@ public class ContentTypeManager extends ContentTypeMatcher implements IContentTy
 	 */
 	protected final ListenerList contentTypeListeners = new ListenerList();
 
+	/**
+	 * The changes to content type settings made by a thread while it runs
+	 * {@link #batchSettingsChanges(ISettingsRunnable)}.
+	 */
+	private static final class SettingsBatch {
+		// absolute path -> Preferences, the content type nodes of each changed scope
+		final Map nodes = new HashMap();
+		// absolute path -> String, a changed content type id, for error messages
+		final Map contentTypeIds = new HashMap();
+		// the content types changed in the default scope, in order of change
+		final List changed = new ArrayList();
+	}
+
+	/**
+	 * The batch of settings changes of the current thread, if any.
+	 */
+	private final ThreadLocal settingsBatch = new ThreadLocal();
+
 	/**
 	 * Creates and initializes the platform's content type manager. A reference to the
 	 * content type manager can later be obtained by calling <code>getInstance()</code>.
@@ -55,8 +90,9 @@ public class ContentTypeManager extends ContentTypeMatcher implements IContentTy
 	 * the content type manager will be closed for business.
 	 */
 	public static void shutdown() {
-		// there really is nothing left to do except null the instance.
+		// there really is nothing left to do except null the instance, and stop the describer threads.
 		instance = null;
+		DescriberExecutor.shutdown();
 	}
 
 	public static void removeRegistryChangeListener(IExtensionRegistry registry) {
@@ -86,11 +122,21 @@ public class ContentTypeManager extends ContentTypeMatcher implements IContentTy
 	}
 
 	protected static ILazySource readBuffer(InputStream contents) {
-		return new LazyInputStream(contents, BLOCK_SIZE);
+		LazyInputStream buffer = new LazyInputStream(contents, BLOCK_SIZE);
+		buffer.setBudget(ReadBudget.create());
+		return buffer;
+	}
+
+	protected static LazyFileInputStream readBuffer(File contents) throws FileNotFoundException {
+		LazyFileInputStream buffer = new LazyFileInputStream(contents, 8 * BLOCK_SIZE);
+		buffer.setBudget(ReadBudget.create());
+		return buffer;
 	}
 
 	protected static ILazySource readBuffer(Reader contents) {
-		return new LazyReader(contents, BLOCK_SIZE);
+		LazyReader buffer = new LazyReader(contents, BLOCK_SIZE);
+		buffer.setBudget(ReadBudget.create());
+		return buffer;
 	}
 
 	public ContentTypeManager() {
@@ -111,22 +157,47 @@ public class ContentTypeManager extends ContentTypeMatcher implements IContentTy
 		return result;
 	}
 
-	protected synchronized ContentTypeCatalog getCatalog() {
+	/**
+	 * Public for tests only, should not be called by anyone else.
+	 */
+	public ContentTypeCatalog getCatalog() {
+		ContentTypeCatalog current = catalog;
+		if (current != null)
+			// already has one, no need to lock
+			return current;
+		return buildCatalog();
+	}
+
+	private synchronized ContentTypeCatalog buildCatalog() {
 		if (catalog != null)
-			// already has one			
+			// another thread built it in the meantime
 			return catalog;
 		// create new catalog 
 		ContentTypeCatalog newCatalog = new ContentTypeCatalog(this, catalogGeneration++);
 		// build catalog by parsing the extension registry
 		ContentTypeBuilder builder = createBuilder(newCatalog);
+		boolean complete = false;
+		CatalogCache cache = CatalogCache.getDefault();
 		try {
-			builder.buildCatalog();
-			// only remember catalog if building it was successful 
-			catalog = newCatalog;
+			// a catalog read from the cache has no configuration elements to tell what changed
+			if (previousCatalog != null && !previousCatalog.isCached())
+				builder.buildCatalog(previousCatalog, (IExtension[]) addedExtensions.toArray(new IExtension[addedExtensions.size()]));
+			else if (cache == null || !builder.buildCatalog(cache))
+				builder.buildCatalog();
+			complete = true;
 		} catch (InvalidRegistryObjectException e) {
 			// the registry has stale objects... just don't remember the returned (incomplete) catalog
 		}
+		// whatever happened, the next catalog is built from this one or from scratch
+		previousCatalog = null;
+		addedExtensions.clear();
 		newCatalog.organize();
+		if (complete && cache != null && !newCatalog.isCached())
+			cache.save(newCatalog);
+		// only remember catalog if building it was successful, and only once it is organized
+		// as readers don't lock
+		if (complete)
+			catalog = newCatalog;
 		return newCatalog;
 	}
 
@@ -149,11 +220,20 @@ public class ContentTypeManager extends ContentTypeMatcher implements IContentTy
 	}
 
 	public void registryChanged(IRegistryChangeEvent event) {
+		IExtensionDelta[] runtimeDeltas = event.getExtensionDeltas(IContentConstants.RUNTIME_NAME, ContentTypeBuilder.PT_CONTENTTYPES);
+		IExtensionDelta[] contentDeltas = event.getExtensionDeltas(IContentConstants.CONTENT_NAME, ContentTypeBuilder.PT_CONTENTTYPES);
 		// no changes related to the content type registry
-		if (event.getExtensionDeltas(IContentConstants.RUNTIME_NAME, ContentTypeBuilder.PT_CONTENTTYPES).length == 0 && 
-			event.getExtensionDeltas(IContentConstants.CONTENT_NAME, ContentTypeBuilder.PT_CONTENTTYPES).length == 0)
+		if (runtimeDeltas.length == 0 && contentDeltas.length == 0)
 			return;
-		invalidate();
+		// removed extensions are noticed by the builder, as their elements are no longer valid
+		List added = new ArrayList();
+		for (int i = 0; i < runtimeDeltas.length; i++)
+			if (runtimeDeltas[i].getKind() == IExtensionDelta.ADDED)
+				added.add(runtimeDeltas[i].getExtension());
+		for (int i = 0; i < contentDeltas.length; i++)
+			if (contentDeltas[i].getKind() == IExtensionDelta.ADDED)
+				added.add(contentDeltas[i].getExtension());
+		invalidate((IExtension[]) added.toArray(new IExtension[added.size()]));
 	}
 
 	/**
@@ -163,6 +243,26 @@ public class ContentTypeManager extends ContentTypeMatcher implements IContentTy
 		if (ContentTypeManager.DEBUGGING && catalog != null)
 			ContentMessages.message("Registry discarded"); //$NON-NLS-1$		
 		catalog = null;
+		previousCatalog = null;
+		addedExtensions.clear();
+	}
+
+	/**
+	 * Causes a new catalog to be built from the current one next time an API call
+	 * is made, applying the preferences again and reading only the given added 
+	 * extensions. Falls back to building it afresh if it was going to be anyway.
+	 */
+	synchronized void invalidate(IExtension[] added) {
+		if (catalog != null) {
+			if (ContentTypeManager.DEBUGGING)
+				ContentMessages.message("Registry updated"); //$NON-NLS-1$
+			previousCatalog = catalog;
+			catalog = null;
+		} else if (previousCatalog == null)
+			// already going to be built from scratch
+			return;
+		for (int i = 0; i < added.length; i++)
+			addedExtensions.add(added[i]);
 	}
 
 	/* (non-Javadoc)
@@ -179,6 +279,79 @@ public class ContentTypeManager extends ContentTypeMatcher implements IContentTy
 		contentTypeListeners.remove(listener);
 	}
 
+	public void batchSettingsChanges(ISettingsRunnable runnable) throws CoreException {
+		if (settingsBatch.get() != null) {
+			// nested batch, the outermost one completes
+			runnable.run();
+			return;
+		}
+		SettingsBatch batch = new SettingsBatch();
+		settingsBatch.set(batch);
+		CoreException failure = null;
+		try {
+			runnable.run();
+		} finally {
+			settingsBatch.set(null);
+			// the changes made are applied even if the operation failed
+			for (Iterator i = batch.nodes.entrySet().iterator(); i.hasNext();) {
+				Map.Entry entry = (Map.Entry) i.next();
+				try {
+					flush((Preferences) entry.getValue(), (String) batch.contentTypeIds.get(entry.getKey()));
+				} catch (CoreException e) {
+					if (failure == null)
+						failure = e;
+				}
+			}
+			for (Iterator i = batch.changed.iterator(); i.hasNext();)
+				fireContentTypeChangeEvent((ContentType) i.next());
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Saves the settings of the given content type, unless the current thread
+	 * is running a batch of settings changes, in which case they are saved at
+	 * the end of the batch.
+	 */
+	void flushSettings(Preferences contentTypeNode, String contentTypeId) throws CoreException {
+		SettingsBatch batch = (SettingsBatch) settingsBatch.get();
+		if (batch == null) {
+			flush(contentTypeNode, contentTypeId);
+			return;
+		}
+		// flushing the parent node saves the settings of all content types at once
+		Preferences parent = contentTypeNode.parent();
+		String path = parent.absolutePath();
+		if (!batch.nodes.containsKey(path)) {
+			batch.nodes.put(path, parent);
+			batch.contentTypeIds.put(path, contentTypeId);
+		}
+	}
+
+	private static void flush(Preferences node, String contentTypeId) throws CoreException {
+		try {
+			node.flush();
+		} catch (BackingStoreException bse) {
+			String message = NLS.bind(ContentMessages.content_errorSavingSettings, contentTypeId);
+			IStatus status = new Status(IStatus.ERROR, ContentMessages.OWNER_NAME, 0, message, bse);
+			throw new CoreException(status);
+		}
+	}
+
+	/**
+	 * Notifies listeners that the given content type changed, unless the current
+	 * thread is running a batch of settings changes, in which case they are
+	 * notified at the end of the batch.
+	 */
+	void contentTypeChanged(ContentType type) {
+		SettingsBatch batch = (SettingsBatch) settingsBatch.get();
+		if (batch == null)
+			fireContentTypeChangeEvent(type);
+		else if (!batch.changed.contains(type))
+			batch.changed.add(type);
+	}
+
 	public void fireContentTypeChangeEvent(ContentType type) {
 		Object[] listeners = this.contentTypeListeners.getListeners();
 		IContentType eventObject = new ContentTypeHandler(type, type.getCatalog().getGeneration());
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2007 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,8 +22,46 @@ import org.osgi.service.prefs.BackingStoreException;
  */
 public class ContentTypeMatcher implements IContentTypeMatcher {
 
+	/**
+	 * Identifies a selection made by the policy.
+	 */
+	private static final class SelectionKey {
+		private final IContentType[] candidates;
+		private final boolean fileName;
+		private final boolean contents;
+		private final int hashCode;
+
+		SelectionKey(IContentType[] candidates, boolean fileName, boolean contents) {
+			this.candidates = candidates;
+			this.fileName = fileName;
+			this.contents = contents;
+			int hash = (fileName ? 2 : 0) + (contents ? 1 : 0);
+			for (int i = 0; i < candidates.length; i++)
+				hash = hash * 31 + candidates[i].hashCode();
+			this.hashCode = hash;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SelectionKey))
+				return false;
+			SelectionKey other = (SelectionKey) obj;
+			return fileName == other.fileName && contents == other.contents && Arrays.equals(candidates, other.candidates);
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
 	private IScopeContext context;
 	private IContentTypeManager.ISelectionPolicy policy;
+	/**
+	 * The selections made by a cacheable policy (key type: <code>SelectionKey</code>,
+	 * value type: <code>IContentType[]</code>), for the catalog of the given
+	 * generation.
+	 */
+	private Map selections;
+	private int selectionsGeneration;
 
 	public ContentTypeMatcher(IContentTypeManager.ISelectionPolicy policy, IScopeContext context) {
 		this.policy = policy;
@@ -62,6 +100,13 @@ public class ContentTypeMatcher implements IContentTypeMatcher {
 		return result;
 	}
 
+	/**
+	 * @see IContentTypeMatcher
+	 */
+	public void findContentTypesFor(File[] files, IContentTypeRequestor requestor) {
+		getCatalog().findContentTypesFor(this, files, requestor);
+	}
+
 	/**
 	 * @see IContentTypeMatcher
 	 */
@@ -75,6 +120,28 @@ public class ContentTypeMatcher implements IContentTypeMatcher {
 		return result;
 	}
 
+	/**
+	 * Returns what the policy selected among the given candidates in the given
+	 * catalog, or <code>null</code> if it is not known.
+	 */
+	synchronized IContentType[] getCachedSelection(ContentTypeCatalog catalog, IContentType[] candidates, boolean fileName, boolean contents) {
+		if (selections == null || selectionsGeneration != catalog.getGeneration())
+			return null;
+		return (IContentType[]) selections.get(new SelectionKey(candidates, fileName, contents));
+	}
+
+	/**
+	 * Remembers what the policy selected among the given candidates in the
+	 * given catalog. Selections made in other catalogs are forgotten.
+	 */
+	synchronized void cacheSelection(ContentTypeCatalog catalog, IContentType[] candidates, boolean fileName, boolean contents, IContentType[] selected) {
+		if (selections == null || selectionsGeneration != catalog.getGeneration()) {
+			selections = new HashMap();
+			selectionsGeneration = catalog.getGeneration();
+		}
+		selections.put(new SelectionKey((IContentType[]) candidates.clone(), fileName, contents), selected);
+	}
+
 	private ContentTypeCatalog getCatalog() {
 		return ContentTypeManager.getInstance().getCatalog();
 	}
@@ -86,6 +153,13 @@ public class ContentTypeMatcher implements IContentTypeMatcher {
 		return getCatalog().getDescriptionFor(this, contents, fileName, options);
 	}
 
+	/**
+	 * @see IContentTypeMatcher
+	 */
+	public IContentDescription getDescriptionFor(File file, QualifiedName[] options) throws IOException {
+		return getCatalog().getDescriptionFor(this, file, options);
+	}
+
 	/**
 	 * @see IContentTypeMatcher
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,7 +15,6 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.content.IContentDescription;
 import org.eclipse.core.runtime.content.IContentTypeSettings;
 import org.eclipse.core.runtime.preferences.IScopeContext;
-import org.eclipse.osgi.util.NLS;
 import org.osgi.service.prefs.BackingStoreException;
 import org.osgi.service.prefs.Preferences;
 
@@ -36,13 +35,7 @@ public class ContentTypeSettings implements IContentTypeSettings, IContentTypeIn
 		// set new preference value		
 		String newValue = Util.toListString(existingValues.toArray());
 		ContentType.setPreference(contentTypeNode, key, newValue);
-		try {
-			contentTypeNode.flush();
-		} catch (BackingStoreException bse) {
-			String message = NLS.bind(ContentMessages.content_errorSavingSettings, contentTypeId);
-			IStatus status = new Status(IStatus.ERROR, ContentMessages.OWNER_NAME, 0, message, bse);
-			throw new CoreException(status);
-		}
+		ContentTypeManager.getInstance().flushSettings(contentTypeNode, contentTypeId);
 	}
 
 	static String[] getFileSpecs(IScopeContext context, String contentTypeId, int type) {
@@ -93,13 +86,7 @@ public class ContentTypeSettings implements IContentTypeSettings, IContentTypeIn
 		// set new preference value
 		String newValue = Util.toListString(existingValues.toArray());
 		ContentType.setPreference(contentTypeNode, key, newValue);
-		try {
-			contentTypeNode.flush();
-		} catch (BackingStoreException bse) {
-			String message = NLS.bind(ContentMessages.content_errorSavingSettings, contentTypeId);
-			IStatus status = new Status(IStatus.ERROR, ContentMessages.OWNER_NAME, 0, message, bse);
-			throw new CoreException(status);
-		}
+		ContentTypeManager.getInstance().flushSettings(contentTypeNode, contentTypeId);
 	}
 
 	public ContentTypeSettings(ContentType contentType, IScopeContext context) {
@@ -147,13 +134,7 @@ public class ContentTypeSettings implements IContentTypeSettings, IContentTypeIn
 	public void setDefaultCharset(String userCharset) throws CoreException {
 		Preferences contentTypeNode = ContentTypeManager.getInstance().getPreferences(context).node(contentType.getId());
 		ContentType.setPreference(contentTypeNode, ContentType.PREF_DEFAULT_CHARSET, userCharset);
-		try {
-			contentTypeNode.flush();
-		} catch (BackingStoreException bse) {
-			String message = NLS.bind(ContentMessages.content_errorSavingSettings, contentType.getId());
-			IStatus status = new Status(IStatus.ERROR, ContentMessages.OWNER_NAME, 0, message, bse);
-			throw new CoreException(status);
-		}
+		ContentTypeManager.getInstance().flushSettings(contentTypeNode, contentType.getId());
 	}
 
 }
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.content;
+
+import java.io.*;
+import java.util.*;
+import org.eclipse.core.runtime.content.IContentType;
+
+/**
+ * Evaluates the describers of several content types in parallel. The contents
+ * are first copied into an array, then each describer reads its own stream over
+ * that array. Only contents that fit in a small window are handled this way, as
+ * describers may read them entirely.
+ * <p>
+ * This is disabled by default. It is enabled by setting the system property
+ * {@link #PROP_DESCRIBER_THREADS} to the number of threads to use, in addition
+ * to the thread asking for the description.
+ * </p>
+ */
+public final class DescriberExecutor {
+	/**
+	 * System property giving the number of threads evaluating describers in parallel.
+	 */
+	static final String PROP_DESCRIBER_THREADS = "org.eclipse.core.contenttype.describerThreads"; //$NON-NLS-1$
+
+	private static int threadCount = Integer.getInteger(PROP_DESCRIBER_THREADS, 0).intValue();
+	/**
+	 * The maximum size of contents evaluated in parallel, in bytes or characters.
+	 */
+	private static final int WINDOW_SIZE = 64 * ContentTypeManager.BLOCK_SIZE;
+
+	private static DescriberExecutor instance;
+
+	/**
+	 * A set of content types to evaluate on the same contents. Threads claim
+	 * content types one at a time until all are claimed.
+	 */
+	private static final class Batch {
+		private final IContentType[] types;
+		private final Object window;
+		private final Map properties;
+		final int[] statuses;
+		private int next;
+		private int done;
+		private Throwable failure;
+
+		Batch(IContentType[] types, Object window, Map properties) {
+			this.types = types;
+			this.window = window;
+			this.properties = properties;
+			this.statuses = new int[types.length];
+		}
+
+		/**
+		 * Evaluates the next content type that no other thread has claimed.
+		 * Returns <code>false</code> if there is none left.
+		 */
+		boolean runNext() {
+			int index;
+			synchronized (this) {
+				if (next == types.length)
+					return false;
+				index = next++;
+			}
+			try {
+				ILazySource contents = window instanceof byte[] ? (ILazySource) new ByteArraySource((byte[]) window) : new CharArraySource((char[]) window);
+				statuses[index] = ContentTypeCatalog.describe((ContentType) types[index], contents, properties);
+			} catch (Throwable t) {
+				synchronized (this) {
+					if (failure == null)
+						failure = t;
+				}
+			} finally {
+				synchronized (this) {
+					if (++done == types.length)
+						notifyAll();
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Waits for all content types to be evaluated, and returns the first
+		 * failure, if any.
+		 */
+		synchronized Throwable await() {
+			boolean interrupted = false;
+			while (done < types.length) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+			return failure;
+		}
+	}
+
+	private static final class ByteArraySource extends ByteArrayInputStream implements ILazySource {
+		ByteArraySource(byte[] contents) {
+			super(contents);
+		}
+
+		public boolean isText() {
+			return false;
+		}
+
+		public synchronized void rewind() {
+			pos = 0;
+			mark = 0;
+		}
+	}
+
+	private static final class CharArraySource extends CharArrayReader implements ILazySource {
+		CharArraySource(char[] contents) {
+			super(contents);
+		}
+
+		public boolean isText() {
+			return true;
+		}
+
+		public void rewind() {
+			synchronized (lock) {
+				pos = 0;
+				markedPos = 0;
+			}
+		}
+	}
+
+	/**
+	 * The batches that still have content types to claim.
+	 */
+	private final LinkedList batches = new LinkedList();
+	private boolean stopped;
+
+	/**
+	 * Returns the executor, or <code>null</code> if describers are not
+	 * evaluated in parallel.
+	 */
+	static synchronized DescriberExecutor getDefault() {
+		if (threadCount <= 0)
+			return null;
+		if (instance == null)
+			instance = new DescriberExecutor(threadCount);
+		return instance;
+	}
+
+	/**
+	 * Sets the number of threads evaluating describers in parallel, stopping
+	 * the current ones. Returns the previous number. Public for tests only,
+	 * should not be called by anyone else.
+	 */
+	public static synchronized int setThreadCount(int count) {
+		int previous = threadCount;
+		shutdown();
+		threadCount = count;
+		return previous;
+	}
+
+	/**
+	 * Stops the threads of the executor, if it was started.
+	 */
+	static synchronized void shutdown() {
+		if (instance == null)
+			return;
+		instance.stop();
+		instance = null;
+	}
+
+	private DescriberExecutor(int threadCount) {
+		for (int i = 0; i < threadCount; i++) {
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					work();
+				}
+			}, "Content Type Describer " + i); //$NON-NLS-1$
+			worker.setDaemon(true);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Evaluates the describers of the given content types on the given contents.
+	 * The statuses are the ones {@link ContentTypeCatalog#describe(ContentType, ILazySource, Map)}
+	 * would return, in the same order as the content types. Returns <code>null</code>
+	 * if the contents are too large to be evaluated in parallel, in which case
+	 * the caller must evaluate them itself.
+	 */
+	int[] describe(IContentType[] types, ILazySource contents, Map properties) throws IOException {
+		Object window = readWindow(contents);
+		if (window == null)
+			return null;
+		// describers share the properties to avoid parsing the contents several times
+		Batch batch = new Batch(types, window, Collections.synchronizedMap(properties));
+		synchronized (batches) {
+			batches.addLast(batch);
+			batches.notifyAll();
+		}
+		// help with our own batch rather than just waiting
+		while (batch.runNext()) {
+			// keep going
+		}
+		synchronized (batches) {
+			batches.remove(batch);
+		}
+		Throwable failure = batch.await();
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		return batch.statuses;
+	}
+
+	/**
+	 * Copies the given contents into an array, or returns <code>null</code> if
+	 * they don't fit in the window. The contents are rewound afterwards.
+	 */
+	private static Object readWindow(ILazySource contents) throws IOException {
+		try {
+			if (contents.isText()) {
+				CharArrayWriter window = new CharArrayWriter();
+				char[] block = new char[ContentTypeManager.BLOCK_SIZE];
+				for (int count; window.size() <= WINDOW_SIZE && (count = ((Reader) contents).read(block)) != -1;)
+					window.write(block, 0, count);
+				return window.size() > WINDOW_SIZE ? null : window.toCharArray();
+			}
+			ByteArrayOutputStream window = new ByteArrayOutputStream();
+			byte[] block = new byte[ContentTypeManager.BLOCK_SIZE];
+			for (int count; window.size() <= WINDOW_SIZE && (count = ((InputStream) contents).read(block)) != -1;)
+				window.write(block, 0, count);
+			return window.size() > WINDOW_SIZE ? null : window.toByteArray();
+		} catch (LowLevelIOException llioe) {
+			// throw the actual exception
+			throw llioe.getActualException();
+		} finally {
+			contents.rewind();
+		}
+	}
+
+	private void stop() {
+		synchronized (batches) {
+			stopped = true;
+			batches.notifyAll();
+		}
+	}
+
+	/**
+	 * The main loop of the worker threads.
+	 */
+	private void work() {
+		while (true) {
+			Batch batch;
+			synchronized (batches) {
+				while (batches.isEmpty() && !stopped) {
+					try {
+						batches.wait();
+					} catch (InterruptedException e) {
+						// keep waiting
+					}
+				}
+				if (stopped)
+					return;
+				batch = (Batch) batches.getFirst();
+			}
+			if (!batch.runNext())
+				synchronized (batches) {
+					batches.remove(batch);
+				}
+		}
+	}
+}
@@ -0,0 +1,405 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.content;
+
+import java.io.*;
+import java.util.*;
+import org.eclipse.core.runtime.content.IContentDescriber;
+
+/**
+ * Statistics on the describers of a content type: how often they were called,
+ * how long they took, how far they read into the contents and what they
+ * answered. They help finding the describers making lookups slow. Calls made to
+ * describe the contents of a content type already selected are counted apart
+ * from the calls made to find the content types of some contents.
+ * <p>
+ * The time is measured with the system clock, whose resolution is a millisecond
+ * at best, while a describer call usually takes much less. A call is counted
+ * as taking no time, or the clock resolution when the clock ticks during the
+ * call. The total time is therefore only an estimate, which becomes meaningful
+ * over many calls. Describers with the same total time are ordered by how much
+ * they read.
+ * </p>
+ * <p>
+ * Statistics are not collected by default. Collecting them is enabled with
+ * the debug option {@link #OPTION_DESCRIBER_STATS}, or by calling
+ * {@link #setEnabled(boolean)}.
+ * </p>
+ */
+public final class DescriberStats {
+	/**
+	 * Debug option enabling describer statistics.
+	 */
+	public static final String OPTION_DESCRIBER_STATS = "org.eclipse.core.contenttype/perf/describers"; //$NON-NLS-1$
+
+	private static volatile boolean enabled = Activator.getDefault().getBooleanDebugOption(OPTION_DESCRIBER_STATS, false);
+	// content type id -> DescriberStats
+	private static final Map allStats = new HashMap();
+
+	private final String contentTypeId;
+	private String describerClass;
+	private int callCount;
+	private long totalTime;
+	private long totalRead;
+	private long maxRead;
+	private int validCount;
+	private int invalidCount;
+	private int indeterminateCount;
+	private int descriptionCount;
+	private long descriptionTime;
+	private String invalidationReason;
+
+	/**
+	 * A stream counting how far describers read into some contents.
+	 */
+	private static final class MeteredInputStream extends FilterInputStream implements ILazySource {
+		private long position;
+		private long markPosition;
+		long furthest;
+
+		MeteredInputStream(InputStream contents) {
+			super(contents);
+		}
+
+		private void advance(long count) {
+			if (count > 0) {
+				position += count;
+				furthest = Math.max(furthest, position);
+			}
+		}
+
+		public boolean isText() {
+			return false;
+		}
+
+		public synchronized void mark(int readlimit) {
+			super.mark(readlimit);
+			markPosition = position;
+		}
+
+		public int read() throws IOException {
+			int next = super.read();
+			if (next != -1)
+				advance(1);
+			return next;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int count = super.read(b, off, len);
+			advance(count);
+			return count;
+		}
+
+		public synchronized void reset() throws IOException {
+			super.reset();
+			position = markPosition;
+		}
+
+		public void rewind() {
+			((ILazySource) in).rewind();
+			position = markPosition = 0;
+		}
+
+		public long skip(long n) throws IOException {
+			long count = super.skip(n);
+			advance(count);
+			return count;
+		}
+	}
+
+	/**
+	 * A reader counting how far describers read into some contents.
+	 */
+	private static final class MeteredReader extends FilterReader implements ILazySource {
+		private long position;
+		private long markPosition;
+		long furthest;
+
+		MeteredReader(Reader contents) {
+			super(contents);
+		}
+
+		private void advance(long count) {
+			if (count > 0) {
+				position += count;
+				furthest = Math.max(furthest, position);
+			}
+		}
+
+		public boolean isText() {
+			return true;
+		}
+
+		public void mark(int readAheadLimit) throws IOException {
+			super.mark(readAheadLimit);
+			markPosition = position;
+		}
+
+		public int read() throws IOException {
+			int next = super.read();
+			if (next != -1)
+				advance(1);
+			return next;
+		}
+
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			int count = super.read(cbuf, off, len);
+			advance(count);
+			return count;
+		}
+
+		public void reset() throws IOException {
+			super.reset();
+			position = markPosition;
+		}
+
+		public void rewind() {
+			((ILazySource) in).rewind();
+			position = markPosition = 0;
+		}
+
+		public long skip(long n) throws IOException {
+			long count = super.skip(n);
+			advance(count);
+			return count;
+		}
+	}
+
+	/**
+	 * Returns whether statistics are being collected.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts or stops collecting statistics. Statistics collected so far are kept.
+	 */
+	public static void setEnabled(boolean value) {
+		enabled = value;
+	}
+
+	/**
+	 * Returns the statistics of the given content type, creating them if needed.
+	 */
+	static DescriberStats getStats(ContentType contentType) {
+		synchronized (allStats) {
+			DescriberStats stats = (DescriberStats) allStats.get(contentType.getId());
+			if (stats == null)
+				allStats.put(contentType.getId(), stats = new DescriberStats(contentType.getId()));
+			return stats;
+		}
+	}
+
+	/**
+	 * Returns the statistics collected so far, sorted by decreasing time spent
+	 * finding and describing content types,
+	 * then by decreasing number of bytes or characters read.
+	 */
+	public static DescriberStats[] getAllStats() {
+		DescriberStats[] result;
+		synchronized (allStats) {
+			result = (DescriberStats[]) allStats.values().toArray(new DescriberStats[allStats.size()]);
+		}
+		Arrays.sort(result, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				DescriberStats stats1 = (DescriberStats) o1;
+				DescriberStats stats2 = (DescriberStats) o2;
+				int result = compare(stats1.getTotalTime() + stats1.getDescriptionTime(), stats2.getTotalTime() + stats2.getDescriptionTime());
+				return result != 0 ? result : compare(stats1.getTotalRead(), stats2.getTotalRead());
+			}
+
+			private int compare(long value1, long value2) {
+				return value1 > value2 ? -1 : (value1 < value2 ? 1 : 0);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Discards the statistics collected so far.
+	 */
+	public static void clear() {
+		synchronized (allStats) {
+			allStats.clear();
+		}
+	}
+
+	/**
+	 * Prints the statistics collected so far, one line per content type, the
+	 * slowest first.
+	 */
+	public static void dump(PrintStream out) {
+		DescriberStats[] stats = getAllStats();
+		out.println("Content type describers (calls, time in ms, total/max read, valid/invalid/indeterminate, descriptions/time in ms):"); //$NON-NLS-1$
+		for (int i = 0; i < stats.length; i++)
+			out.println("  " + stats[i]); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns the given contents wrapped so the furthest position read can be
+	 * known, or the contents themselves if they cannot be wrapped.
+	 */
+	static ILazySource meter(ILazySource contents) {
+		if (contents instanceof InputStream)
+			return new MeteredInputStream((InputStream) contents);
+		if (contents instanceof Reader)
+			return new MeteredReader((Reader) contents);
+		return contents;
+	}
+
+	/**
+	 * Returns the furthest position read in the given metered contents.
+	 */
+	static long getRead(ILazySource contents) {
+		if (contents instanceof MeteredInputStream)
+			return ((MeteredInputStream) contents).furthest;
+		if (contents instanceof MeteredReader)
+			return ((MeteredReader) contents).furthest;
+		return 0;
+	}
+
+	private DescriberStats(String contentTypeId) {
+		this.contentTypeId = contentTypeId;
+	}
+
+	/**
+	 * Records a call to the describer of the content type, made to find the
+	 * content types of some contents.
+	 */
+	synchronized void describerCalled(IContentDescriber describer, int result, long time, long read) {
+		// keep the describer that was contributed, not the one replacing it once disabled
+		if (describerClass == null)
+			describerClass = describer.getClass().getName();
+		callCount++;
+		totalTime += time;
+		totalRead += read;
+		maxRead = Math.max(maxRead, read);
+		switch (result) {
+			case IContentDescriber.VALID :
+				validCount++;
+				break;
+			case IContentDescriber.INVALID :
+				invalidCount++;
+				break;
+			default :
+				indeterminateCount++;
+		}
+	}
+
+	/**
+	 * Records a call to the describer of the content type, made to describe
+	 * contents of that content type.
+	 */
+	synchronized void descriptionCalled(IContentDescriber describer, long time) {
+		if (describerClass == null)
+			describerClass = describer.getClass().getName();
+		descriptionCount++;
+		descriptionTime += time;
+	}
+
+	/**
+	 * Records that the describer of the content type was disabled.
+	 */
+	synchronized void describerInvalidated(Throwable reason) {
+		invalidationReason = String.valueOf(reason);
+	}
+
+	public String getContentTypeId() {
+		return contentTypeId;
+	}
+
+	/**
+	 * Returns the class name of the describer, or <code>null</code> if it was
+	 * never called.
+	 */
+	public synchronized String getDescriberClass() {
+		return describerClass;
+	}
+
+	/**
+	 * Returns the number of calls made to find the content types of some contents.
+	 */
+	public synchronized int getCallCount() {
+		return callCount;
+	}
+
+	/**
+	 * Returns an estimate of the time spent in the describer finding the content
+	 * types of some contents, in milliseconds.
+	 */
+	public synchronized long getTotalTime() {
+		return totalTime;
+	}
+
+	/**
+	 * Returns the number of bytes or characters read by the describer, in all calls.
+	 */
+	public synchronized long getTotalRead() {
+		return totalRead;
+	}
+
+	/**
+	 * Returns the largest number of bytes or characters read by the describer in a call.
+	 */
+	public synchronized long getMaxRead() {
+		return maxRead;
+	}
+
+	public synchronized int getValidCount() {
+		return validCount;
+	}
+
+	public synchronized int getInvalidCount() {
+		return invalidCount;
+	}
+
+	public synchronized int getIndeterminateCount() {
+		return indeterminateCount;
+	}
+
+	/**
+	 * Returns the number of calls made to describe contents of the content type.
+	 */
+	public synchronized int getDescriptionCount() {
+		return descriptionCount;
+	}
+
+	/**
+	 * Returns an estimate of the time spent in the describer describing contents
+	 * of the content type, in milliseconds.
+	 */
+	public synchronized long getDescriptionTime() {
+		return descriptionTime;
+	}
+
+	/**
+	 * Returns the reason the describer was disabled, or <code>null</code> if it
+	 * was not disabled.
+	 */
+	public synchronized String getInvalidationReason() {
+		return invalidationReason;
+	}
+
+	public synchronized String toString() {
+		StringBuffer result = new StringBuffer(contentTypeId);
+		if (describerClass != null)
+			result.append(" (").append(describerClass).append(')'); //$NON-NLS-1$
+		result.append(": ").append(callCount); //$NON-NLS-1$
+		result.append(", ").append(totalTime); //$NON-NLS-1$
+		result.append(", ").append(totalRead).append('/').append(maxRead); //$NON-NLS-1$
+		result.append(", ").append(validCount).append('/').append(invalidCount).append('/').append(indeterminateCount); //$NON-NLS-1$
+		result.append(", ").append(descriptionCount).append('/').append(descriptionTime); //$NON-NLS-1$
+		if (invalidationReason != null)
+			result.append(", disabled: ").append(invalidationReason); //$NON-NLS-1$
+		return result.toString();
+	}
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.content;
+
+import java.io.File;
+import java.util.*;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.content.IContentDescription;
+import org.eclipse.core.runtime.content.IContentTypeManager.ISelectionPolicy;
+
+/**
+ * A bounded cache of the descriptions obtained for local files, evicting the
+ * least recently used ones. Files are identified by their path, length and
+ * modification time, so a changed file is described again. Each catalog has
+ * its own cache, so all descriptions are dropped when the catalog changes.
+ * <p>
+ * This is disabled by default. It is enabled by setting the system property
+ * {@link #PROP_DESCRIPTION_CACHE_SIZE} to the maximum number of descriptions
+ * to keep, or by calling {@link #setMaxSize(int)}.
+ * </p>
+ */
+public final class DescriptionCache {
+	/**
+	 * System property giving the maximum number of file descriptions cached.
+	 */
+	static final String PROP_DESCRIPTION_CACHE_SIZE = "org.eclipse.core.contenttype.descriptionCacheSize"; //$NON-NLS-1$
+
+	private static volatile int maxSize = Integer.getInteger(PROP_DESCRIPTION_CACHE_SIZE, 0).intValue();
+
+	/**
+	 * Identifies a description request for a file.
+	 */
+	private static final class Key {
+		private final String path;
+		private final long length;
+		private final long lastModified;
+		private final ISelectionPolicy policy;
+		private final List options;
+		private final int hashCode;
+
+		Key(File file, ISelectionPolicy policy, QualifiedName[] options) {
+			this.path = file.getAbsolutePath();
+			this.length = file.length();
+			this.lastModified = file.lastModified();
+			this.policy = policy;
+			this.options = options == null ? null : Arrays.asList(options);
+			this.hashCode = path.hashCode() ^ (int) lastModified ^ (int) length;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return path.equals(other.path) && length == other.length && lastModified == other.lastModified && policy == other.policy && (options == null ? other.options == null : options.equals(other.options));
+		}
+
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	/**
+	 * A cached description, linked in order of use.
+	 */
+	private static final class Entry {
+		final Key key;
+		final IContentDescription description;
+		Entry previous;
+		Entry next;
+
+		Entry(Key key, IContentDescription description) {
+			this.key = key;
+			this.description = description;
+		}
+	}
+
+	// a null description is a valid result, and is cached too
+	private static final Object NOT_CACHED = new Object();
+
+	private final Map entries = new HashMap();
+	// the most recently used entry, linked to the least recently used one
+	private Entry head;
+	private Entry tail;
+	// incremented whenever the cache is cleared
+	private int version;
+
+	/**
+	 * Returns whether descriptions are cached.
+	 */
+	static boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Sets the maximum number of descriptions each cache keeps, disabling
+	 * caching if it is not positive. Caches holding more descriptions drop
+	 * the least recently used ones when a description is added. Returns the
+	 * previous maximum. Public for tests only, should not be called by anyone
+	 * else.
+	 */
+	public static int setMaxSize(int size) {
+		int previous = maxSize;
+		maxSize = size;
+		return previous;
+	}
+
+	/**
+	 * Returns the key identifying a request for the given file.
+	 */
+	static Object getKey(File file, ISelectionPolicy policy, QualifiedName[] options) {
+		return new Key(file, policy, options);
+	}
+
+	/**
+	 * Returns the description cached for the given key, which may be <code>null</code>,
+	 * or {@link #NOT_CACHED}.
+	 */
+	synchronized Object get(Object key) {
+		Entry entry = (Entry) entries.get(key);
+		if (entry == null)
+			return NOT_CACHED;
+		unlink(entry);
+		link(entry);
+		return entry.description;
+	}
+
+	static boolean isCached(Object description) {
+		return description != NOT_CACHED;
+	}
+
+	/**
+	 * Returns the current version of the cache. Descriptions obtained while a
+	 * version was current are only added if the cache has not been cleared since.
+	 */
+	synchronized int getVersion() {
+		return version;
+	}
+
+	synchronized void put(Object key, IContentDescription description, int obtainedVersion) {
+		if (obtainedVersion != version)
+			// obtained before the cache was cleared, may be outdated
+			return;
+		Entry entry = new Entry((Key) key, description);
+		Entry existing = (Entry) entries.put(key, entry);
+		if (existing != null)
+			unlink(existing);
+		link(entry);
+		while (tail != null && entries.size() > maxSize) {
+			entries.remove(tail.key);
+			unlink(tail);
+		}
+	}
+
+	synchronized void clear() {
+		entries.clear();
+		head = tail = null;
+		version++;
+	}
+
+	private void link(Entry entry) {
+		entry.previous = null;
+		entry.next = head;
+		if (head != null)
+			head.previous = entry;
+		head = entry;
+		if (tail == null)
+			tail = entry;
+	}
+
+	private void unlink(Entry entry) {
+		if (entry.previous == null)
+			head = entry.next;
+		else
+			entry.previous.next = entry.next;
+		if (entry.next == null)
+			tail = entry.previous;
+		else
+			entry.next.previous = entry.previous;
+		entry.previous = entry.next = null;
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.content;
+
+import java.util.Map;
+import org.eclipse.core.runtime.content.IContentType;
+
+/**
+ * An immutable index of the content types matching each file name and file
+ * extension in a catalog, for the default scope context. The matches for
+ * each file spec are computed once, including the sub-types inheriting the
+ * file spec, and are kept sorted in the orders the catalog needs them. Once
+ * built, an index can be used by any number of threads without locking.
+ */
+final class FileSpecIndex {
+	/**
+	 * Sorting order where the more generic content type wins.
+	 */
+	static final int GENERAL_IS_BETTER = 0;
+	/**
+	 * Sorting order by content type id.
+	 */
+	static final int LEXICOGRAPHICAL = 1;
+
+	private static final IContentType[] NO_CONTENT_TYPES = new IContentType[0];
+
+	/**
+	 * Maps mapping keys of file names to the matching content types, as an array
+	 * for each of the sorting orders.
+	 */
+	private final Map byFileName;
+	/**
+	 * Maps mapping keys of file extensions to the matching content types, as an
+	 * array for each of the sorting orders.
+	 */
+	private final Map byFileExtension;
+
+	/**
+	 * Creates an index from maps of mapping keys to the matching content types.
+	 * The maps must not be modified afterwards.
+	 */
+	FileSpecIndex(Map byFileName, Map byFileExtension) {
+		this.byFileName = byFileName;
+		this.byFileExtension = byFileExtension;
+	}
+
+	/**
+	 * Returns the content types matching the given file name, sorted in the
+	 * given order. The first array contains the content types matching the full
+	 * file name, the second one those matching the file extension only. The
+	 * returned arrays can be freely modified by the caller.
+	 *
+	 * @see ContentTypeCatalog#findContentTypesFor(ContentTypeMatcher, String)
+	 */
+	IContentType[][] find(String fileName, int order) {
+		IContentType[] byName = get(byFileName, fileName, order);
+		IContentType[] byExtension = get(byFileExtension, ContentTypeManager.getFileExtension(fileName), order);
+		IContentType[][] result = {NO_CONTENT_TYPES, NO_CONTENT_TYPES};
+		if (byName.length > 0) {
+			result[0] = new IContentType[byName.length];
+			System.arraycopy(byName, 0, result[0], 0, byName.length);
+		}
+		if (byExtension.length > 0)
+			result[1] = subtract(byExtension, byName);
+		return result;
+	}
+
+	private static IContentType[] get(Map index, String fileSpec, int order) {
+		IContentType[][] found = (IContentType[][]) index.get(FileSpec.getMappingKeyFor(fileSpec));
+		return found == null ? NO_CONTENT_TYPES : found[order];
+	}
+
+	/**
+	 * Returns a copy of the given array without the content types in the
+	 * second array, preserving the order.
+	 */
+	private static IContentType[] subtract(IContentType[] types, IContentType[] excluded) {
+		IContentType[] result = new IContentType[types.length];
+		int count = 0;
+		for (int i = 0; i < types.length; i++) {
+			if (!contains(excluded, types[i]))
+				result[count++] = types[i];
+		}
+		if (count == result.length)
+			return result;
+		if (count == 0)
+			return NO_CONTENT_TYPES;
+		IContentType[] trimmed = new IContentType[count];
+		System.arraycopy(result, 0, trimmed, 0, count);
+		return trimmed;
+	}
+
+	private static boolean contains(IContentType[] types, IContentType type) {
+		for (int i = 0; i < types.length; i++)
+			if (types[i] == type)
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.content;
+
+import java.io.*;
+
+/**
+ * A lazy source reading a local file. Unlike {@link LazyInputStream}, it does
+ * not keep a copy of everything read so far: it keeps a single window over the
+ * file, and goes back to the file when reading outside of it. Rewinding is
+ * free as long as the beginning of the file is in the window, which is the
+ * case for most describers.
+ */
+public class LazyFileInputStream extends InputStream implements ILazySource {
+	private RandomAccessFile file;
+	private long mark;
+	private long position;
+	// the bytes of the file starting at windowStart
+	private byte[] window;
+	private int windowCount;
+	private long windowStart;
+	// limits what is read from the file, may be null
+	private ReadBudget budget;
+
+	public LazyFileInputStream(File file, int windowCapacity) throws FileNotFoundException {
+		this.file = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+		this.window = new byte[windowCapacity];
+	}
+
+	public int available() throws IOException {
+		try {
+			long windowEnd = windowStart + windowCount;
+			if (budget != null && budget.isExhausted(Math.max(position, windowEnd)))
+				// only what is in the window can still be read
+				return (int) Math.max(0, windowEnd - position);
+			return (int) Math.min(Integer.MAX_VALUE, Math.max(0, file.length() - position));
+		} catch (IOException ioe) {
+			throw new LowLevelIOException(ioe);
+		}
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Ensures the window contains the current position, reading it from the
+	 * file if necessary. Returns <code>false</code> if the end of the file
+	 * has been reached.
+	 */
+	private boolean ensureAvailable() throws IOException {
+		if (position >= windowStart && position < windowStart + windowCount)
+			return true;
+		int capacity = budget == null ? window.length : (int) Math.min(window.length, budget.getRemaining(position));
+		if (capacity == 0)
+			return false;
+		try {
+			file.seek(position);
+			windowStart = position;
+			windowCount = 0;
+			int readCount;
+			while (windowCount < capacity && (readCount = file.read(window, windowCount, capacity - windowCount)) != -1)
+				windowCount += readCount;
+		} catch (IOException e) {
+			throw new LowLevelIOException(e);
+		}
+		return windowCount > 0;
+	}
+
+	public boolean isText() {
+		return false;
+	}
+
+	public synchronized void mark(int readlimit) {
+		mark = position;
+	}
+
+	public boolean markSupported() {
+		return true;
+	}
+
+	public int read() throws IOException {
+		if (!ensureAvailable())
+			return -1;
+		return 0xFF & window[(int) (position++ - windowStart)];
+	}
+
+	public int read(byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!ensureAvailable())
+			return -1;
+		int offsetInWindow = (int) (position - windowStart);
+		int copied = Math.min(len, windowCount - offsetInWindow);
+		System.arraycopy(window, offsetInWindow, b, off, copied);
+		position += copied;
+		return copied;
+	}
+
+	public synchronized void reset() {
+		position = mark;
+	}
+
+	public void rewind() {
+		mark = 0;
+		position = 0;
+	}
+
+	/**
+	 * Limits what is read from the file. The file ends where the budget is
+	 * exhausted.
+	 */
+	public void setBudget(ReadBudget budget) {
+		this.budget = budget;
+	}
+
+	public long skip(long toSkip) throws IOException {
+		if (toSkip <= 0)
+			return 0;
+		long skipped = Math.min(toSkip, available());
+		position += skipped;
+		return skipped;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2008 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,15 +20,27 @@ public class LazyInputStream extends InputStream implements ILazySource {
 	private InputStream in;
 	private int mark;
 	private int offset;
+	// limits what is read from the underlying stream, may be null
+	private ReadBudget budget;
+	// blocks allocated for previous streams, reused before allocating new ones
+	private byte[][] spareBlocks = {};
 
 	public LazyInputStream(InputStream in, int blockCapacity) {
 		this.in = in;
 		this.blockCapacity = blockCapacity;
 	}
 
+	/**
+	 * Limits what is read from the underlying stream. The stream ends where the
+	 * budget is exhausted.
+	 */
+	public void setBudget(ReadBudget budget) {
+		this.budget = budget;
+	}
+
 	public int available() throws IOException {
 		try {
-			return bufferSize - offset + in.available();
+			return bufferSize - offset + (budget != null && budget.isExhausted(bufferSize) ? 0 : in.available());
 		} catch (IOException ioe) {
 			throw new LowLevelIOException(ioe);
 		}
@@ -59,7 +71,7 @@ public class LazyInputStream extends InputStream implements ILazySource {
 
 	private void ensureAvailable(long bytesToRead) throws IOException {
 		int loadedBlockSize = blockCapacity;
-		while (bufferSize < offset + bytesToRead && loadedBlockSize == blockCapacity) {
+		while (bufferSize < offset + bytesToRead && loadedBlockSize == blockCapacity && (budget == null || !budget.isExhausted(bufferSize))) {
 			try {
 				loadedBlockSize = loadBlock();
 			} catch (IOException e) {
@@ -95,8 +107,9 @@ public class LazyInputStream extends InputStream implements ILazySource {
 
 	private int loadBlock() throws IOException {
 		// read a block from the underlying stream
-		byte[] newBlock = new byte[blockCapacity];
-		int readCount = in.read(newBlock);
+		byte[] newBlock = blocks.length < spareBlocks.length ? spareBlocks[blocks.length] : new byte[blockCapacity];
+		int toRead = budget == null ? blockCapacity : (int) Math.min(blockCapacity, budget.getRemaining(bufferSize));
+		int readCount = toRead == 0 ? -1 : in.read(newBlock, 0, toRead);
 		if (readCount == -1)
 			return 0;
 		// expand blocks array
@@ -143,6 +156,20 @@ public class LazyInputStream extends InputStream implements ILazySource {
 		offset = 0;
 	}
 
+	/**
+	 * Starts buffering the given stream from its beginning, reusing the blocks
+	 * allocated for the previous one. The previous contents are discarded.
+	 */
+	void reuse(InputStream newIn) {
+		if (blocks.length > spareBlocks.length)
+			spareBlocks = blocks;
+		blocks = new byte[0][];
+		in = newIn;
+		bufferSize = 0;
+		mark = 0;
+		offset = 0;
+	}
+
 	public long skip(long toSkip) throws IOException {
 		if (toSkip <= 0)
 			return 0;
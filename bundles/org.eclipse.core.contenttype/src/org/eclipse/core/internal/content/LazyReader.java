@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2005 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,12 +20,22 @@ public class LazyReader extends Reader implements ILazySource {
 	private Reader in;
 	private int mark;
 	private int offset;
+	// limits what is read from the underlying stream, may be null
+	private ReadBudget budget;
 
 	public LazyReader(Reader in, int blockCapacity) {
 		this.in = in;
 		this.blockCapacity = blockCapacity;
 	}
 
+	/**
+	 * Limits what is read from the underlying stream. The stream ends where the
+	 * budget is exhausted.
+	 */
+	public void setBudget(ReadBudget budget) {
+		this.budget = budget;
+	}
+
 	public void close() {
 		// we don't close the underlying stream
 	}
@@ -55,7 +65,7 @@ public class LazyReader extends Reader implements ILazySource {
 
 	private void ensureAvailable(long charsToRead) throws IOException {
 		int loadedBlockSize = blockCapacity;
-		while (bufferSize < offset + charsToRead && loadedBlockSize == blockCapacity) {
+		while (bufferSize < offset + charsToRead && loadedBlockSize == blockCapacity && (budget == null || !budget.isExhausted(bufferSize))) {
 			try {
 				loadedBlockSize = loadBlock();
 			} catch (IOException ioe) {
@@ -92,7 +102,8 @@ public class LazyReader extends Reader implements ILazySource {
 	private int loadBlock() throws IOException {
 		// read a block from the underlying stream
 		char[] newBlock = new char[blockCapacity];
-		int readCount = in.read(newBlock);
+		int toRead = budget == null ? blockCapacity : (int) Math.min(blockCapacity, budget.getRemaining(bufferSize));
+		int readCount = toRead == 0 ? -1 : in.read(newBlock, 0, toRead);
 		if (readCount == -1)
 			return 0;
 		// expand blocks array
@@ -132,7 +143,7 @@ public class LazyReader extends Reader implements ILazySource {
 
 	public boolean ready() throws IOException {
 		try {
-			return (bufferSize - offset) > 0 || in.ready();
+			return (bufferSize - offset) > 0 || ((budget == null || !budget.isExhausted(bufferSize)) && in.ready());
 		} catch (IOException ioe) {
 			throw new LowLevelIOException(ioe);
 		}
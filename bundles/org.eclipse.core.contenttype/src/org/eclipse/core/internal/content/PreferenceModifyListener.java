@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.core.internal.content;
 
+import org.eclipse.core.runtime.IExtension;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.osgi.service.prefs.BackingStoreException;
@@ -22,7 +23,7 @@ public class PreferenceModifyListener extends org.eclipse.core.runtime.preferenc
 			if (root.nodeExists(InstanceScope.SCOPE)) {
 				Preferences instance = root.node(InstanceScope.SCOPE);
 				if (instance.nodeExists(ContentTypeManager.CONTENT_TYPE_PREF_NODE))
-					ContentTypeManager.getInstance().invalidate();
+					ContentTypeManager.getInstance().invalidate(new IExtension[0]);
 			}
 		} catch (BackingStoreException e) {
 			// do nothing
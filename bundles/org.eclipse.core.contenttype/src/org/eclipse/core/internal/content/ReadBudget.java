@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.content;
+
+/**
+ * Limits how much of the contents the describers may read during a lookup,
+ * and for how long. Once the budget is exhausted, the lazy sources stop
+ * reading from the underlying stream, and describers reach the end of the
+ * contents. The time limit is checked whenever a lazy source needs more
+ * contents.
+ * <p>
+ * There is no limit by default. The limits are set by the system properties
+ * {@link #PROP_READ_LIMIT}, in bytes or characters, and {@link #PROP_TIME_LIMIT},
+ * in milliseconds.
+ * </p>
+ */
+public final class ReadBudget {
+	/**
+	 * System property giving the maximum number of bytes or characters read
+	 * from the contents in a lookup.
+	 */
+	static final String PROP_READ_LIMIT = "org.eclipse.core.contenttype.describerReadLimit"; //$NON-NLS-1$
+	/**
+	 * System property giving the maximum time spent reading the contents in a
+	 * lookup, in milliseconds.
+	 */
+	static final String PROP_TIME_LIMIT = "org.eclipse.core.contenttype.describerTimeLimit"; //$NON-NLS-1$
+
+	private static final int READ_LIMIT = Integer.getInteger(PROP_READ_LIMIT, 0).intValue();
+	private static final int TIME_LIMIT = Integer.getInteger(PROP_TIME_LIMIT, 0).intValue();
+
+	private final long readLimit;
+	private final long deadline;
+
+	/**
+	 * Returns the budget of a lookup starting now, or <code>null</code> if
+	 * lookups are not limited.
+	 */
+	static ReadBudget create() {
+		return create(READ_LIMIT, TIME_LIMIT);
+	}
+
+	/**
+	 * Returns the budget of a lookup starting now with the given limits, or
+	 * <code>null</code> if neither is positive.
+	 * 
+	 * @param readLimit the maximum number of bytes or characters read, if positive
+	 * @param timeLimit the maximum time spent reading, in milliseconds, if positive
+	 */
+	public static ReadBudget create(int readLimit, int timeLimit) {
+		if (readLimit <= 0 && timeLimit <= 0)
+			return null;
+		return new ReadBudget(readLimit <= 0 ? Long.MAX_VALUE : readLimit, timeLimit <= 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeLimit);
+	}
+
+	private ReadBudget(long readLimit, long deadline) {
+		this.readLimit = readLimit;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Returns how much of the contents may still be read from the given position.
+	 */
+	long getRemaining(long position) {
+		if (deadline != Long.MAX_VALUE && System.currentTimeMillis() > deadline)
+			return 0;
+		return Math.max(0, readLimit - position);
+	}
+
+	/**
+	 * Returns whether the contents may not be read beyond the given position.
+	 */
+	boolean isExhausted(long position) {
+		return getRemaining(position) == 0;
+	}
+}
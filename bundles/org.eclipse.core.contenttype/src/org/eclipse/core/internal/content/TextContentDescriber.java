@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2008 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,8 @@
 package org.eclipse.core.internal.content;
 
 import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
 import org.eclipse.core.runtime.QualifiedName;
 import org.eclipse.core.runtime.content.IContentDescription;
 import org.eclipse.core.runtime.content.ITextContentDescriber;
@@ -44,9 +46,16 @@ public class TextContentDescriber implements ITextContentDescriber {
 	 * @see org.eclipse.core.runtime.content.IContentDescriber#describe(java.io.InputStream, org.eclipse.core.runtime.content.IContentDescription)
 	 */
 	public int describe(InputStream contents, IContentDescription description) throws IOException {
+		return describe(contents, description, new HashMap());
+	}
+
+	/**
+	 * @noreference This method is not intended to be referenced by clients.
+	 */
+	public int describe(InputStream contents, IContentDescription description, Map properties) throws IOException {
 		if (description == null || !description.isRequested(IContentDescription.BYTE_ORDER_MARK))
 			return INDETERMINATE;
-		byte[] bom = Util.getByteOrderMark(contents);
+		byte[] bom = CharsetSniffer.sniff(contents, properties).getByteOrderMark();
 		if (bom != null)
 			description.setProperty(IContentDescription.BYTE_ORDER_MARK, bom);
 		// we want to be pretty loose on detecting the text content type  		
@@ -0,0 +1,490 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.content;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A scanner for the prolog of an XML document, up to the start tag of the root
+ * element. It finds the same information as {@link XMLRootHandler} (the name
+ * and namespace of the top-level element and the DTD system identifier) in a
+ * single pass over the contents, without creating a SAX parser.
+ * <p>
+ * The scanner only handles the common cases. When it finds anything it does
+ * not fully understand, like an internal DTD subset, entity references or non-ASCII
+ * names, it gives up and a SAX parser must be used instead. This way the results
+ * never differ from the ones of a parser.
+ * </p>
+ *
+ * @see XMLRootHandler
+ */
+public final class XMLPrologScanner {
+	/**
+	 * The contents are certainly not an XML document.
+	 */
+	public static final int NOT_XML = 0;
+	/**
+	 * The top-level element was found.
+	 */
+	public static final int FOUND = 1;
+	/**
+	 * The scanner could not process the contents, a parser must be used.
+	 */
+	public static final int UNKNOWN = 2;
+
+	/**
+	 * An exception indicating that the scanning should stop, without a stack
+	 * trace as it is used for flow control.
+	 */
+	private static class StopScanningException extends Exception {
+		/**
+		 * All serializable objects should have a stable serialVersionUID
+		 */
+		private static final long serialVersionUID = 1L;
+
+		final int result;
+
+		StopScanningException(int result) {
+			super((String) null);
+			this.result = result;
+		}
+
+		public Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+
+	private static final StopScanningException STOP_NOT_XML = new StopScanningException(NOT_XML);
+	private static final StopScanningException STOP_UNKNOWN = new StopScanningException(UNKNOWN);
+
+	private static final int EOF = -1;
+	private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+	private static final String UTF_16BE = "UTF-16BE"; //$NON-NLS-1$
+	private static final String UTF_16LE = "UTF-16LE"; //$NON-NLS-1$
+
+	private char[] buffer = new char[256];
+	private int position;
+	private int limit;
+	private Reader reader;
+
+	private String declaredEncoding;
+	private boolean xmlDeclFound;
+	private String dtdFound;
+	private String elementFound;
+	private String namespaceFound;
+
+	public String getDTD() {
+		return dtdFound;
+	}
+
+	public String getRootName() {
+		return elementFound;
+	}
+
+	public String getRootNamespace() {
+		return namespaceFound;
+	}
+
+	/**
+	 * Scans the given contents, which must be positioned at their beginning. The
+	 * stream is left at an arbitrary position.
+	 *
+	 * @return one of <code>NOT_XML</code>, <code>FOUND</code> or <code>UNKNOWN</code>
+	 */
+	public int scan(InputStream contents) throws IOException {
+		// detect the encoding the same way as parsers do (XML 1.0, appendix F)
+		byte[] start = new byte[4];
+		int read = 0;
+		for (int c; read < start.length && (c = contents.read()) != -1;)
+			start[read++] = (byte) c;
+		contents.reset();
+		if (read < start.length)
+			return UNKNOWN;
+		int b0 = start[0] & 0xFF, b1 = start[1] & 0xFF, b2 = start[2] & 0xFF, b3 = start[3] & 0xFF;
+		if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF)
+			return scan(contents, UTF_8, 3, false);
+		if (b0 == 0xFE && b1 == 0xFF)
+			return scan(contents, UTF_16BE, 2, false);
+		if (b0 == 0xFF && b1 == 0xFE && (b2 != 0 || b3 != 0))
+			return scan(contents, UTF_16LE, 2, false);
+		if (b0 == 0 && b1 == '<' && b2 == 0 && b3 == '?')
+			return scan(contents, UTF_16BE, 0, false);
+		if (b0 == '<' && b1 == 0 && b2 == '?' && b3 == 0)
+			return scan(contents, UTF_16LE, 0, false);
+		if (b0 == 0 || b1 == 0 || b2 == 0 || b3 == 0)
+			// UCS-4 or some other encoding we don't handle
+			return UNKNOWN;
+		if (b0 == 0x4C && b1 == 0x6F && b2 == 0xA7 && b3 == 0x94)
+			// "<?xm" in EBCDIC
+			return UNKNOWN;
+		// an ASCII compatible encoding, the XML declaration will tell which one
+		return scan(contents, UTF_8, 0, true);
+	}
+
+	/**
+	 * Scans the given contents, which must be positioned at their beginning. The
+	 * reader is left at an arbitrary position.
+	 *
+	 * @return one of <code>NOT_XML</code>, <code>FOUND</code> or <code>UNKNOWN</code>
+	 */
+	public int scan(Reader contents) throws IOException {
+		reader = contents;
+		try {
+			scanXMLDecl();
+			scanDocument();
+			return FOUND;
+		} catch (StopScanningException e) {
+			return e.result;
+		}
+	}
+
+	private int scan(InputStream contents, String encoding, int bomLength, boolean detectEncoding) throws IOException {
+		contents.reset();
+		if (contents.skip(bomLength) != bomLength)
+			return UNKNOWN;
+		reader = new InputStreamReader(contents, encoding);
+		position = limit = 0;
+		declaredEncoding = null;
+		xmlDeclFound = false;
+		try {
+			scanXMLDecl();
+			if (declaredEncoding != null && !declaredEncoding.equalsIgnoreCase(encoding) && !(encoding != UTF_8 && declaredEncoding.equalsIgnoreCase("UTF-16"))) { //$NON-NLS-1$
+				// the encoding may only be changed when it was not detected from the first bytes,
+				// and a declaration that could be read as UTF-8 can't be in a wide encoding
+				if (!detectEncoding || isWideEncoding(declaredEncoding))
+					return UNKNOWN;
+				// start over with the declared encoding
+				try {
+					return scan(contents, declaredEncoding, 0, false);
+				} catch (UnsupportedEncodingException e) {
+					return UNKNOWN;
+				}
+			}
+			scanDocument();
+			return FOUND;
+		} catch (StopScanningException e) {
+			// without a declaration, the guessed encoding may be wrong and the
+			// contents decoded as text may still be a document a parser understands
+			if (e.result == NOT_XML && detectEncoding && !xmlDeclFound)
+				return UNKNOWN;
+			return e.result;
+		}
+	}
+
+	private static boolean isWideEncoding(String name) {
+		String[] prefixes = {"UTF-16", "UTF-32", "UCS", "ISO-10646"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		for (int i = 0; i < prefixes.length; i++)
+			if (name.regionMatches(true, 0, prefixes[i], 0, prefixes[i].length()))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Scans the document after the XML declaration, up to the start tag of the
+	 * top-level element.
+	 */
+	private void scanDocument() throws IOException, StopScanningException {
+		boolean doctypeFound = false;
+		while (true) {
+			skipWhitespace();
+			int c = peek(0);
+			if (c != '<') {
+				// text is not allowed before the top-level element
+				if (c > ' ' && c < 0x7F)
+					throw STOP_NOT_XML;
+				throw STOP_UNKNOWN;
+			}
+			if (startsWith("<!--")) //$NON-NLS-1$
+				scanComment();
+			else if (startsWith("<?")) //$NON-NLS-1$
+				scanProcessingInstruction();
+			else if (!doctypeFound && startsWith("<!DOCTYPE")) { //$NON-NLS-1$
+				scanDoctype();
+				doctypeFound = true;
+			} else if (isNameStart(peek(1))) {
+				scanRootElement();
+				return;
+			} else
+				throw STOP_UNKNOWN;
+		}
+	}
+
+	/**
+	 * Scans the XML declaration at the beginning of the document, if there is one.
+	 */
+	private void scanXMLDecl() throws IOException, StopScanningException {
+		if (peek(0) == '\uFEFF')
+			// a byte order mark is only expected in byte streams, where it is skipped
+			throw STOP_UNKNOWN;
+		if (!startsWith("<?xml") || !isWhitespace(peek(5))) //$NON-NLS-1$
+			return;
+		position += 5;
+		// the version is required, and the order is fixed
+		String[] expected = {"version", "encoding", "standalone"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		int next = 0;
+		while (true) {
+			boolean whitespace = skipWhitespace();
+			if (startsWith("?>")) { //$NON-NLS-1$
+				position += 2;
+				break;
+			}
+			if (!whitespace)
+				throw STOP_UNKNOWN;
+			String name = scanName();
+			int current = next;
+			while (current < expected.length && !expected[current].equals(name))
+				current++;
+			if (current == expected.length || (next == 0 && current != 0))
+				throw STOP_UNKNOWN;
+			String value = scanEquals();
+			if (current == 0 && !"1.0".equals(value)) //$NON-NLS-1$
+				throw STOP_UNKNOWN;
+			if (current == 1)
+				declaredEncoding = value;
+			if (current == 2 && !"yes".equals(value) && !"no".equals(value)) //$NON-NLS-1$ //$NON-NLS-2$
+				throw STOP_UNKNOWN;
+			next = current + 1;
+		}
+		if (next == 0)
+			throw STOP_UNKNOWN;
+		xmlDeclFound = true;
+	}
+
+	private void scanComment() throws IOException, StopScanningException {
+		position += 4;
+		while (true) {
+			int c = read();
+			checkChar(c);
+			if (c == '-' && peek(0) == '-') {
+				// "--" is only allowed at the end of the comment
+				if (peek(1) != '>')
+					throw STOP_UNKNOWN;
+				position += 2;
+				return;
+			}
+		}
+	}
+
+	private void scanProcessingInstruction() throws IOException, StopScanningException {
+		position += 2;
+		String target = scanName();
+		if (target.equalsIgnoreCase("xml")) //$NON-NLS-1$
+			throw STOP_UNKNOWN;
+		if (!skipWhitespace() && !startsWith("?>")) //$NON-NLS-1$
+			throw STOP_UNKNOWN;
+		while (!startsWith("?>")) //$NON-NLS-1$
+			checkChar(read());
+		position += 2;
+	}
+
+	private void scanDoctype() throws IOException, StopScanningException {
+		position += 9;
+		if (!skipWhitespace())
+			throw STOP_UNKNOWN;
+		scanName();
+		boolean whitespace = skipWhitespace();
+		if (startsWith("SYSTEM") || startsWith("PUBLIC")) { //$NON-NLS-1$ //$NON-NLS-2$
+			if (!whitespace)
+				throw STOP_UNKNOWN;
+			boolean isPublic = peek(0) == 'P';
+			position += 6;
+			if (!skipWhitespace())
+				throw STOP_UNKNOWN;
+			if (isPublic) {
+				String publicId = scanQuoted();
+				for (int i = 0; i < publicId.length(); i++)
+					if (!isPublicIdChar(publicId.charAt(i)))
+						throw STOP_UNKNOWN;
+				if (!skipWhitespace())
+					throw STOP_UNKNOWN;
+			}
+			dtdFound = scanQuoted();
+			skipWhitespace();
+		}
+		// an internal subset may contain anything, leave it to a parser
+		if (read() != '>')
+			throw STOP_UNKNOWN;
+	}
+
+	private void scanRootElement() throws IOException, StopScanningException {
+		position += 1;
+		String qualifiedName = scanName();
+		Map attributes = new HashMap();
+		while (true) {
+			boolean whitespace = skipWhitespace();
+			if (peek(0) == '>' || startsWith("/>")) //$NON-NLS-1$
+				break;
+			if (!whitespace)
+				throw STOP_UNKNOWN;
+			String name = scanName();
+			if (attributes.put(name, scanEquals()) != null)
+				// duplicate attribute
+				throw STOP_UNKNOWN;
+		}
+		// check the names and prefixes, as namespace aware parsers do
+		checkQualifiedName(qualifiedName);
+		for (Iterator i = attributes.entrySet().iterator(); i.hasNext();) {
+			Map.Entry attribute = (Map.Entry) i.next();
+			String name = (String) attribute.getKey();
+			checkQualifiedName(name);
+			if (name.startsWith("xmlns:")) { //$NON-NLS-1$
+				// the reserved prefixes can't be declared, and prefixes can't be undeclared
+				if (name.equals("xmlns:xml") || name.equals("xmlns:xmlns") || ((String) attribute.getValue()).length() == 0) //$NON-NLS-1$ //$NON-NLS-2$
+					throw STOP_UNKNOWN;
+			} else if (name.indexOf(':') != -1)
+				getNamespace(name, attributes);
+		}
+		int colon = qualifiedName.indexOf(':');
+		if (colon == -1) {
+			String namespace = (String) attributes.get("xmlns"); //$NON-NLS-1$
+			namespaceFound = namespace == null ? "" : namespace; //$NON-NLS-1$
+			elementFound = qualifiedName;
+			return;
+		}
+		namespaceFound = getNamespace(qualifiedName, attributes);
+		elementFound = qualifiedName.substring(colon + 1);
+	}
+
+	/**
+	 * Fails on names that are not valid qualified names in the sense of XML namespaces.
+	 */
+	private static void checkQualifiedName(String name) throws StopScanningException {
+		int colon = name.indexOf(':');
+		if (colon == -1)
+			return;
+		if (colon == 0 || colon == name.length() - 1 || name.indexOf(':', colon + 1) != -1 || !isNameStart(name.charAt(colon + 1)))
+			throw STOP_UNKNOWN;
+	}
+
+	private String getNamespace(String qualifiedName, Map attributes) throws StopScanningException {
+		int colon = qualifiedName.indexOf(':');
+		String namespace = (String) attributes.get("xmlns:" + qualifiedName.substring(0, colon)); //$NON-NLS-1$
+		if (namespace == null)
+			// undeclared prefix, or one of the reserved ones
+			throw STOP_UNKNOWN;
+		return namespace;
+	}
+
+	/**
+	 * Scans an equal sign and the quoted value following it.
+	 */
+	private String scanEquals() throws IOException, StopScanningException {
+		skipWhitespace();
+		if (read() != '=')
+			throw STOP_UNKNOWN;
+		skipWhitespace();
+		return scanQuoted();
+	}
+
+	/**
+	 * Scans a quoted value, which must not need any normalization.
+	 */
+	private String scanQuoted() throws IOException, StopScanningException {
+		int quote = read();
+		if (quote != '"' && quote != '\'')
+			throw STOP_UNKNOWN;
+		StringBuffer value = new StringBuffer();
+		for (int c; (c = read()) != quote;) {
+			checkChar(c);
+			if (c == '<' || c == '&' || c == '\t' || c == '\r' || c == '\n')
+				throw STOP_UNKNOWN;
+			value.append((char) c);
+		}
+		return value.toString();
+	}
+
+	private String scanName() throws IOException, StopScanningException {
+		if (!isNameStart(peek(0)))
+			throw STOP_UNKNOWN;
+		// peek at the whole name before consuming it, so that it stays in the buffer
+		int length = 1;
+		while (isNameChar(peek(length)))
+			if (++length == buffer.length)
+				throw STOP_UNKNOWN;
+		if (peek(length) >= 0x80)
+			// non-ASCII names are not checked, leave them to a parser
+			throw STOP_UNKNOWN;
+		String name = new String(buffer, position, length);
+		position += length;
+		return name;
+	}
+
+	private static boolean isNameStart(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':';
+	}
+
+	private static boolean isNameChar(int c) {
+		return isNameStart(c) || (c >= '0' && c <= '9') || c == '-' || c == '.';
+	}
+
+	private static boolean isPublicIdChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == ' ' || "-'()+,./:=?;!*#@$_%".indexOf(c) != -1; //$NON-NLS-1$
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+
+	/**
+	 * Fails on characters that are not allowed in XML documents, or which may
+	 * be the result of decoding the contents with the wrong encoding.
+	 */
+	private static void checkChar(int c) throws StopScanningException {
+		if (c == EOF || (c < ' ' && !isWhitespace(c)) || c == 0xFFFD || c == 0xFFFE || c == 0xFFFF)
+			throw STOP_UNKNOWN;
+	}
+
+	private boolean skipWhitespace() throws IOException {
+		int start = position;
+		while (isWhitespace(peek(0)))
+			position++;
+		return position != start;
+	}
+
+	private boolean startsWith(String prefix) throws IOException {
+		for (int i = prefix.length() - 1; i >= 0; i--)
+			if (peek(i) != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	private int read() throws IOException {
+		int c = peek(0);
+		if (c != EOF)
+			position++;
+		return c;
+	}
+
+	/**
+	 * Returns the character at the given offset from the current position,
+	 * without consuming it. The offset must be smaller than the buffer size.
+	 */
+	private int peek(int offset) throws IOException {
+		if (position + offset >= limit) {
+			// compact the buffer and fill it
+			if (position > 0) {
+				System.arraycopy(buffer, position, buffer, 0, limit - position);
+				limit -= position;
+				position = 0;
+			}
+			while (offset >= limit) {
+				int read = reader.read(buffer, limit, buffer.length - limit);
+				if (read == -1)
+					return EOF;
+				limit += read;
+			}
+		}
+		return buffer[position + offset];
+	}
+}
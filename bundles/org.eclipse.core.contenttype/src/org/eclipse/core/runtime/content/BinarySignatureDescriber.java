@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2008 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -54,6 +54,13 @@ public final class BinarySignatureDescriber implements IContentDescriber, IExecu
 	private final static String SIGNATURE = "signature"; //$NON-NLS-1$
 	private final static String OFFSET = "offset"; //$NON-NLS-1$
 	private static final Object REQUIRED = "required"; //$NON-NLS-1$
+	private static final String HEADER = "org.eclipse.core.runtime.content.BinarySignatureDescriber.header"; //$NON-NLS-1$
+	private static final String CONTENTS = "org.eclipse.core.runtime.content.BinarySignatureDescriber.contents"; //$NON-NLS-1$
+	/* (Intentionally not included in javadoc)
+	 * The minimum number of bytes read at the beginning of the contents, so that
+	 * most signatures can be matched from the same header.
+	 */
+	private static final int HEADER_SIZE = 0x400;
 	private byte[] signature;
 	private int offset;
 	private boolean required = true;
@@ -74,6 +81,52 @@ public final class BinarySignatureDescriber implements IContentDescriber, IExecu
 		return VALID;
 	}
 
+	/**
+	 * Describes the contents like {@link #describe(InputStream, IContentDescription)},
+	 * reading them only once for all signature describers sharing the given properties.
+	 * The contents must be positioned at their beginning.
+	 *
+	 * @noreference This method is not intended to be referenced by clients.
+	 * @since 3.5
+	 */
+	public int describe(InputStream contents, IContentDescription description, Map properties) throws IOException {
+		int notValid = required ? INVALID : INDETERMINATE;
+		byte[] header = getHeader(contents, offset + signature.length, properties);
+		if (header.length < offset + signature.length)
+			return notValid;
+		for (int i = 0; i < signature.length; i++)
+			if (signature[i] != header[offset + i])
+				return notValid;
+		return VALID;
+	}
+
+	/* (Intentionally not included in javadoc)
+	 * Returns the first bytes of the contents, at least as many as needed unless
+	 * the contents are shorter. The header is read once and kept in the properties,
+	 * as the whole contents if they are shorter than what was read.
+	 */
+	private static byte[] getHeader(InputStream contents, int needed, Map properties) throws IOException {
+		byte[] header = (byte[]) properties.get(CONTENTS);
+		if (header != null)
+			return header;
+		header = (byte[]) properties.get(HEADER);
+		if (header != null && header.length >= needed)
+			return header;
+		int requested = Math.max(needed, HEADER_SIZE);
+		byte[] buffer = new byte[requested];
+		int read = 0;
+		for (int count; read < requested && (count = contents.read(buffer, read, requested - read)) != -1;)
+			read += count;
+		if (read == requested) {
+			properties.put(HEADER, buffer);
+			return buffer;
+		}
+		header = new byte[read];
+		System.arraycopy(buffer, 0, header, 0, read);
+		properties.put(CONTENTS, header);
+		return header;
+	}
+
 	/* (Intentionally not included in javadoc)
 	 * @see IContentDescriber#getSupportedOptions
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2009 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.core.runtime.content;
 
 import java.util.EventObject;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.preferences.IScopeContext;
 
 /**
@@ -147,6 +148,58 @@ public interface IContentTypeManager extends IContentTypeMatcher {
 		IContentType[] select(IContentType[] candidates, boolean fileName, boolean content);
 	}
 
+	/**
+	 * A selection policy whose results only depend on the arguments it is given.
+	 * A matcher using such a policy remembers what the policy selected, and does
+	 * not ask it again for the same candidates and type of matching until the
+	 * content types change.
+	 * <p>
+	 * Clients may implement this interface.
+	 * </p>
+	 * 
+	 * @see IContentTypeManager#getMatcher(IContentTypeManager.ISelectionPolicy, IScopeContext)
+	 * @since 3.5
+	 */
+	public interface ICacheableSelectionPolicy extends ISelectionPolicy {
+		// a marker interface
+	}
+
+	/**
+	 * A selection policy only interested in the best content type for some
+	 * contents. When matching contents, a matcher using such a policy stops
+	 * evaluating the candidates at the first valid one in the preferred order,
+	 * and gives the policy that content type only. If no candidate is valid,
+	 * the policy is given all the indeterminate ones, as usual. Matching file
+	 * names is not affected.
+	 * <p>
+	 * Clients may implement this interface.
+	 * </p>
+	 *
+	 * @see IContentTypeManager#getMatcher(IContentTypeManager.ISelectionPolicy, IScopeContext)
+	 * @since 3.5
+	 */
+	public interface IBestMatchSelectionPolicy extends ISelectionPolicy {
+		// a marker interface
+	}
+
+	/**
+	 * An operation changing the settings of several content types at once.
+	 * <p>
+	 * Clients may implement this interface.
+	 * </p>
+	 * 
+	 * @see IContentTypeManager#batchSettingsChanges(IContentTypeManager.ISettingsRunnable)
+	 * @since 3.5
+	 */
+	public interface ISettingsRunnable {
+		/**
+		 * Changes the settings of content types.
+		 * 
+		 * @throws CoreException if a change fails
+		 */
+		public void run() throws CoreException;
+	}
+
 	/**
 	 * Content type identifier constant for platform's primary 
 	 * text-based content type: <code>org.eclipse.core.runtime.text</code>. 
@@ -174,6 +227,29 @@ public interface IContentTypeManager extends IContentTypeMatcher {
 	 */
 	public void addContentTypeChangeListener(IContentTypeChangeListener listener);
 
+	/**
+	 * Runs the given operation, deferring the effects of the changes it makes to
+	 * content type settings until it completes. The changed preferences are
+	 * saved once, and listeners are notified once for each content type that
+	 * changed, instead of after every change. This is much faster when changing
+	 * many settings, such as when importing file associations.
+	 * <p>
+	 * The changes are saved and notified even if the operation fails. Operations
+	 * nested in the given one are part of the same batch. Only the changes made
+	 * by the current thread are deferred.
+	 * </p>
+	 * 
+	 * @param runnable the operation changing content type settings
+	 * @throws CoreException if the operation fails, or if the changes could not 
+	 * be saved
+	 * @see IContentType#addFileSpec(String, int)
+	 * @see IContentType#removeFileSpec(String, int)
+	 * @see IContentType#setDefaultCharset(String)
+	 * @see IContentTypeSettings
+	 * @since 3.5
+	 */
+	public void batchSettingsChanges(ISettingsRunnable runnable) throws CoreException;
+
 	/**
 	 * Returns all content types known by the platform. 
 	 * <p>
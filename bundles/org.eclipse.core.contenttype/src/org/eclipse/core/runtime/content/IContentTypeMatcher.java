@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2006 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -24,6 +24,41 @@ import org.eclipse.core.runtime.preferences.IScopeContext;
  * @since 3.1
  */
 public interface IContentTypeMatcher {
+	/**
+	 * Receives the content types found for each file by
+	 * {@link IContentTypeMatcher#findContentTypesFor(File[], IContentTypeMatcher.IContentTypeRequestor)},
+	 * as soon as they are known.
+	 * <p>
+	 * Clients may implement this interface.
+	 * </p>
+	 * 
+	 * @since 3.5
+	 */
+	public interface IContentTypeRequestor {
+		/**
+		 * Accepts the content types associated to the given file. They are the
+		 * ones {@link IContentTypeMatcher#findContentTypesFor(InputStream, String)}
+		 * would return for the file contents and name.
+		 * 
+		 * @param file one of the files being matched
+		 * @param contentTypes all content types associated to the file
+		 * @return <code>true</code> to keep matching the remaining files, 
+		 * <code>false</code> to stop
+		 */
+		public boolean acceptContentTypes(File file, IContentType[] contentTypes);
+
+		/**
+		 * Accepts an error that occurred while reading the given file. No
+		 * content types are reported for that file.
+		 * 
+		 * @param file one of the files being matched
+		 * @param exception the error that occurred
+		 * @return <code>true</code> to keep matching the remaining files, 
+		 * <code>false</code> to stop
+		 */
+		public boolean acceptException(File file, IOException exception);
+	}
+
 	/**
 	 * Returns the preferred content type for the given contents and file name.
 	 * <p>
@@ -81,6 +116,26 @@ public interface IContentTypeMatcher {
 	 */
 	public IContentType[] findContentTypesFor(InputStream contents, String fileName) throws IOException;
 
+	/**
+	 * Finds the content types associated to each of the given files, from their
+	 * names and contents, and reports them to the given requestor file by file.
+	 * <p>
+	 * This is equivalent to calling {@link #findContentTypesFor(InputStream, String)} 
+	 * for each file, but is much faster for large numbers of files. Files are 
+	 * matched grouped by file extension, so the order in which they are reported 
+	 * is unspecified. Files that cannot be associated to any content type by name
+	 * are reported without being read. Errors occurring while reading a file are
+	 * reported to the requestor, and do not prevent the remaining files from 
+	 * being matched.
+	 * </p>
+	 * 
+	 * @param files the files to match
+	 * @param requestor the requestor receiving the content types of each file
+	 * @see IContentTypeMatcher.IContentTypeRequestor
+	 * @since 3.5
+	 */
+	public void findContentTypesFor(File[] files, IContentTypeRequestor requestor);
+
 	/**
 	 * Returns all content types known by the platform that are associated to the given file name.
 	 * <p> 
@@ -115,6 +170,29 @@ public interface IContentTypeMatcher {
 	 */
 	public IContentDescription getDescriptionFor(InputStream contents, String fileName, QualifiedName[] options) throws IOException;
 
+	/**
+	 * Tries to obtain a description for the contents and name of the given file.
+	 * <p>
+	 * This is equivalent to calling {@link #getDescriptionFor(InputStream, String, QualifiedName[])}
+	 * with the file contents and name, but reads the file directly instead of 
+	 * buffering everything the describers read, which is faster and uses less
+	 * memory.
+	 * </p>
+	 * <p>
+	 * Any IOExceptions that may occur while reading the given file will flow 
+	 * to the caller.
+	 * </p>
+	 *  
+	 * @param file the file to be interpreted
+	 * @param options an array of keys for all properties that should be 
+	 * described, or <code>IContentDescription.ALL</code>,  for all of them 
+	 * @return a content description if one could be obtained, or <code>null</code>
+	 * @throws IOException if an error occurs while reading the file
+	 * @see IContentDescription 
+	 * @since 3.5
+	 */
+	public IContentDescription getDescriptionFor(File file, QualifiedName[] options) throws IOException;
+
 	/**
 	 * Tries to obtain a description for the given contents and file name. 
 	 * <p>
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2010 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,8 +13,8 @@ package org.eclipse.core.runtime.content;
 import java.io.*;
 import java.util.HashMap;
 import java.util.Map;
+import org.eclipse.core.internal.content.CharsetSniffer;
 import org.eclipse.core.internal.content.TextContentDescriber;
-import org.eclipse.core.internal.content.Util;
 import org.eclipse.core.runtime.QualifiedName;
 
 /**
@@ -58,6 +58,14 @@ public class XMLContentDescriber extends TextContentDescriber implements ITextCo
 		return describe2(input, description, new HashMap());
 	}
 
+	/**
+	 * @noreference This method is not intended to be referenced by clients.
+	 * @since 3.5
+	 */
+	public int describe(InputStream input, IContentDescription description, Map properties) throws IOException {
+		return describe2(input, description, properties);
+	}
+
 	int describe2(InputStream input, IContentDescription description, Map properties) throws IOException {
 		if (!isProcessed(properties))
 			fillContentProperties(input, description, properties);
@@ -82,19 +90,12 @@ public class XMLContentDescriber extends TextContentDescriber implements ITextCo
 	}
 
 	private void fillContentProperties(InputStream input, IContentDescription description, Map properties) throws IOException {
-		byte[] bom = Util.getByteOrderMark(input);
-		String xmlDeclEncoding = "UTF-8"; //$NON-NLS-1$
-		input.reset();
-		if (bom != null) {
-			if (bom == IContentDescription.BOM_UTF_16BE)
-				xmlDeclEncoding = "UTF-16BE"; //$NON-NLS-1$
-			else if (bom == IContentDescription.BOM_UTF_16LE)
-				xmlDeclEncoding = "UTF-16LE"; //$NON-NLS-1$
-			// skip BOM to make comparison simpler
-			input.skip(bom.length);
+		// the BOM and the XML declaration are sniffed once for all describers
+		CharsetSniffer sniffer = CharsetSniffer.sniff(input, properties);
+		byte[] bom = sniffer.getByteOrderMark();
+		if (bom != null)
 			properties.put(BOM, bom);
-		}
-		fillContentProperties(readXMLDecl(input, xmlDeclEncoding), description, properties);
+		fillContentProperties(sniffer.getXMLDeclaration(), description, properties);
 	}
 
 	private void fillContentProperties(String line, IContentDescription description, Map properties) throws IOException {
@@ -140,33 +141,6 @@ public class XMLContentDescriber extends TextContentDescriber implements ITextCo
 		return xmlDecl.endsWith(XML_DECL_END);
 	}
 
-	private String readXMLDecl(InputStream input, String encoding) throws IOException {
-		byte[] xmlDeclEndBytes = XML_DECL_END.getBytes(encoding);
-
-		// allocate an array for the input
-		int xmlDeclSize = 100 * xmlDeclEndBytes.length / 2;
-		byte[] xmlDecl = new byte[xmlDeclSize];
-
-		// looks for XMLDecl end (?>)
-		int c = 0;
-		int read = 0;
-
-		// count is incremented when subsequent read characters match the xmlDeclEnd bytes,
-		// the end of xmlDecl is reached, when count equals the xmlDeclEnd length
-		int count = 0;
-
-		while (read < xmlDecl.length && (c = input.read()) != -1) {
-			if (c == xmlDeclEndBytes[count])
-				count++;
-			else
-				count = 0;
-			xmlDecl[read++] = (byte) c;
-			if (count == xmlDeclEndBytes.length)
-				break;
-		}
-		return new String(xmlDecl, 0, read, encoding);
-	}
-
 	private String readXMLDecl(Reader input) throws IOException {
 		BufferedReader reader = new BufferedReader(input);
 		String xmlDecl = new String();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2009 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ import java.io.*;
 import java.util.*;
 import javax.xml.parsers.ParserConfigurationException;
 import org.eclipse.core.internal.content.ContentMessages;
+import org.eclipse.core.internal.content.XMLPrologScanner;
 import org.eclipse.core.internal.content.XMLRootHandler;
 import org.eclipse.core.internal.runtime.RuntimeLog;
 import org.eclipse.core.runtime.*;
@@ -202,6 +203,23 @@ public final class XMLRootElementContentDescriber2 extends XMLContentDescriber i
 	}
 
 	static void fillContentProperties(InputSource input, Map properties) throws IOException {
+		// most documents can be handled by a simple scan, without a parser
+		XMLPrologScanner scanner = new XMLPrologScanner();
+		InputStream byteStream = input.getByteStream();
+		int scanned = byteStream != null ? scanner.scan(byteStream) : scanner.scan(input.getCharacterStream());
+		if (scanned == XMLPrologScanner.NOT_XML) {
+			properties.put(RESULT, new Boolean(false));
+			return;
+		}
+		if (scanned == XMLPrologScanner.FOUND) {
+			fillContentProperties(scanner.getRootName(), scanner.getDTD(), scanner.getRootNamespace(), properties);
+			return;
+		}
+		// the scanner gave up, start over with a parser
+		if (byteStream != null)
+			byteStream.reset();
+		else
+			input.getCharacterStream().reset();
 		XMLRootHandler xmlHandler = new XMLRootHandler(true);
 		try {
 			if (!xmlHandler.parseContents(input)) {
@@ -218,13 +236,14 @@ public final class XMLRootElementContentDescriber2 extends XMLContentDescriber i
 			RuntimeLog.log(new Status(IStatus.ERROR, ContentMessages.OWNER_NAME, 0, message, e));
 			throw new RuntimeException(message);
 		}
-		String element = xmlHandler.getRootName();
+		fillContentProperties(xmlHandler.getRootName(), xmlHandler.getDTD(), xmlHandler.getRootNamespace(), properties);
+	}
+
+	private static void fillContentProperties(String element, String dtd, String namespace, Map properties) {
 		if (element != null)
 			properties.put(ELEMENT, element);
-		String dtd = xmlHandler.getDTD();
 		if (dtd != null)
 			properties.put(DTD, dtd);
-		String namespace = xmlHandler.getRootNamespace();
 		if (namespace != null)
 			properties.put(NAMESPACE, namespace);
 		properties.put(RESULT, new Boolean(true));
@@ -279,7 +279,7 @@ class ImplicitJobs {
 			notifyWaitingThreadJobs(threadJob);
 			((InternalJob) threadJob).setWaitQueueStamp(InternalJob.T_NONE);
 		}
-		manager.dequeue(manager.waitingThreadJobs, threadJob);
+		manager.removeWaitingThreadJob(threadJob);
 	}
 
 	synchronized void addWaiting(ThreadJob threadJob) {
@@ -288,7 +288,7 @@ class ImplicitJobs {
 			notifyWaitingThreadJobs(threadJob);
 			((InternalJob) threadJob).setWaitQueueStamp(manager.waitQueueCounter.increment());
 		}
-		manager.enqueue(manager.waitingThreadJobs, threadJob);
+		manager.addWaitingThreadJob(threadJob);
 	}
 
 	synchronized ThreadJob getThreadJob(Thread thread) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2013 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,8 @@
 package org.eclipse.core.internal.jobs;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.*;
 
@@ -61,6 +63,16 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 */
 	private static final int M_RUN_CANCELED = 0x0800;
 
+	/*
+	 * The job priority is packed into the flags as well, to keep the job
+	 * instances small when many jobs are queued.
+	 */
+	private static final int M_PRIORITY = 0xFF0000;
+	private static final int PRIORITY_SHIFT = 16;
+
+	private static final AtomicIntegerFieldUpdater<InternalJob> FLAGS = AtomicIntegerFieldUpdater.newUpdater(InternalJob.class, "flags"); //$NON-NLS-1$
+	private static final AtomicReferenceFieldUpdater<InternalJob, ListenerList> LISTENERS = AtomicReferenceFieldUpdater.newUpdater(InternalJob.class, ListenerList.class, "listeners"); //$NON-NLS-1$
+
 	private static int nextJobNumber = 0;
 	protected static final JobManager manager = JobManager.getInstance();
 
@@ -74,13 +86,18 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 */
 	static final long T_NONE = -1;
 
-	private volatile int flags = Job.NONE;
+	/**
+	 * The job state, priority and flags. Always updated through {@link #setFlags(int, int)},
+	 * as the callers changing different bits don't hold the same locks.
+	 */
+	private volatile int flags = Job.NONE | (Job.LONG << PRIORITY_SHIFT);
 	private final int jobNumber = getNextJobNumber();
 	/**
-	 * The list of job listeners. Never null.
+	 * The list of job listeners, or <code>null</code> if no listener has ever
+	 * been added. Created lazily because most jobs never have listeners.
 	 * @GuardedBy("itself")
 	 */
-	private final ListenerList listeners = new ListenerList(ListenerList.IDENTITY);
+	private volatile ListenerList listeners;
 
 	private volatile IProgressMonitor monitor;
 	private String name;
@@ -94,7 +111,6 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 * @GuardedBy("manager.lock")
 	 */
 	private InternalJob previous;
-	private int priority = Job.LONG;
 	/**
 	 * Arbitrary properties (key,value) pairs, attached
 	 * to a job instance by a third party.
@@ -158,7 +174,12 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 * @see Job#addJobListener(IJobChangeListener)
 	 */
 	protected void addJobChangeListener(IJobChangeListener listener) {
-		listeners.add(listener);
+		ListenerList list = listeners;
+		if (list == null) {
+			LISTENERS.compareAndSet(this, null, new ListenerList(ListenerList.IDENTITY));
+			list = listeners;
+		}
+		list.add(listener);
 	}
 
 	/**
@@ -213,13 +234,20 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	}
 
 	/**
-	 * Returns the job listeners that are only listening to this job. Never returns
-	 * null.
+	 * Returns the job listeners that are only listening to this job, or
+	 * <code>null</code> if no listener has ever been added to this job.
 	 */
 	final ListenerList getListeners() {
 		return listeners;
 	}
 
+	/**
+	 * Returns the unique number assigned to this job instance when it was created.
+	 */
+	final int getJobNumber() {
+		return jobNumber;
+	}
+
 	/* (non-Javadoc)
 	 * @see Job#getName()
 	 */
@@ -231,7 +259,7 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 * @see Job#getPriority()
 	 */
 	protected int getPriority() {
-		return priority;
+		return (flags & M_PRIORITY) >>> PRIORITY_SHIFT;
 	}
 
 	/**
@@ -312,7 +340,7 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 * Must be called from JobManager#setPriority
 	 */
 	final void internalSetPriority(int newPriority) {
-		this.priority = newPriority;
+		setFlags(M_PRIORITY, newPriority << PRIORITY_SHIFT);
 	}
 
 	/**
@@ -326,7 +354,7 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 * Must be called from JobManager#changeState
 	 */
 	final void internalSetState(int i) {
-		flags = (flags & ~M_STATE) | i;
+		setFlags(M_STATE, i);
 	}
 
 	/**
@@ -352,6 +380,7 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 
 	/**
 	 * Returns true if this job conflicts with the given job, and false otherwise.
+	 * @GuardedBy("manager.lock")
 	 */
 	final boolean isConflicting(InternalJob otherJob) {
 		ISchedulingRule otherRule = otherJob.getRule();
@@ -359,8 +388,8 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 			return false;
 		//if one of the rules is a compound rule, it must be asked the question.
 		if (schedulingRule.getClass() == MultiRule.class)
-			return schedulingRule.isConflicting(otherRule);
-		return otherRule.isConflicting(schedulingRule);
+			return manager.isConflicting(schedulingRule, otherRule);
+		return manager.isConflicting(otherRule, schedulingRule);
 	}
 
 	/* (non-javadoc)
@@ -414,7 +443,9 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 * @see Job#removeJobListener(IJobChangeListener)
 	 */
 	protected void removeJobChangeListener(IJobChangeListener listener) {
-		listeners.remove(listener);
+		ListenerList list = listeners;
+		if (list != null)
+			list.remove(listener);
 	}
 
 	/* (non-Javadoc)
@@ -434,15 +465,26 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	 * Sets whether this job was canceled when it was about to run
 	 */
 	final void setAboutToRunCanceled(boolean value) {
-		flags = value ? flags | M_ABOUT_TO_RUN_CANCELED : flags & ~M_ABOUT_TO_RUN_CANCELED;
+		setFlags(M_ABOUT_TO_RUN_CANCELED, value ? M_ABOUT_TO_RUN_CANCELED : 0);
 
 	}
 
+	/**
+	 * Atomically replaces the bits of the flags in the given mask with the given
+	 * value, leaving the other bits alone.
+	 */
+	private void setFlags(int mask, int value) {
+		int current;
+		do {
+			current = flags;
+		} while (!FLAGS.compareAndSet(this, current, (current & ~mask) | value));
+	}
+
 	/**
 	 * Sets whether this job was canceled when it was running
 	 */
 	final void setRunCanceled(boolean value) {
-		flags = value ? flags | M_RUN_CANCELED : flags & ~M_RUN_CANCELED;
+		setFlags(M_RUN_CANCELED, value ? M_RUN_CANCELED : 0);
 	}
 
 	/* (non-Javadoc)
@@ -522,7 +564,7 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 		} else {
 			ObjectMap temp = properties;
 			if (temp == null)
-				temp = new ObjectMap(5);
+				temp = new ObjectMap(1);
 			else
 				temp = (ObjectMap) properties.clone();
 			temp.put(key, value);
@@ -563,7 +605,7 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	protected void setSystem(boolean value) {
 		if (getState() != Job.NONE)
 			throw new IllegalStateException();
-		flags = value ? flags | M_SYSTEM : flags & ~M_SYSTEM;
+		setFlags(M_SYSTEM, value ? M_SYSTEM : 0);
 	}
 
 	/* (non-javadoc)
@@ -579,7 +621,7 @@ public abstract class InternalJob extends PlatformObject implements Comparable {
 	protected void setUser(boolean value) {
 		if (getState() != Job.NONE)
 			throw new IllegalStateException();
-		flags = value ? flags | M_USER : flags & ~M_USER;
+		setFlags(M_USER, value ? M_USER : 0);
 	}
 
 	/* (Non-javadoc)
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2012 IBM Corporation and others.
+ * Copyright (c) 2009, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,12 +10,14 @@
  *******************************************************************************/
 package org.eclipse.core.internal.jobs;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.jobs.Job;
 
 /**
  * Used to perform internal JobManager tasks. Currently, this is limited to checking 
- * progress monitors while a thread is performing a blocking wait in ThreadJob. 
+ * progress monitors while a thread is performing a blocking wait in ThreadJob or
+ * in a family join. 
  */
 public class InternalWorker extends Thread {
 	private final JobManager manager;
@@ -32,13 +34,18 @@ public class InternalWorker extends Thread {
 	/**
 	* Will loop until there are progress monitors to check. While there are monitors
 	* registered, it will check cancelation every 250ms, and if it is canceled it will
-	* interrupt the ThreadJob that is performing a blocking wait. 
+	* wake up the thread that is performing a blocking wait. The waiting thread is
+	* notified on the lock it is waiting on, so that it never needs to wake up by itself
+	* to check its monitor.
 	*/
 	@Override
 	public void run() {
 		int timeout = 0;
-		synchronized (manager.monitorStack) {
-			while (!canceled) {
+		List<Object> toWake = new ArrayList<Object>();
+		while (true) {
+			synchronized (manager.monitorStack) {
+				if (canceled)
+					return;
 				if (manager.monitorStack.isEmpty()) {
 					timeout = 0;
 				} else {
@@ -48,13 +55,36 @@ public class InternalWorker extends Thread {
 					Object[] o = manager.monitorStack.get(i);
 					IProgressMonitor monitor = (IProgressMonitor) o[1];
 					if (monitor.isCanceled()) {
-						Job job = (Job) o[0];
-						Thread t = job.getThread();
-						if (t != null) {
-							t.interrupt();
-						}
+						Object waiter = o[0];
+						//a thread job is waiting on the state lock of the job blocking it
+						if (waiter instanceof ThreadJob)
+							waiter = ((ThreadJob) waiter).waitLock;
+						if (waiter != null)
+							toWake.add(waiter);
+					}
+				}
+				if (toWake.isEmpty()) {
+					try {
+						manager.monitorStack.wait(timeout);
+					} catch (InterruptedException e) {
+						// loop
 					}
+					continue;
 				}
+			}
+			//don't hold the monitor stack while acquiring the locks of waiting threads
+			for (int i = 0; i < toWake.size(); i++) {
+				Object waiter = toWake.get(i);
+				synchronized (waiter) {
+					waiter.notifyAll();
+				}
+			}
+			toWake.clear();
+			//canceled monitors are checked again after the timeout, in case a waiting
+			//thread missed the notification because it was not waiting yet
+			synchronized (manager.monitorStack) {
+				if (canceled)
+					return;
 				try {
 					manager.monitorStack.wait(timeout);
 				} catch (InterruptedException e) {
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.core.internal.jobs;
 
+import java.util.*;
 import org.eclipse.core.internal.runtime.RuntimeLog;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.*;
@@ -60,11 +61,39 @@ class JobListeners {
 			listener.sleeping(event);
 		}
 	};
+	/**
+	 * Indices of the event types, in the order of the bits of the
+	 * {@link IJobManager} event masks.
+	 */
+	private static final int ABOUT_TO_RUN = 0;
+	private static final int AWAKE = 1;
+	private static final int DONE = 2;
+	private static final int RUNNING = 3;
+	private static final int SCHEDULED = 4;
+	private static final int SLEEPING = 5;
+	private static final int EVENT_TYPES = 6;
+
+	private static final IJobChangeListener[] EMPTY = new IJobChangeListener[0];
+
 	/**
 	 * The global job listeners.
 	 */
 	protected final ListenerList global = new ListenerList(ListenerList.IDENTITY);
 
+	/**
+	 * The event types each global listener is interested in, for the listeners
+	 * that are not interested in all event types.
+	 * @GuardedBy("global")
+	 */
+	private final Map<IJobChangeListener, Integer> masks = new IdentityHashMap<IJobChangeListener, Integer>();
+
+	/**
+	 * The global listeners interested in each event type, in registration order. 
+	 * Recomputed whenever listeners are added or removed, so that notification
+	 * does not need to filter or copy anything.
+	 */
+	private volatile IJobChangeListener[][] interested = computeInterested();
+
 	/**
 	 * TODO Could use an instance pool to re-use old event objects
 	 */
@@ -92,9 +121,9 @@ class JobListeners {
 	 * Process the given doit for all global listeners and all local listeners
 	 * on the given job.
 	 */
-	private void doNotify(final IListenerDoit doit, final IJobChangeEvent event) {
-		//notify all global listeners
-		Object[] listeners = global.getListeners();
+	private void doNotify(final IListenerDoit doit, int type, final IJobChangeEvent event) {
+		//notify all interested global listeners
+		Object[] listeners = interested[type];
 		int size = listeners.length;
 		for (int i = 0; i < size; i++) {
 			try {
@@ -107,7 +136,10 @@ class JobListeners {
 			}
 		}
 		//notify all local listeners
-		listeners = ((InternalJob) event.getJob()).getListeners().getListeners();
+		ListenerList local = ((InternalJob) event.getJob()).getListeners();
+		if (local == null)
+			return;
+		listeners = local.getListeners();
 		size = listeners.length;
 		for (int i = 0; i < size; i++) {
 			try {
@@ -133,39 +165,97 @@ class JobListeners {
 		RuntimeLog.log(new Status(IStatus.ERROR, pluginId, JobManager.PLUGIN_ERROR, message, e));
 	}
 
+	/**
+	 * Returns whether any global listener, or any listener on the given job, is
+	 * interested in the given event type. Used to avoid creating events that
+	 * nobody would receive.
+	 */
+	private boolean hasListeners(int type, Job job) {
+		if (interested[type].length > 0)
+			return true;
+		ListenerList local = ((InternalJob) job).getListeners();
+		return local != null && !local.isEmpty();
+	}
+
+	/**
+	 * Returns the global listeners interested in each event type.
+	 * @GuardedBy("global")
+	 */
+	private IJobChangeListener[][] computeInterested() {
+		Object[] listeners = global.getListeners();
+		IJobChangeListener[][] result = new IJobChangeListener[EVENT_TYPES][];
+		for (int type = 0; type < EVENT_TYPES; type++) {
+			List<IJobChangeListener> matching = new ArrayList<IJobChangeListener>(listeners.length);
+			for (int i = 0; i < listeners.length; i++) {
+				Integer mask = masks.get(listeners[i]);
+				if (mask == null || (mask.intValue() & (1 << type)) != 0)
+					matching.add((IJobChangeListener) listeners[i]);
+			}
+			result[type] = matching.isEmpty() ? EMPTY : matching.toArray(new IJobChangeListener[matching.size()]);
+		}
+		return result;
+	}
+
 	public void add(IJobChangeListener listener) {
-		global.add(listener);
+		add(listener, IJobManager.EVENT_ALL);
+	}
+
+	/**
+	 * Adds a global listener that is only notified of the event types in the given
+	 * mask. If the listener is already registered, its interest mask is replaced.
+	 */
+	public void add(IJobChangeListener listener, int eventMask) {
+		synchronized (global) {
+			global.add(listener);
+			if ((eventMask & IJobManager.EVENT_ALL) == IJobManager.EVENT_ALL)
+				masks.remove(listener);
+			else
+				masks.put(listener, Integer.valueOf(eventMask));
+			interested = computeInterested();
+		}
 	}
 
 	public void remove(IJobChangeListener listener) {
-		global.remove(listener);
+		synchronized (global) {
+			global.remove(listener);
+			masks.remove(listener);
+			interested = computeInterested();
+		}
 	}
 
 	public void aboutToRun(Job job) {
-		doNotify(aboutToRun, newEvent(job));
+		if (hasListeners(ABOUT_TO_RUN, job))
+			doNotify(aboutToRun, ABOUT_TO_RUN, newEvent(job));
 	}
 
 	public void awake(Job job) {
-		doNotify(awake, newEvent(job));
+		if (hasListeners(AWAKE, job))
+			doNotify(awake, AWAKE, newEvent(job));
 	}
 
 	public void done(Job job, IStatus result, boolean reschedule) {
+		if (!hasListeners(DONE, job))
+			return;
 		JobChangeEvent event = newEvent(job, result);
 		event.reschedule = reschedule;
-		doNotify(done, event);
+		doNotify(done, DONE, event);
 	}
 
 	public void running(Job job) {
-		doNotify(running, newEvent(job));
+		if (hasListeners(RUNNING, job))
+			doNotify(running, RUNNING, newEvent(job));
 	}
 
 	public void scheduled(Job job, long delay, boolean reschedule) {
+		if (!hasListeners(SCHEDULED, job))
+			return;
 		JobChangeEvent event = newEvent(job, delay);
 		event.reschedule = reschedule;
-		doNotify(scheduled, event);
+		doNotify(scheduled, SCHEDULED, event);
 	}
 
 	public void sleeping(Job job) {
-		doNotify(sleeping, newEvent(job));
+		if (hasListeners(SLEEPING, job))
+			doNotify(sleeping, SLEEPING, newEvent(job));
 	}
 }
@@ -62,6 +62,12 @@ public class JobManager implements IJobManager {
 	private static final String OPTION_LOCKS = PI_JOBS + "/jobs/locks"; //$NON-NLS-1$
 	private static final String OPTION_SHUTDOWN = PI_JOBS + "/jobs/shutdown"; //$NON-NLS-1$
 
+	/**
+	 * The longest time a thread joining jobs sleeps before servicing the lock
+	 * listener again, in milliseconds.
+	 */
+	private static final long JOIN_POLL_INTERVAL = 100;
+
 	static boolean DEBUG = false;
 	static boolean DEBUG_BEGIN_END = false;
 	static boolean DEBUG_YIELDING = false;
@@ -103,6 +109,12 @@ public class JobManager implements IJobManager {
 
 	private final JobListeners jobListeners = new JobListeners();
 
+	/**
+	 * The trace recorders notified of priority and rule changes, which are not
+	 * reported to job change listeners.
+	 */
+	private final ListenerList traceRecorders = new ListenerList(ListenerList.IDENTITY);
+
 	/**
 	 * The lock for synchronizing all activity in the job manager.  To avoid deadlock,
 	 * this lock must never be held for extended periods, and must never be
@@ -113,6 +125,12 @@ public class JobManager implements IJobManager {
 
 	private final LockManager lockManager = new LockManager();
 
+	/**
+	 * Results of conflict checks between immutable rules.
+	 * @GuardedBy("lock")
+	 */
+	private final RuleConflictCache conflictCache = new RuleConflictCache();
+
 	/**
 	 * The pool of worker threads.
 	 */
@@ -122,6 +140,11 @@ public class JobManager implements IJobManager {
 	 * @GuardedBy("lock")
 	 */
 	private ProgressProvider progressProvider = null;
+	/**
+	 * The policy for the jobs still running at shutdown, or <code>null</code>
+	 * to use the default policy.
+	 */
+	private volatile ShutdownPolicy shutdownPolicy = null;
 	/**
 	 * Jobs that are currently running. Should only be modified from changeState
 	 * @GuardedBy("lock")
@@ -157,10 +180,10 @@ public class JobManager implements IJobManager {
 	private final JobQueue waiting;
 
 	/**
-	 * ThreadJobs that are waiting to be run. Should only be modified from changeState
+	 * ThreadJobs that are waiting to be run, indexed by scheduling rule.
 	 * @GuardedBy("lock")
 	 */
-	final JobQueue waitingThreadJobs;
+	private final WaiterIndex waitingThreadJobs;
 
 	/**
 	 * Counter to record wait queue insertion order.
@@ -169,7 +192,8 @@ public class JobManager implements IJobManager {
 	Counter waitQueueCounter = new Counter();
 
 	/**
-	 * A set of progress monitors we must track cancellation requests for.
+	 * A set of progress monitors we must track cancellation requests for, each
+	 * paired with the waiter to wake up when its monitor is canceled.
 	 * @GuardedBy("itself")
 	 */
 	final List<Object[]> monitorStack = new ArrayList<Object[]>();
@@ -261,7 +285,7 @@ public class JobManager implements IJobManager {
 		initDebugOptions();
 		synchronized (lock) {
 			waiting = new JobQueue(false);
-			waitingThreadJobs = new JobQueue(false, false);
+			waitingThreadJobs = new WaiterIndex();
 			sleeping = new JobQueue(true);
 			running = new HashSet<InternalJob>(10);
 			yielding = new HashSet<InternalJob>(10);
@@ -281,6 +305,14 @@ public class JobManager implements IJobManager {
 		jobListeners.add(listener);
 	}
 
+	/* (non-Javadoc)
+	 * @see org.eclipse.core.runtime.jobs.IJobManager#addJobChangeListener(org.eclipse.core.runtime.jobs.IJobChangeListener, int)
+	 */
+	@Override
+	public void addJobChangeListener(IJobChangeListener listener, int eventMask) {
+		jobListeners.add(listener, eventMask);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.core.runtime.jobs.IJobManager#beginRule(org.eclipse.core.runtime.jobs.ISchedulingRule, org.eclipse.core.runtime.IProgressMonitor)
 	 */
@@ -377,6 +409,9 @@ public class JobManager implements IJobManager {
 					case Job.RUNNING :
 					case InternalJob.ABOUT_TO_RUN :
 						running.remove(job);
+						//wake up a shutdown waiting for the running jobs to end
+						if (!active)
+							lock.notifyAll();
 						//add any blocked jobs back to the wait queue
 						InternalJob blocked = job.previous();
 						job.remove();
@@ -561,6 +596,7 @@ public class JobManager implements IJobManager {
 		synchronized (lock) {
 			if (!active)
 				return;
+			//from now on, scheduling a job fails
 			active = false;
 			//cancel all running jobs
 			toCancel = running.toArray(new Job[running.size()]);
@@ -569,40 +605,40 @@ public class JobManager implements IJobManager {
 			waiting.clear();
 		}
 
-		// Give running jobs a chance to finish. Wait 0.1 seconds for up to 3 times.
+		// Give running jobs a chance to finish, for up to the drain timeout of the policy.
 		if (toCancel != null && toCancel.length > 0) {
+			ShutdownPolicy policy = shutdownPolicy;
+			if (policy == null)
+				policy = new ShutdownPolicy();
+			long start = System.currentTimeMillis();
+			long[] delays = new long[toCancel.length];
+			Arrays.fill(delays, -1);
+			cancelAll(toCancel);
+			long drainTimeout = Math.max(0, policy.getDrainTimeout());
+			int stillRunning = waitForShutdown(toCancel, start, delays, drainTimeout);
+			if (stillRunning > 0 && interruptWorkers(policy, toCancel, delays))
+				stillRunning = waitForShutdown(toCancel, start, delays, drainTimeout);
+			long now = System.currentTimeMillis();
 			for (int i = 0; i < toCancel.length; i++) {
-				cancel(toCancel[i]); // cancel jobs outside sync block to avoid deadlock
-			}
-
-			for (int waitAttempts = 0; waitAttempts < 3; waitAttempts++) {
-				Thread.yield();
-				synchronized (lock) {
-					if (running.isEmpty())
-						break;
-				}
-				if (DEBUG_SHUTDOWN) {
-					JobManager.debug("Shutdown - job wait cycle #" + (waitAttempts + 1)); //$NON-NLS-1$
-					Job[] stillRunning = null;
-					synchronized (lock) {
-						stillRunning = running.toArray(new Job[running.size()]);
-					}
-					if (stillRunning != null) {
-						for (int j = 0; j < stillRunning.length; j++) {
-							JobManager.debug("\tJob: " + printJobName(stillRunning[j])); //$NON-NLS-1$
-						}
-					}
-				}
+				boolean ended = delays[i] >= 0;
+				long delay = ended ? delays[i] : now - start;
+				if (DEBUG_SHUTDOWN)
+					JobManager.debug("Shutdown - " + (ended ? "job ended after " : "job still running after ") + delay + "ms: " + printJobName(toCancel[i])); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 				try {
-					Thread.sleep(100);
-				} catch (InterruptedException e) {
-					//ignore
+					policy.shutdownDelayed(toCancel[i], delay, ended);
+				} catch (RuntimeException e) {
+					RuntimeLog.log(new Status(IStatus.ERROR, JobManager.PI_JOBS, JobManager.PLUGIN_ERROR, "Error notifying shutdown policy: " + policy, e)); //$NON-NLS-1$
 				}
-				Thread.yield();
 			}
-
-			synchronized (lock) { // retrieve list of the jobs that are still running
-				toCancel = running.toArray(new Job[running.size()]);
+			// retrieve list of the jobs that are still running
+			if (stillRunning == 0) {
+				toCancel = null;
+			} else {
+				Job[] remaining = new Job[stillRunning];
+				for (int i = 0, j = 0; i < toCancel.length; i++)
+					if (delays[i] < 0)
+						remaining[j++] = toCancel[i];
+				toCancel = remaining;
 			}
 		}
 		internalWorker.cancel();
@@ -627,6 +663,94 @@ public class JobManager implements IJobManager {
 		pool.shutdown();
 	}
 
+	/**
+	 * Cancels the given jobs on shutdown. The progress monitors of all jobs
+	 * are canceled before any of the jobs is notified, so that a job with a slow
+	 * canceling hook does not delay the cancelation of the other jobs.
+	 */
+	private void cancelAll(Job[] jobs) {
+		IProgressMonitor[] monitors = new IProgressMonitor[jobs.length];
+		synchronized (lock) {
+			for (int i = 0; i < jobs.length; i++) {
+				InternalJob job = jobs[i];
+				if (job.internalGetState() == InternalJob.ABOUT_TO_RUN) {
+					//signal that the job should be canceled before it gets a chance to run
+					job.setAboutToRunCanceled(true);
+				} else if (job.internalGetState() == Job.RUNNING && !job.isRunCanceled()) {
+					job.setRunCanceled(true);
+					monitors[i] = job.getProgressMonitor();
+				}
+			}
+		}
+		//call monitors and canceling outside sync block
+		for (int i = 0; i < jobs.length; i++) {
+			if (monitors[i] != null && !monitors[i].isCanceled())
+				monitors[i].setCanceled(true);
+		}
+		for (int i = 0; i < jobs.length; i++) {
+			if (monitors[i] != null)
+				((InternalJob) jobs[i]).canceling();
+		}
+	}
+
+	/**
+	 * Interrupts the worker threads of jobs that are still running on shutdown, as
+	 * allowed by the given policy. Returns whether any thread was interrupted.
+	 */
+	private boolean interruptWorkers(ShutdownPolicy policy, Job[] jobs, long[] delays) {
+		boolean interrupted = false;
+		for (int i = 0; i < jobs.length; i++) {
+			if (delays[i] >= 0)
+				continue;
+			boolean interrupt = false;
+			try {
+				interrupt = policy.shouldInterrupt(jobs[i]);
+			} catch (RuntimeException e) {
+				RuntimeLog.log(new Status(IStatus.ERROR, JobManager.PI_JOBS, JobManager.PLUGIN_ERROR, "Error invoking shutdown policy: " + policy, e)); //$NON-NLS-1$
+			}
+			Thread thread = jobs[i].getThread();
+			//never interrupt threads that don't belong to the job manager
+			if (interrupt && thread instanceof Worker) {
+				if (DEBUG_SHUTDOWN)
+					JobManager.debug("Shutdown - interrupting: " + printJobName(jobs[i])); //$NON-NLS-1$
+				thread.interrupt();
+				interrupted = true;
+			}
+		}
+		return interrupted;
+	}
+
+	/**
+	 * Waits until the given jobs are no longer running, or until the given timeout
+	 * has elapsed. Records how long after the start of the shutdown each job ended.
+	 * Returns the number of jobs still running.
+	 */
+	private int waitForShutdown(Job[] jobs, long start, long[] delays, long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (lock) {
+			while (true) {
+				long now = System.currentTimeMillis();
+				int stillRunning = 0;
+				for (int i = 0; i < jobs.length; i++) {
+					if (delays[i] >= 0)
+						continue;
+					if (running.contains(jobs[i]))
+						stillRunning++;
+					else
+						delays[i] = now - start;
+				}
+				if (stillRunning == 0 || now >= deadline)
+					return stillRunning;
+				try {
+					//woken up whenever a running job ends
+					lock.wait(deadline - now);
+				} catch (InterruptedException e) {
+					//ignore
+				}
+			}
+		}
+	}
+
 	/**
 	 * Indicates that a job was running, and has now finished.  Note that this method 
 	 * can be called under OutOfMemoryError conditions and thus must be paranoid 
@@ -718,30 +842,34 @@ public class JobManager implements IJobManager {
 	}
 
 	/**
-	 * Returns a job from the given collection whose scheduling rule conflicts
-	 * with the scheduling rule of the given job.  Returns null if there are no 
-	 * conflicting jobs.  
+	 * Returns whether the first rule conflicts with the second, using the results
+	 * of previous checks if both rules are immutable. Must be called while holding
+	 * the manager lock.
 	 */
-	InternalJob findBlockedJob(InternalJob job, Iterator jobs) {
+	boolean isConflicting(ISchedulingRule rule, ISchedulingRule other) {
+		return conflictCache.isConflicting(rule, other);
+	}
+
+	/**
+	 * Returns the waiting ThreadJob whose scheduling rule conflicts with the
+	 * scheduling rule of the given job and that has been waiting the longest.
+	 * Returns null if there are no conflicting jobs.
+	 */
+	InternalJob findBlockedThreadJob(InternalJob job) {
 		synchronized (lock) {
-			while (jobs.hasNext()) {
-				InternalJob waitingJob = (InternalJob) jobs.next();
-				if (waitingJob.isConflicting(job))
-					return waitingJob;
-			}
-			return null;
+			return waitingThreadJobs.findConflicting(job);
 		}
 	}
 
-	void dequeue(JobQueue queue, InternalJob job) {
+	void addWaitingThreadJob(ThreadJob threadJob) {
 		synchronized (lock) {
-			queue.remove(job);
+			waitingThreadJobs.add(threadJob);
 		}
 	}
 
-	void enqueue(JobQueue queue, InternalJob job) {
+	void removeWaitingThreadJob(ThreadJob threadJob) {
 		synchronized (lock) {
-			queue.enqueue(job);
+			waitingThreadJobs.remove(threadJob);
 		}
 	}
 
@@ -878,86 +1006,119 @@ public class JobManager implements IJobManager {
 	 */
 	@Override
 	public void join(final Object family, IProgressMonitor monitor) throws InterruptedException, OperationCanceledException {
+		join(new Object[] {family}, null, 0, monitor);
+	}
+
+	/* (non-Javadoc)
+	 * @see IJobManager#joinAll(Job[], long, IProgressMonitor)
+	 */
+	@Override
+	public boolean joinAll(Job[] jobs, long timeoutMillis, IProgressMonitor monitor) throws InterruptedException, OperationCanceledException {
+		Assert.isNotNull(jobs);
+		return join(null, jobs, timeoutMillis, monitor);
+	}
+
+	/* (non-Javadoc)
+	 * @see IJobManager#joinFamilies(Object[], long, IProgressMonitor)
+	 */
+	@Override
+	public boolean joinFamilies(Object[] families, long timeoutMillis, IProgressMonitor monitor) throws InterruptedException, OperationCanceledException {
+		Assert.isNotNull(families);
+		return join(families, null, timeoutMillis, monitor);
+	}
+
+	/**
+	 * Waits until all jobs of the given families, or all of the given jobs, are
+	 * finished, or until the given timeout has elapsed. Returns whether all jobs
+	 * are finished.
+	 */
+	private boolean join(Object[] families, Job[] jobs, long timeoutMillis, IProgressMonitor monitor) throws InterruptedException, OperationCanceledException {
+		Assert.isLegal(timeoutMillis >= 0, "Join timeout is negative"); //$NON-NLS-1$
 		monitor = monitorFor(monitor);
-		IJobChangeListener listener = null;
-		final Set<InternalJob> jobs;
+		JoinTracker tracker = new JoinTracker(this, families, jobs);
 		int jobCount;
 		Job blocking = null;
 		synchronized (lock) {
 			//don't join a waiting or sleeping job when suspended (deadlock risk)
 			int states = suspended ? Job.RUNNING : Job.RUNNING | Job.WAITING | Job.SLEEPING;
-			jobs = Collections.synchronizedSet(new HashSet<InternalJob>(select(family, states)));
-			jobCount = jobs.size();
-			if (jobCount > 0) {
-				//if there is only one blocking job, use it in the blockage callback below
-				if (jobCount == 1)
-					blocking = (Job) jobs.iterator().next();
-				listener = new JobChangeAdapter() {
-					@Override
-					public void done(IJobChangeEvent event) {
-						//don't remove from list if job is being rescheduled
-						if (!((JobChangeEvent) event).reschedule)
-							jobs.remove(event.getJob());
+			if (families != null) {
+				for (int i = 0; i < families.length; i++) {
+					for (Iterator<InternalJob> it = select(families[i], states).iterator(); it.hasNext();) {
+						blocking = (Job) it.next();
+						tracker.track(blocking);
 					}
-
-					//update the list of jobs if new ones are started during the join
-					@Override
-					public void running(IJobChangeEvent event) {
-						Job job = event.getJob();
-						if (job.belongsTo(family))
-							jobs.add(job);
-					}
-
-					//update the list of jobs if new ones are scheduled during the join
-					@Override
-					public void scheduled(IJobChangeEvent event) {
-						//don't add to list if job is being rescheduled
-						if (((JobChangeEvent) event).reschedule)
-							return;
-						//if job manager is suspended we only wait for running jobs
-						if (isSuspended())
-							return;
-						Job job = event.getJob();
-						if (job.belongsTo(family))
-							jobs.add(job);
+				}
+			} else {
+				for (int i = 0; i < jobs.length; i++) {
+					if ((jobs[i].getState() & states) != 0) {
+						blocking = jobs[i];
+						tracker.track(blocking);
 					}
-				};
-				addJobChangeListener(listener);
+				}
+			}
+			jobCount = tracker.getRemaining();
+			//if there is only one blocking job, use it in the blockage callback below
+			if (jobCount != 1)
+				blocking = null;
+			if (jobCount > 0) {
+				addJobChangeListener(tracker, IJobManager.EVENT_DONE | IJobManager.EVENT_RUNNING | IJobManager.EVENT_SCHEDULED);
 			}
 		}
 		if (jobCount == 0) {
 			//use up the monitor outside synchronized block because monitors call untrusted code
 			monitor.beginTask(JobMessages.jobs_blocked0, 1);
 			monitor.done();
-			return;
+			return true;
 		}
-		//spin until all jobs are completed
+		//measured with nanoTime so that changes to the system clock don't shorten or stretch the wait,
+		//and timeouts too long to be measured that way are waited for as no timeout at all
+		boolean timed = timeoutMillis != 0 && timeoutMillis < Long.MAX_VALUE / 1000000L;
+		long deadline = timed ? System.nanoTime() + timeoutMillis * 1000000L : 0;
+		//wait until all jobs are completed
+		beginMonitoring(tracker, monitor);
 		try {
 			monitor.beginTask(JobMessages.jobs_blocked0, jobCount);
 			monitor.subTask(getWaitMessage(jobCount));
 			reportBlocked(monitor, blocking);
-			int jobsLeft;
 			int reportedWorkDone = 0;
-			while ((jobsLeft = jobs.size()) > 0) {
-				//don't let there be negative work done if new jobs have
-				//been added since the join began
-				int actualWorkDone = Math.max(0, jobCount - jobsLeft);
+			while (true) {
+				int jobsLeft = tracker.getRemaining();
+				//report the jobs that are done, without exceeding the work
+				//declared to the monitor when jobs joined the families since
+				int actualWorkDone = Math.min(jobCount, tracker.getCompleted());
 				if (reportedWorkDone < actualWorkDone) {
 					monitor.worked(actualWorkDone - reportedWorkDone);
 					reportedWorkDone = actualWorkDone;
 					monitor.subTask(getWaitMessage(jobsLeft));
 				}
+				if (jobsLeft == 0)
+					return true;
 				if (Thread.interrupted())
 					throw new InterruptedException();
 				if (monitor.isCanceled())
 					throw new OperationCanceledException();
+				long timeLeft = 0;
+				if (timed) {
+					long nanosLeft = deadline - System.nanoTime();
+					if (nanosLeft <= 0)
+						return false;
+					//round up, as waiting for 0 milliseconds would wait forever
+					timeLeft = (nanosLeft + 999999L) / 1000000L;
+				}
+				//a lock listener may have to service requests made by the jobs, such as
+				//pending syncExecs, which nothing would wake this thread up for. This covers
+				//threads that cannot block, since only a lock listener can forbid it
+				if (lockManager.hasLockListener())
+					timeLeft = timeLeft == 0 ? JOIN_POLL_INTERVAL : Math.min(timeLeft, JOIN_POLL_INTERVAL);
 				//notify hook to service pending syncExecs before falling asleep
 				lockManager.aboutToWait(null);
-				Thread.sleep(100);
+				//woken up when a job is done or the monitor is canceled
+				tracker.await(jobsLeft, timeLeft);
 			}
 		} finally {
+			endMonitoring(tracker);
 			lockManager.aboutToRelease();
-			removeJobChangeListener(listener);
+			removeJobChangeListener(tracker);
 			reportUnblocked(monitor);
 			monitor.done();
 		}
@@ -1217,6 +1378,20 @@ public class JobManager implements IJobManager {
 		lockManager.setLockListener(listener);
 	}
 
+	/**
+	 * Adds a recorder to be notified of priority and rule changes.
+	 */
+	void addTraceRecorder(JobTraceRecorder recorder) {
+		traceRecorders.add(recorder);
+	}
+
+	/**
+	 * Removes a recorder added with {@link #addTraceRecorder(JobTraceRecorder)}.
+	 */
+	void removeTraceRecorder(JobTraceRecorder recorder) {
+		traceRecorders.remove(recorder);
+	}
+
 	/**
 	 * Changes a job priority.
 	 */
@@ -1233,6 +1408,9 @@ public class JobManager implements IJobManager {
 				waiting.resort(job);
 			}
 		}
+		Object[] recorders = traceRecorders.getListeners();
+		for (int i = 0; i < recorders.length; i++)
+			((JobTraceRecorder) recorders[i]).priorityChanged(job);
 	}
 
 	/* (non-Javadoc)
@@ -1243,6 +1421,14 @@ public class JobManager implements IJobManager {
 		progressProvider = provider;
 	}
 
+	/* (non-Javadoc)
+	 * @see IJobManager#setShutdownPolicy(ShutdownPolicy)
+	 */
+	@Override
+	public void setShutdownPolicy(ShutdownPolicy policy) {
+		shutdownPolicy = policy;
+	}
+
 	/* (non-Javadoc)
 	 * @see Job#setRule
 	 */
@@ -1253,6 +1439,9 @@ public class JobManager implements IJobManager {
 			validateRule(rule);
 			job.internalSetRule(rule);
 		}
+		Object[] recorders = traceRecorders.getListeners();
+		for (int i = 0; i < recorders.length; i++)
+			((JobTraceRecorder) recorders[i]).ruleChanged(job);
 	}
 
 	/**
@@ -1350,13 +1539,13 @@ public class JobManager implements IJobManager {
 						if (unblocked == null) {
 
 							// look for any implicit (or yielding) jobs we may be blocking. 
-							unblocked = findBlockedJob(likeThreadJob, waitingThreadJobs.iterator());
+							unblocked = findBlockedThreadJob(likeThreadJob);
 						}
 
 					} else {
 
 						// look for any implicit (or yielding) jobs we may be blocking. 
-						unblocked = findBlockedJob(job, waitingThreadJobs.iterator());
+						unblocked = findBlockedThreadJob(job);
 					}
 				}
 
@@ -1640,10 +1829,13 @@ public class JobManager implements IJobManager {
 		}
 	}
 
-	void endMonitoring(ThreadJob threadJob) {
+	/**
+	 * Stops tracking the cancellation of the monitor registered for the given waiter.
+	 */
+	void endMonitoring(Object waiter) {
 		synchronized (monitorStack) {
 			for (int i = monitorStack.size() - 1; i >= 0; i--) {
-				if (monitorStack.get(i)[0] == threadJob) {
+				if (monitorStack.get(i)[0] == waiter) {
 					monitorStack.remove(i);
 					monitorStack.notifyAll();
 					break;
@@ -1652,9 +1844,14 @@ public class JobManager implements IJobManager {
 		}
 	}
 
-	void beginMonitoring(ThreadJob threadJob, IProgressMonitor monitor) {
+	/**
+	 * Starts tracking the cancellation of the given monitor. When the monitor is
+	 * canceled, the internal worker notifies the waiter, or the lock a waiting
+	 * thread job is waiting on.
+	 */
+	void beginMonitoring(Object waiter, IProgressMonitor monitor) {
 		synchronized (monitorStack) {
-			monitorStack.add(new Object[] {threadJob, monitor});
+			monitorStack.add(new Object[] {waiter, monitor});
 			monitorStack.notifyAll();
 		}
 	}
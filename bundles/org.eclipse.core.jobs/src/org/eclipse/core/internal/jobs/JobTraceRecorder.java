@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.io.*;
+import java.util.*;
+import org.eclipse.core.internal.runtime.RuntimeLog;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.*;
+
+/**
+ * Records the scheduling activity of the job manager into a compact binary trace
+ * that can later be fed to a {@link JobTraceReplayer}. The recorder attaches itself
+ * as a global job change listener and as the job manager's lock listener. Any lock
+ * listener that was installed before recording started is still notified, and is
+ * restored when recording stops.
+ * <p>
+ * The trace starts with a header (magic number, format version, and the wall clock
+ * time at which recording started), followed by a sequence of records. Each record
+ * starts with a one byte kind. All timestamps are nanoseconds relative to the start
+ * of recording. Scheduling rules are never written directly; instead every distinct
+ * rule is assigned an id, and a rule record is written the first time a rule is
+ * seen, listing the ids of all previously seen rules it conflicts with. Changes
+ * of the priority or the rule of a job between the times it is scheduled are
+ * recorded as well.
+ * </p>
+ * <pre>
+ * RULE      ruleId:int conflictCount:int conflictId:int*
+ * SCHEDULED time:long jobId:int delay:long priority:byte ruleId:int flags:byte
+ * RUNNING   time:long jobId:int
+ * DONE      time:long jobId:int severity:byte
+ * LOCK_WAIT time:long
+ * LOCK_RELEASE time:long
+ * PRIORITY  time:long jobId:int priority:byte
+ * RULE_CHANGE time:long jobId:int ruleId:int
+ * </pre>
+ * <p>
+ * A recorder may be restricted to the jobs of a family, in which case the
+ * activity of other jobs is not recorded. Lock activity is always recorded.
+ * </p>
+ * <p>
+ * Recorded rules are strongly referenced until recording stops, so a recorder
+ * should only be used for bounded recording sessions.
+ * </p>
+ */
+public class JobTraceRecorder extends JobChangeAdapter {
+	static final int MAGIC = 0x4A545243;
+	static final int VERSION = 2;
+
+	static final byte RULE = 1;
+	static final byte SCHEDULED = 2;
+	static final byte RUNNING = 3;
+	static final byte DONE = 4;
+	static final byte LOCK_WAIT = 5;
+	static final byte LOCK_RELEASE = 6;
+	static final byte PRIORITY = 7;
+	static final byte RULE_CHANGE = 8;
+
+	//flag bits of scheduled records
+	static final int F_SYSTEM = 0x01;
+	static final int F_USER = 0x02;
+	static final int F_RESCHEDULE = 0x04;
+
+	static final int NO_RULE = -1;
+
+	/**
+	 * Lock listener that records lock activity before delegating to
+	 * the lock listener that was installed when recording started.
+	 */
+	private class LockRecorder extends LockListener {
+		final LockListener delegate;
+
+		LockRecorder(LockListener delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void aboutToRelease() {
+			write(LOCK_RELEASE);
+			if (delegate != null)
+				delegate.aboutToRelease();
+		}
+
+		@Override
+		public boolean aboutToWait(Thread lockOwner) {
+			write(LOCK_WAIT);
+			return delegate == null ? false : delegate.aboutToWait(lockOwner);
+		}
+
+		@Override
+		public boolean canBlock() {
+			return delegate == null ? true : delegate.canBlock();
+		}
+	}
+
+	private final JobManager manager;
+	private final Object family;
+	/**
+	 * @GuardedBy("this")
+	 */
+	private DataOutputStream out;
+	/**
+	 * @GuardedBy("this")
+	 */
+	private final Map<ISchedulingRule, Integer> ruleIds = new IdentityHashMap<ISchedulingRule, Integer>();
+	/**
+	 * @GuardedBy("this")
+	 */
+	private final List<ISchedulingRule> rules = new ArrayList<ISchedulingRule>();
+	/**
+	 * The number of times recording started, telling whether the rules
+	 * were forgotten since they were last looked at.
+	 * @GuardedBy("this")
+	 */
+	private int session;
+	private LockRecorder lockRecorder;
+	private long startNanos;
+
+	public JobTraceRecorder() {
+		this(null);
+	}
+
+	/**
+	 * Creates a recorder for the jobs of the given family, or for all jobs if
+	 * the family is <code>null</code>.
+	 */
+	public JobTraceRecorder(Object family) {
+		this.manager = JobManager.getInstance();
+		this.family = family;
+	}
+
+	/**
+	 * Returns whether the activity of the given job is recorded.
+	 */
+	private boolean accepts(InternalJob job) {
+		return family == null || job.belongsTo(family);
+	}
+
+	/**
+	 * Starts recording into the given stream. The stream is not closed
+	 * by the recorder.
+	 *
+	 * @param output the stream to write the trace to
+	 * @throws IOException if the trace header could not be written
+	 */
+	public void start(OutputStream output) throws IOException {
+		synchronized (this) {
+			if (out != null)
+				throw new IllegalStateException("Recording already started"); //$NON-NLS-1$
+			out = new DataOutputStream(new BufferedOutputStream(output));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(System.currentTimeMillis());
+			startNanos = System.nanoTime();
+			session++;
+		}
+		LockManager lockManager = manager.getLockManager();
+		lockRecorder = new LockRecorder(lockManager.lockListener);
+		lockManager.setLockListener(lockRecorder);
+		manager.addJobChangeListener(this, IJobManager.EVENT_SCHEDULED | IJobManager.EVENT_RUNNING | IJobManager.EVENT_DONE);
+		manager.addTraceRecorder(this);
+	}
+
+	/**
+	 * Stops recording, and flushes all recorded events to the output stream.
+	 * Has no effect if recording was not started.
+	 *
+	 * @throws IOException if the trace could not be flushed
+	 */
+	public void stop() throws IOException {
+		manager.removeJobChangeListener(this);
+		manager.removeTraceRecorder(this);
+		LockManager lockManager = manager.getLockManager();
+		//don't replace a listener that was installed after recording started
+		if (lockRecorder != null && lockManager.lockListener == lockRecorder)
+			lockManager.setLockListener(lockRecorder.delegate);
+		lockRecorder = null;
+		synchronized (this) {
+			if (out == null)
+				return;
+			try {
+				out.flush();
+			} finally {
+				out = null;
+				ruleIds.clear();
+				rules.clear();
+			}
+		}
+	}
+
+	/**
+	 * Returns whether this recorder is currently recording.
+	 */
+	public synchronized boolean isRecording() {
+		return out != null;
+	}
+
+	@Override
+	public void scheduled(IJobChangeEvent event) {
+		InternalJob job = event.getJob();
+		if (!accepts(job))
+			return;
+		int jobFlags = 0;
+		if (job.isSystem())
+			jobFlags |= F_SYSTEM;
+		if (job.isUser())
+			jobFlags |= F_USER;
+		if (event instanceof JobChangeEvent && ((JobChangeEvent) event).reschedule)
+			jobFlags |= F_RESCHEDULE;
+		ISchedulingRule rule = job.getRule();
+		int ruleId = rule == null ? NO_RULE : getRuleId(rule);
+		synchronized (this) {
+			if (out == null)
+				return;
+			try {
+				out.writeByte(SCHEDULED);
+				out.writeLong(System.nanoTime() - startNanos);
+				out.writeInt(job.getJobNumber());
+				out.writeLong(event.getDelay());
+				out.writeByte(job.getPriority());
+				out.writeInt(ruleId);
+				out.writeByte(jobFlags);
+			} catch (IOException e) {
+				handleException(e);
+			}
+		}
+	}
+
+	@Override
+	public void running(IJobChangeEvent event) {
+		if (accepts(event.getJob()))
+			write(RUNNING, event.getJob(), -1);
+	}
+
+	@Override
+	public void done(IJobChangeEvent event) {
+		if (!accepts(event.getJob()))
+			return;
+		IStatus result = event.getResult();
+		write(DONE, event.getJob(), result == null ? IStatus.OK : result.getSeverity());
+	}
+
+	/**
+	 * Records that the priority of the given job changed. Called by the
+	 * job manager, which does not report such changes to job change listeners.
+	 */
+	void priorityChanged(InternalJob job) {
+		if (!accepts(job))
+			return;
+		synchronized (this) {
+			if (out == null)
+				return;
+			try {
+				out.writeByte(PRIORITY);
+				out.writeLong(System.nanoTime() - startNanos);
+				out.writeInt(job.getJobNumber());
+				out.writeByte(job.getPriority());
+			} catch (IOException e) {
+				handleException(e);
+			}
+		}
+	}
+
+	/**
+	 * Records that the rule of the given job changed. Called by the
+	 * job manager, which does not report such changes to job change listeners.
+	 */
+	void ruleChanged(InternalJob job) {
+		if (!accepts(job))
+			return;
+		ISchedulingRule rule = job.getRule();
+		int ruleId = rule == null ? NO_RULE : getRuleId(rule);
+		synchronized (this) {
+			if (out == null)
+				return;
+			try {
+				out.writeByte(RULE_CHANGE);
+				out.writeLong(System.nanoTime() - startNanos);
+				out.writeInt(job.getJobNumber());
+				out.writeInt(ruleId);
+			} catch (IOException e) {
+				handleException(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the id of the given rule, writing a rule record if the
+	 * rule has not been seen before. The rules are asked about their conflicts
+	 * without holding the monitor of this recorder, so that client code never
+	 * runs while other events are kept from being recorded.
+	 */
+	private int getRuleId(ISchedulingRule rule) {
+		List<Integer> conflicts = new ArrayList<Integer>();
+		int checked = 0;
+		int checkedSession = -1;
+		while (true) {
+			ISchedulingRule[] others;
+			synchronized (this) {
+				if (out == null)
+					return NO_RULE;
+				if (checkedSession != session) {
+					//recording restarted, start over
+					checkedSession = session;
+					checked = 0;
+					conflicts.clear();
+				}
+				Integer id = ruleIds.get(rule);
+				if (id != null)
+					return id.intValue();
+				int size = rules.size();
+				if (checked == size) {
+					//no rule was seen while checking the conflicts
+					ruleIds.put(rule, Integer.valueOf(size));
+					rules.add(rule);
+					try {
+						out.writeByte(RULE);
+						out.writeInt(size);
+						out.writeInt(conflicts.size());
+						for (int i = 0; i < conflicts.size(); i++)
+							out.writeInt(conflicts.get(i).intValue());
+					} catch (IOException e) {
+						handleException(e);
+						return NO_RULE;
+					}
+					return size;
+				}
+				others = rules.subList(checked, size).toArray(new ISchedulingRule[size - checked]);
+			}
+			for (int i = 0; i < others.length; i++) {
+				if (rule.isConflicting(others[i]) || others[i].isConflicting(rule))
+					conflicts.add(Integer.valueOf(checked + i));
+			}
+			checked += others.length;
+		}
+	}
+
+	/**
+	 * Discards the remainder of the trace after a failure to write it.
+	 */
+	private void handleException(IOException e) {
+		out = null;
+		RuntimeLog.log(new Status(IStatus.ERROR, JobManager.PI_JOBS, JobManager.PLUGIN_ERROR, "Unable to write job trace", e)); //$NON-NLS-1$
+	}
+
+	private synchronized void write(byte kind) {
+		if (out == null)
+			return;
+		try {
+			out.writeByte(kind);
+			out.writeLong(System.nanoTime() - startNanos);
+		} catch (IOException e) {
+			handleException(e);
+		}
+	}
+
+	private synchronized void write(byte kind, InternalJob job, int severity) {
+		if (out == null)
+			return;
+		try {
+			out.writeByte(kind);
+			out.writeLong(System.nanoTime() - startNanos);
+			out.writeInt(job.getJobNumber());
+			if (kind == DONE)
+				out.writeByte(severity);
+		} catch (IOException e) {
+			handleException(e);
+		}
+	}
+}
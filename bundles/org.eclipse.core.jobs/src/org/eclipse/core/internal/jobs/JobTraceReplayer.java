@@ -0,0 +1,439 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.io.*;
+import java.util.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Drives the job manager with synthetic jobs that reproduce a trace written
+ * by a {@link JobTraceRecorder}. Every recorded job is replaced by a job that
+ * is scheduled at the same relative time, with the same delay, priority and
+ * flags, and that runs for the same amount of time as the recorded job. Recorded
+ * scheduling rules are replaced by synthetic rules that conflict with each other
+ * exactly like the recorded rules did. Recorded changes of the priority or the
+ * rule of a job are replayed at the same relative time.
+ * <p>
+ * Replaying the same trace against different versions of the job manager gives
+ * repeatable benchmarks for queueing and conflict resolution changes. Lock events
+ * are not replayed, they are only counted.
+ * </p>
+ */
+public class JobTraceReplayer {
+	/**
+	 * Synthetic rule that conflicts with the rules that the recorded rule
+	 * conflicted with.
+	 */
+	static final class ReplayRule implements ISchedulingRule {
+		final int id;
+		final Set<ReplayRule> conflicts = new HashSet<ReplayRule>();
+
+		ReplayRule(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public boolean contains(ISchedulingRule rule) {
+			return rule == this;
+		}
+
+		@Override
+		public boolean isConflicting(ISchedulingRule rule) {
+			return rule == this || conflicts.contains(rule);
+		}
+
+		@Override
+		public String toString() {
+			return "ReplayRule(" + id + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * A recorded scheduling event, or a recorded change of the priority or
+	 * the rule of a job.
+	 */
+	static final class ScheduleEvent {
+		/**
+		 * The kind of record, one of {@link JobTraceRecorder#SCHEDULED},
+		 * {@link JobTraceRecorder#PRIORITY} or {@link JobTraceRecorder#RULE_CHANGE}.
+		 */
+		byte kind = JobTraceRecorder.SCHEDULED;
+		long time;
+		int jobId;
+		long delay;
+		int priority;
+		ReplayRule rule;
+		int flags;
+
+		boolean isReschedule() {
+			return (flags & JobTraceRecorder.F_RESCHEDULE) != 0;
+		}
+	}
+
+	/**
+	 * Synthetic job replaying all the recorded executions of a single job.
+	 */
+	final class ReplayJob extends Job {
+		/**
+		 * Recorded durations of each run, in nanoseconds.
+		 */
+		final List<Long> durations = new ArrayList<Long>();
+		/**
+		 * Recorded result severity of each run.
+		 */
+		final List<Integer> severities = new ArrayList<Integer>();
+		/**
+		 * Recorded scheduling events, in order.
+		 */
+		final List<ScheduleEvent> schedules = new ArrayList<ScheduleEvent>();
+		private int nextRun;
+		private int nextSchedule;
+		private volatile long expectedStart;
+
+		ReplayJob(int id) {
+			super("Replay job " + id); //$NON-NLS-1$
+		}
+
+		@Override
+		public boolean belongsTo(Object family) {
+			return family == JobTraceReplayer.this;
+		}
+
+		/**
+		 * Consumes the given scheduling event, skipping any reschedules that
+		 * have not been performed by the job itself yet.
+		 */
+		synchronized void advanceTo(ScheduleEvent event) {
+			while (nextSchedule < schedules.size() && schedules.get(nextSchedule++) != event) {
+				//skip
+			}
+		}
+
+		/**
+		 * Consumes and returns the next scheduling event if it is a reschedule,
+		 * and returns <code>null</code> otherwise.
+		 */
+		synchronized ScheduleEvent nextReschedule() {
+			if (nextSchedule < schedules.size() && schedules.get(nextSchedule).isReschedule())
+				return schedules.get(nextSchedule++);
+			return null;
+		}
+
+		synchronized void reset() {
+			nextRun = nextSchedule = 0;
+		}
+
+		/**
+		 * Changes the priority or the rule of this job as described by the given
+		 * recorded change event.
+		 */
+		void replayChange(ScheduleEvent event) {
+			if (event.kind == JobTraceRecorder.PRIORITY) {
+				setPriority(event.priority);
+				return;
+			}
+			//the rule of a job can only change while it is not scheduled
+			try {
+				setRule(event.rule);
+			} catch (IllegalArgumentException e) {
+				//the replayed job is still scheduled, its next schedule sets the rule
+			}
+		}
+
+		/**
+		 * Schedules this job as described by the given recorded scheduling event.
+		 */
+		void replaySchedule(ScheduleEvent event) {
+			if (getState() == Job.NONE) {
+				setRule(event.rule);
+				setSystem((event.flags & JobTraceRecorder.F_SYSTEM) != 0);
+				setUser((event.flags & JobTraceRecorder.F_USER) != 0);
+			}
+			if (event.priority != getPriority())
+				setPriority(event.priority);
+			long delay = scale(event.delay * 1000000L) / 1000000L;
+			expectedStart = System.nanoTime() + delay * 1000000L;
+			recordSchedule();
+			schedule(delay);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			long start = System.nanoTime();
+			recordWait(start - expectedStart);
+			int run;
+			synchronized (this) {
+				run = nextRun++;
+			}
+			int severity = IStatus.OK;
+			if (run < durations.size()) {
+				severity = severities.get(run).intValue();
+				long duration = scale(durations.get(run).longValue());
+				try {
+					Thread.sleep(duration / 1000000L, (int) (duration % 1000000L));
+				} catch (InterruptedException e) {
+					//fall through
+				}
+			}
+			//a reschedule event means the original job was rescheduled when it finished
+			ScheduleEvent reschedule = nextReschedule();
+			if (reschedule != null)
+				replaySchedule(reschedule);
+			return severity == IStatus.CANCEL ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		}
+	}
+
+	/**
+	 * The scheduling and change events that are replayed by the harness, ordered by time.
+	 */
+	private final List<ScheduleEvent> events = new ArrayList<ScheduleEvent>();
+	private final Map<Integer, ReplayJob> jobs = new HashMap<Integer, ReplayJob>();
+	private final List<ReplayRule> rules = new ArrayList<ReplayRule>();
+	private int lockEventCount;
+	private int changeCount;
+	private double speed = 1.0;
+
+	//replay statistics
+	private int scheduleCount;
+	private int runCount;
+	private long totalWait;
+	private long maxWait;
+
+	/**
+	 * Reads a trace from the given stream. The stream is not closed.
+	 *
+	 * @param input the stream to read the trace from
+	 * @throws IOException if the trace could not be read or is not a valid trace
+	 */
+	public JobTraceReplayer(InputStream input) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+		if (in.readInt() != JobTraceRecorder.MAGIC)
+			throw new IOException("Not a job trace"); //$NON-NLS-1$
+		int version = in.readInt();
+		if (version != JobTraceRecorder.VERSION)
+			throw new IOException("Unsupported job trace version: " + version); //$NON-NLS-1$
+		//recording start time, not needed for replay
+		in.readLong();
+		//start times of currently running jobs, by job id
+		Map<Integer, Long> started = new HashMap<Integer, Long>();
+		long lastTime = 0;
+		int kind;
+		while ((kind = in.read()) != -1) {
+			switch (kind) {
+				case JobTraceRecorder.RULE :
+					ReplayRule rule = new ReplayRule(in.readInt());
+					for (int i = in.readInt(); i > 0; i--) {
+						ReplayRule other = rules.get(in.readInt());
+						rule.conflicts.add(other);
+						other.conflicts.add(rule);
+					}
+					rules.add(rule);
+					break;
+				case JobTraceRecorder.SCHEDULED :
+					ScheduleEvent event = new ScheduleEvent();
+					lastTime = event.time = in.readLong();
+					event.jobId = in.readInt();
+					event.delay = in.readLong();
+					event.priority = in.readByte();
+					int ruleId = in.readInt();
+					event.rule = ruleId == JobTraceRecorder.NO_RULE ? null : rules.get(ruleId);
+					event.flags = in.readByte();
+					getJob(event.jobId).schedules.add(event);
+					if (!event.isReschedule())
+						events.add(event);
+					break;
+				case JobTraceRecorder.PRIORITY :
+					ScheduleEvent change = new ScheduleEvent();
+					change.kind = JobTraceRecorder.PRIORITY;
+					lastTime = change.time = in.readLong();
+					change.jobId = in.readInt();
+					change.priority = in.readByte();
+					events.add(change);
+					changeCount++;
+					break;
+				case JobTraceRecorder.RULE_CHANGE :
+					change = new ScheduleEvent();
+					change.kind = JobTraceRecorder.RULE_CHANGE;
+					lastTime = change.time = in.readLong();
+					change.jobId = in.readInt();
+					ruleId = in.readInt();
+					change.rule = ruleId == JobTraceRecorder.NO_RULE ? null : rules.get(ruleId);
+					events.add(change);
+					changeCount++;
+					break;
+				case JobTraceRecorder.RUNNING :
+					lastTime = in.readLong();
+					started.put(Integer.valueOf(in.readInt()), Long.valueOf(lastTime));
+					break;
+				case JobTraceRecorder.DONE :
+					lastTime = in.readLong();
+					Integer jobId = Integer.valueOf(in.readInt());
+					int severity = in.readByte();
+					Long start = started.remove(jobId);
+					//jobs that finished without running were canceled while waiting
+					if (start != null)
+						addRun(jobId, lastTime - start.longValue(), severity);
+					break;
+				case JobTraceRecorder.LOCK_WAIT :
+				case JobTraceRecorder.LOCK_RELEASE :
+					lastTime = in.readLong();
+					lockEventCount++;
+					break;
+				default :
+					throw new IOException("Corrupt job trace, unknown record: " + kind); //$NON-NLS-1$
+			}
+		}
+		//jobs that were still running when recording stopped run until the end of the trace
+		for (Iterator<Map.Entry<Integer, Long>> it = started.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Integer, Long> entry = it.next();
+			addRun(entry.getKey(), lastTime - entry.getValue().longValue(), IStatus.OK);
+		}
+	}
+
+	private void addRun(Integer jobId, long duration, int severity) {
+		ReplayJob job = getJob(jobId.intValue());
+		job.durations.add(Long.valueOf(duration));
+		job.severities.add(Integer.valueOf(severity));
+	}
+
+	private ReplayJob getJob(int id) {
+		Integer key = Integer.valueOf(id);
+		ReplayJob job = jobs.get(key);
+		if (job == null) {
+			job = new ReplayJob(id);
+			jobs.put(key, job);
+		}
+		return job;
+	}
+
+	/**
+	 * Returns the number of distinct jobs in the trace.
+	 */
+	public int getJobCount() {
+		return jobs.size();
+	}
+
+	/**
+	 * Returns the number of priority and rule changes in the trace.
+	 */
+	public int getChangeCount() {
+		return changeCount;
+	}
+
+	/**
+	 * Returns the number of lock wait and release events in the trace.
+	 */
+	public int getLockEventCount() {
+		return lockEventCount;
+	}
+
+	/**
+	 * Returns the number of distinct scheduling rules in the trace.
+	 */
+	public int getRuleCount() {
+		return rules.size();
+	}
+
+	/**
+	 * Returns the number of times a job was scheduled during the last replay.
+	 */
+	public synchronized int getScheduleCount() {
+		return scheduleCount;
+	}
+
+	/**
+	 * Returns the number of job runs during the last replay.
+	 */
+	public synchronized int getRunCount() {
+		return runCount;
+	}
+
+	/**
+	 * Returns the longest time in milliseconds a job had to wait to start
+	 * running after its scheduling delay elapsed, during the last replay.
+	 */
+	public synchronized long getMaxWait() {
+		return maxWait / 1000000L;
+	}
+
+	/**
+	 * Returns the total time in milliseconds jobs had to wait to start
+	 * running after their scheduling delay elapsed, during the last replay.
+	 */
+	public synchronized long getTotalWait() {
+		return totalWait / 1000000L;
+	}
+
+	synchronized void recordSchedule() {
+		scheduleCount++;
+	}
+
+	synchronized void recordWait(long wait) {
+		runCount++;
+		if (wait < 0)
+			return;
+		totalWait += wait;
+		maxWait = Math.max(maxWait, wait);
+	}
+
+	/**
+	 * Replays the trace and waits until all replayed jobs are done.
+	 *
+	 * @param replaySpeed the factor by which the recorded timing is accelerated
+	 * @param monitor progress monitor for canceling the replay, or <code>null</code>
+	 * @return the elapsed time of the replay, in milliseconds
+	 * @throws InterruptedException if the replaying thread was interrupted
+	 * @throws OperationCanceledException if the monitor was canceled
+	 */
+	public long replay(double replaySpeed, IProgressMonitor monitor) throws InterruptedException {
+		Assert.isLegal(replaySpeed > 0, "Replay speed must be positive"); //$NON-NLS-1$
+		this.speed = replaySpeed;
+		synchronized (this) {
+			scheduleCount = runCount = 0;
+			totalWait = maxWait = 0;
+		}
+		for (Iterator<ReplayJob> it = jobs.values().iterator(); it.hasNext();)
+			it.next().reset();
+		long start = System.nanoTime();
+		try {
+			for (int i = 0, size = events.size(); i < size; i++) {
+				if (monitor != null && monitor.isCanceled())
+					throw new OperationCanceledException();
+				ScheduleEvent event = events.get(i);
+				long wait = start + scale(event.time) - System.nanoTime();
+				if (wait > 0)
+					Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+				ReplayJob job = getJob(event.jobId);
+				if (event.kind != JobTraceRecorder.SCHEDULED) {
+					job.replayChange(event);
+					continue;
+				}
+				job.advanceTo(event);
+				job.replaySchedule(event);
+			}
+			JobManager.getInstance().join(this, monitor);
+		} catch (OperationCanceledException e) {
+			JobManager.getInstance().cancel(this);
+			throw e;
+		}
+		return (System.nanoTime() - start) / 1000000L;
+	}
+
+	/**
+	 * Converts a recorded duration in nanoseconds to a replay duration.
+	 */
+	long scale(long nanos) {
+		return (long) (nanos / speed);
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.util.*;
+import org.eclipse.core.runtime.jobs.*;
+
+/**
+ * Keeps track of the jobs a thread is joining, and wakes up the joining thread
+ * whenever one of them is done. The jobs to join are either the members of a set
+ * of families, or an explicit set of jobs.
+ * <p>
+ * Job change events are delivered outside of the job manager lock, so a done event
+ * may arrive for a job that was never tracked, or a scheduled event for a job that
+ * is already tracked. The pending jobs are therefore remembered by identity, which
+ * makes every job count exactly once no matter the order of events.
+ * </p>
+ */
+class JoinTracker extends JobChangeAdapter {
+	/**
+	 * The families to join, or <code>null</code> when joining explicit jobs.
+	 */
+	private final Object[] families;
+	/**
+	 * The explicit jobs to join, or <code>null</code> when joining families.
+	 */
+	private final Set<Job> jobs;
+	private final JobManager manager;
+	/**
+	 * The jobs that have not finished yet.
+	 * @GuardedBy("this")
+	 */
+	private final Set<Job> pending = Collections.newSetFromMap(new IdentityHashMap<Job, Boolean>());
+	/**
+	 * The number of jobs that were tracked so far, including the finished ones.
+	 * @GuardedBy("this")
+	 */
+	private int total;
+
+	JoinTracker(JobManager manager, Object[] families, Job[] jobs) {
+		this.manager = manager;
+		this.families = families;
+		if (jobs == null) {
+			this.jobs = null;
+		} else {
+			this.jobs = Collections.newSetFromMap(new IdentityHashMap<Job, Boolean>(jobs.length * 2));
+			this.jobs.addAll(Arrays.asList(jobs));
+		}
+	}
+
+	/**
+	 * Waits until a tracked job is done, or the given time has elapsed. Returns
+	 * immediately if the number of pending jobs is no longer the given number.
+	 */
+	synchronized void await(int remaining, long timeout) throws InterruptedException {
+		if (pending.size() == remaining)
+			wait(timeout);
+	}
+
+	@Override
+	public void done(IJobChangeEvent event) {
+		//don't remove from list if job is being rescheduled
+		if (((JobChangeEvent) event).reschedule)
+			return;
+		synchronized (this) {
+			if (pending.remove(event.getJob()))
+				notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the number of tracked jobs that are finished.
+	 */
+	synchronized int getCompleted() {
+		return total - pending.size();
+	}
+
+	/**
+	 * Returns the number of tracked jobs that are not finished yet.
+	 */
+	synchronized int getRemaining() {
+		return pending.size();
+	}
+
+	/**
+	 * Returns whether the given job is one of the jobs to join.
+	 */
+	boolean isMember(Job job) {
+		if (jobs != null)
+			return jobs.contains(job);
+		for (int i = 0; i < families.length; i++)
+			if (job.belongsTo(families[i]))
+				return true;
+		return false;
+	}
+
+	//update the list of jobs if new ones are started during the join
+	@Override
+	public void running(IJobChangeEvent event) {
+		Job job = event.getJob();
+		if (isMember(job))
+			track(job);
+	}
+
+	//update the list of jobs if new ones are scheduled during the join
+	@Override
+	public void scheduled(IJobChangeEvent event) {
+		//don't add to list if job is being rescheduled
+		if (((JobChangeEvent) event).reschedule)
+			return;
+		//if job manager is suspended we only wait for running jobs
+		if (manager.isSuspended())
+			return;
+		Job job = event.getJob();
+		if (isMember(job))
+			track(job);
+	}
+
+	/**
+	 * Adds a job to the jobs to wait for.
+	 */
+	synchronized void track(Job job) {
+		if (pending.add(job))
+			total++;
+	}
+}
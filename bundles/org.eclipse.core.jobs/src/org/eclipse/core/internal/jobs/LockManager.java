@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2003, 2012 IBM Corporation and others.
+ *  Copyright (c) 2003, 2014 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -113,6 +113,13 @@ public class LockManager {
 		return false;
 	}
 
+	/**
+	 * Returns whether a lock listener is installed.
+	 */
+	boolean hasLockListener() {
+		return lockListener != null;
+	}
+
 	/* (non-Javadoc)
 	 * Method declared on LockListener
 	 */
@@ -1,12 +1,12 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
  * http://www.eclipse.org/legal/epl-v10.html
- * 
+ *
  * Contributors:
- *     IBM Corporation - initial API and implementation
+ *     IBM - Initial API and implementation
  *******************************************************************************/
 package org.eclipse.core.internal.jobs;
 
@@ -15,33 +15,41 @@ import java.util.*;
 /**
  * A specialized map implementation that is optimized for a small set of object
  * keys.
- * 
- * Implemented as a single array that alternates keys and values.
- * 
- * Note: This class is copied from org.eclipse.core.resources
+ *
+ * Implemented as an open addressing hash table with linear probing, stored in
+ * a single array that alternates keys and values. The number of slots is always
+ * a power of two, and at least one slot is always empty. A map with a single
+ * entry only needs an array of four elements.
+ *
+ * Note: This class was originally copied from org.eclipse.core.resources
  */
 public class ObjectMap implements Map {
-	// 8 attribute keys, 8 attribute values
-	protected static final int DEFAULT_SIZE = 16;
-	protected static final int GROW_SIZE = 10;
+	/**
+	 * The smallest number of slots (key/value pairs) of a non-empty map.
+	 */
+	protected static final int MIN_CAPACITY = 2;
 	protected int count = 0;
+	/**
+	 * Keys at even indices, values at the following odd indices, or
+	 * <code>null</code> if the map has never held any element.
+	 */
 	protected Object[] elements = null;
 
 	/**
 	 * Creates a new object map.
-	 * 
+	 *
 	 * @param initialCapacity
 	 *                  The initial number of elements that will fit in the map.
 	 */
 	public ObjectMap(int initialCapacity) {
 		if (initialCapacity > 0)
-			elements = new Object[Math.max(initialCapacity * 2, 0)];
+			elements = new Object[capacityFor(initialCapacity) * 2];
 	}
 
 	/**
 	 * Creates a new object map of the same size as the given map and populate
 	 * it with the key/attribute pairs found in the map.
-	 * 
+	 *
 	 * @param map
 	 *                  The entries in the given map will be added to the new map.
 	 */
@@ -50,6 +58,17 @@ public class ObjectMap implements Map {
 		putAll(map);
 	}
 
+	/**
+	 * Returns the number of slots needed to hold the given number of entries.
+	 */
+	private static int capacityFor(int entries) {
+		int capacity = MIN_CAPACITY;
+		//keep the load factor at or below 3/4
+		while (entries * 4 > capacity * 3)
+			capacity <<= 1;
+		return capacity;
+	}
+
 	/**
 	 * @see Map#clear()
 	 */
@@ -64,7 +83,12 @@ public class ObjectMap implements Map {
 	 */
 	@Override
 	public Object clone() {
-		return new ObjectMap(this);
+		ObjectMap result = new ObjectMap(0);
+		if (count > 0) {
+			result.elements = elements.clone();
+			result.count = count;
+		}
+		return result;
 	}
 
 	/**
@@ -72,12 +96,7 @@ public class ObjectMap implements Map {
 	 */
 	@Override
 	public boolean containsKey(Object key) {
-		if (elements == null || count == 0)
-			return false;
-		for (int i = 0; i < elements.length; i = i + 2)
-			if (elements[i] != null && elements[i].equals(key))
-				return true;
-		return false;
+		return indexOf(key) >= 0;
 	}
 
 	/**
@@ -87,15 +106,15 @@ public class ObjectMap implements Map {
 	public boolean containsValue(Object value) {
 		if (elements == null || count == 0)
 			return false;
-		for (int i = 1; i < elements.length; i = i + 2)
-			if (elements[i] != null && elements[i].equals(value))
+		for (int i = 0; i < elements.length; i = i + 2)
+			if (elements[i] != null && elements[i + 1].equals(value))
 				return true;
 		return false;
 	}
 
 	/**
 	 * @see Map#entrySet()
-	 *  
+	 *
 	 * Note: This implementation does not conform properly to the
 	 * specification in the Map interface. The returned collection will not
 	 * be bound to this map and will not remain in sync with this map.
@@ -116,9 +135,8 @@ public class ObjectMap implements Map {
 		//must be same size
 		if (count != other.size())
 			return false;
-		//keysets must be equal
-		if (!keySet().equals(other.keySet()))
-			return false;
+		if (count == 0)
+			return true;
 		//values for each key must be equal
 		for (int i = 0; i < elements.length; i = i + 2) {
 			if (elements[i] != null && (!elements[i + 1].equals(other.get(elements[i]))))
@@ -132,22 +150,59 @@ public class ObjectMap implements Map {
 	 */
 	@Override
 	public Object get(Object key) {
-		if (elements == null || count == 0)
-			return null;
-		for (int i = 0; i < elements.length; i = i + 2)
-			if (elements[i] != null && elements[i].equals(key))
-				return elements[i + 1];
-		return null;
+		int index = indexOf(key);
+		return index < 0 ? null : elements[index + 1];
+	}
+
+	/**
+	 * Returns the index of the slot of the given key, or -1 if the key is not
+	 * in the map.
+	 */
+	private int indexOf(Object key) {
+		if (elements == null || count == 0 || key == null)
+			return -1;
+		int mask = elements.length - 1;
+		for (int i = slotOf(key, elements.length);; i = (i + 2) & mask) {
+			Object current = elements[i];
+			if (current == null)
+				return -1;
+			if (current.equals(key))
+				return i;
+		}
 	}
 
 	/**
-	 * The capacity of the map has been exceeded, grow the array by GROW_SIZE to
-	 * accommodate more entries.
+	 * Returns the home slot index of the given key in an array of the given length.
+	 */
+	private static int slotOf(Object key, int length) {
+		int hash = key.hashCode();
+		hash ^= hash >>> 16;
+		return (hash << 1) & (length - 1);
+	}
+
+	/**
+	 * The capacity of the map has been exceeded, double the number of slots
+	 * and re-insert all entries.
 	 */
 	protected void grow() {
-		Object[] expanded = new Object[elements.length + GROW_SIZE];
-		System.arraycopy(elements, 0, expanded, 0, elements.length);
-		elements = expanded;
+		Object[] old = elements;
+		elements = new Object[old.length * 2];
+		for (int i = 0; i < old.length; i = i + 2) {
+			if (old[i] != null)
+				insert(old[i], old[i + 1]);
+		}
+	}
+
+	/**
+	 * Stores a key that is known not to be in the map yet.
+	 */
+	private void insert(Object key, Object value) {
+		int mask = elements.length - 1;
+		int i = slotOf(key, elements.length);
+		while (elements[i] != null)
+			i = (i + 2) & mask;
+		elements[i] = key;
+		elements[i + 1] = value;
 	}
 
 	/**
@@ -156,6 +211,8 @@ public class ObjectMap implements Map {
 	@Override
 	public int hashCode() {
 		int hash = 0;
+		if (elements == null)
+			return hash;
 		for (int i = 0; i < elements.length; i = i + 2) {
 			if (elements[i] != null) {
 				hash += elements[i].hashCode();
@@ -173,8 +230,8 @@ public class ObjectMap implements Map {
 	}
 
 	/**
-	 * @see Map#keySet() 
-	 * 
+	 * @see Map#keySet()
+	 *
 	 * Note: This implementation does not conform properly to the
 	 * specification in the Map interface. The returned collection will not
 	 * be bound to this map and will not remain in sync with this map.
@@ -182,6 +239,8 @@ public class ObjectMap implements Map {
 	@Override
 	public Set keySet() {
 		Set<Object> result = new HashSet<Object>(size());
+		if (elements == null)
+			return result;
 		for (int i = 0; i < elements.length; i = i + 2) {
 			if (elements[i] != null) {
 				result.add(elements[i]);
@@ -200,41 +259,20 @@ public class ObjectMap implements Map {
 		if (value == null)
 			return remove(key);
 
-		// handle the case where we don't have any attributes yet
-		if (elements == null)
-			elements = new Object[DEFAULT_SIZE];
-		if (count == 0) {
-			elements[0] = key;
-			elements[1] = value;
-			count++;
-			return null;
-		}
-
-		int emptyIndex = -1;
 		// replace existing value if it exists
-		for (int i = 0; i < elements.length; i += 2) {
-			if (elements[i] != null) {
-				if (elements[i].equals(key)) {
-					Object oldValue = elements[i + 1];
-					elements[i + 1] = value;
-					return oldValue;
-				}
-			} else if (emptyIndex == -1) {
-				// keep track of the first empty index
-				emptyIndex = i;
-			}
+		int index = indexOf(key);
+		if (index >= 0) {
+			Object oldValue = elements[index + 1];
+			elements[index + 1] = value;
+			return oldValue;
 		}
-		// this will put the emptyIndex greater than the size but
-		// that's ok because we will grow first.
-		if (emptyIndex == -1)
-			emptyIndex = count * 2;
-
-		// otherwise add it to the list of elements.
-		// grow if necessary
-		if (elements.length <= (count * 2))
+		// handle the case where we don't have any attributes yet
+		if (elements == null)
+			elements = new Object[MIN_CAPACITY * 2];
+		// grow if necessary, so that the load factor stays at or below 3/4
+		else if ((count + 1) * 4 > elements.length / 2 * 3)
 			grow();
-		elements[emptyIndex] = key;
-		elements[emptyIndex + 1] = value;
+		insert(key, value);
 		count++;
 		return null;
 	}
@@ -256,18 +294,27 @@ public class ObjectMap implements Map {
 	 */
 	@Override
 	public Object remove(Object key) {
-		if (elements == null || count == 0)
+		int index = indexOf(key);
+		if (index < 0)
 			return null;
-		for (int i = 0; i < elements.length; i = i + 2) {
-			if (elements[i] != null && elements[i].equals(key)) {
-				elements[i] = null;
-				Object result = elements[i + 1];
-				elements[i + 1] = null;
-				count--;
-				return result;
+		Object result = elements[index + 1];
+		count--;
+		// shift back the following entries of the probe sequence, so that
+		// lookups never stop at the hole left by the removed entry
+		int mask = elements.length - 1;
+		int hole = index;
+		for (int i = (index + 2) & mask; elements[i] != null; i = (i + 2) & mask) {
+			int home = slotOf(elements[i], elements.length);
+			// move the entry if its home slot is not between the hole and its current slot
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				elements[hole] = elements[i];
+				elements[hole + 1] = elements[i + 1];
+				hole = i;
 			}
 		}
-		return null;
+		elements[hole] = null;
+		elements[hole + 1] = null;
+		return result;
 	}
 
 	/**
@@ -292,8 +339,8 @@ public class ObjectMap implements Map {
 	}
 
 	/**
-	 * @see Map#values() 
-	 * 
+	 * @see Map#values()
+	 *
 	 * Note: This implementation does not conform properly to the
 	 * specification in the Map interface. The returned collection will not
 	 * be bound to this map and will not remain in sync with this map.
@@ -301,6 +348,8 @@ public class ObjectMap implements Map {
 	@Override
 	public Collection values() {
 		Set<Object> result = new HashSet<Object>(size());
+		if (elements == null)
+			return result;
 		for (int i = 1; i < elements.length; i = i + 2) {
 			if (elements[i] != null) {
 				result.add(elements[i]);
@@ -308,4 +357,4 @@ public class ObjectMap implements Map {
 		}
 		return result;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.eclipse.core.runtime.jobs.*;
+
+/**
+ * Remembers the results of conflict checks between immutable scheduling rules,
+ * so that repeated scheduler passes don't evaluate the same pair of rules again.
+ * Rules are compared by identity. The cache only holds weak references to the
+ * rules, and keeps a bounded number of results, discarding the least recently
+ * used ones first. This way rules that are no longer used by any job are
+ * forgotten without the job manager having to tell.
+ * <p>
+ * All access must be synchronized on the job manager lock.
+ * </p>
+ * @see IImmutableSchedulingRule
+ */
+class RuleConflictCache {
+	/**
+	 * The maximum number of conflict check results kept.
+	 */
+	private static final int MAX_RESULTS = 1024;
+	/**
+	 * The maximum number of MultiRules whose immutability is kept.
+	 */
+	private static final int MAX_MULTI_RULES = 256;
+
+	/**
+	 * A pair of rules compared by identity.
+	 */
+	private static abstract class Key {
+		int hash;
+
+		abstract ISchedulingRule getRule();
+
+		abstract ISchedulingRule getOther();
+
+		static int hash(ISchedulingRule rule, ISchedulingRule other) {
+			return 31 * System.identityHashCode(rule) + System.identityHashCode(other);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key key = (Key) obj;
+			ISchedulingRule rule = getRule();
+			// a key whose rule was collected is only equal to itself
+			return rule != null && rule == key.getRule() && getOther() == key.getOther();
+		}
+	}
+
+	/**
+	 * The key used to look up results, reused to avoid creating garbage.
+	 */
+	private static final class LookupKey extends Key {
+		private ISchedulingRule rule;
+		private ISchedulingRule other;
+
+		LookupKey set(ISchedulingRule newRule, ISchedulingRule newOther) {
+			this.rule = newRule;
+			this.other = newOther;
+			this.hash = hash(newRule, newOther);
+			return this;
+		}
+
+		@Override
+		ISchedulingRule getRule() {
+			return rule;
+		}
+
+		@Override
+		ISchedulingRule getOther() {
+			return other;
+		}
+	}
+
+	/**
+	 * The key stored in the cache, which does not keep the rules from being
+	 * garbage collected.
+	 */
+	private static final class WeakKey extends Key {
+		private final WeakReference<ISchedulingRule> rule;
+		private final WeakReference<ISchedulingRule> other;
+
+		WeakKey(ISchedulingRule rule, ISchedulingRule other) {
+			this.rule = new WeakReference<ISchedulingRule>(rule);
+			this.other = other == null ? null : new WeakReference<ISchedulingRule>(other);
+			this.hash = hash(rule, other);
+		}
+
+		@Override
+		ISchedulingRule getRule() {
+			return rule.get();
+		}
+
+		@Override
+		ISchedulingRule getOther() {
+			return other == null ? null : other.get();
+		}
+	}
+
+	/**
+	 * A map discarding its least recently used entries beyond a maximum size.
+	 */
+	private static final class BoundedMap extends LinkedHashMap<Key, Boolean> {
+		/**
+		 * All serializable objects should have a stable serialVersionUID
+		 */
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+
+		BoundedMap(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+	/**
+	 * Cached conflict check results, keyed by the rule that was asked and the
+	 * rule it was asked about.
+	 */
+	private final Map<Key, Boolean> results = new BoundedMap(MAX_RESULTS);
+	/**
+	 * Whether known MultiRules have only immutable children.
+	 */
+	private final Map<Key, Boolean> multiRules = new BoundedMap(MAX_MULTI_RULES);
+	private final LookupKey lookup = new LookupKey();
+
+	/**
+	 * Returns <code>rule.isConflicting(other)</code>, using a cached result if
+	 * both rules are immutable.
+	 */
+	boolean isConflicting(ISchedulingRule rule, ISchedulingRule other) {
+		if (!isImmutable(rule) || !isImmutable(other))
+			return rule.isConflicting(other);
+		Boolean known = results.get(lookup.set(rule, other));
+		// don't keep the rules alive
+		lookup.set(null, null);
+		if (known != null)
+			return known.booleanValue();
+		boolean result = rule.isConflicting(other);
+		results.put(new WeakKey(rule, other), Boolean.valueOf(result));
+		return result;
+	}
+
+	private boolean isImmutable(ISchedulingRule rule) {
+		if (rule instanceof IImmutableSchedulingRule)
+			return true;
+		if (rule.getClass() != MultiRule.class)
+			return false;
+		Boolean immutable = multiRules.get(lookup.set(rule, null));
+		lookup.set(null, null);
+		if (immutable == null) {
+			ISchedulingRule[] children = ((MultiRule) rule).getChildren();
+			boolean allImmutable = true;
+			for (int i = 0; allImmutable && i < children.length; i++)
+				allImmutable = children[i] instanceof IImmutableSchedulingRule;
+			immutable = Boolean.valueOf(allImmutable);
+			multiRules.put(new WeakKey(rule, null), immutable);
+		}
+		return immutable.booleanValue();
+	}
+}
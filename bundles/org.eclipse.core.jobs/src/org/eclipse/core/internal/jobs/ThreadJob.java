@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2012 IBM Corporation and others.
+ * Copyright (c) 2004, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -71,6 +71,13 @@ class ThreadJob extends Job {
 	 */
 	boolean isWaiting;
 
+	/**
+	 * The lock this thread is waiting on while its scheduling rule is blocked,
+	 * or <code>null</code> if it is not waiting. The internal worker notifies
+	 * this lock when the progress monitor of the wait is canceled.
+	 */
+	volatile Object waitLock;
+
 	ThreadJob(ISchedulingRule rule) {
 		super("Implicit Job"); //$NON-NLS-1$
 		setSystem(true);
@@ -164,8 +171,9 @@ class ThreadJob extends Job {
 	 * job must block, the <code>LockListener</code> is given a chance to override.
 	 * If override is not granted, then this method will block until the rule is available. If 
 	 * <code>LockListener#canBlock</code> returns <tt>true</tt>, then the <code>monitor</code>
-	 * <i>will not</i> be periodically checked for cancellation. It will only be rechecked if this 
-	 * thread is interrupted. If <code>LockListener#canBlock</code> returns <tt>false</tt> The 
+	 * <i>will not</i> be periodically checked for cancellation. It will only be rechecked when the 
+	 * rule may have become available, or when the internal worker thread wakes up this thread 
+	 * because the monitor was canceled. If <code>LockListener#canBlock</code> returns <tt>false</tt> The 
 	 * <code>monitor</code> <i>will</i> be checked periodically for cancellation.
 	 * 
 	 * When a UI is present, it is recommended that the <code>LockListener</code> 
@@ -212,8 +220,8 @@ class ThreadJob extends Job {
 			waiting = true;
 			// If we're allowed to block this thread we won't be checking the monitor. In order
 			// to respond to cancellation, register this monitor with the internal JobManager
-			// worker thread. The worker thread will check for cancellation and will interrupt
-			// this thread when the monitor is canceled. T
+			// worker thread. The worker thread will check for cancellation and will wake up
+			// this thread when the monitor is canceled.
 			if (canBlock)
 				manager.beginMonitoring(threadJob, monitor);
 			final Thread currentThread = Thread.currentThread();
@@ -263,22 +271,30 @@ class ThreadJob extends Job {
 					try {
 						// Wait until we are no longer definitely blocked (not running). 
 						// The actual exit conditions are listed above at the beginning of
-						// this while loop
-						int state = blockingJob.getState();
-						//ensure we don't wait forever if the blocker is waiting, because it might have yielded to me
-						if (state == Job.RUNNING && canBlock)
-							blockingJob.jobStateLock.wait();
-						else if (state != Job.NONE)
-							blockingJob.jobStateLock.wait(250);
+						// this while loop. Every state change of the blocking job wakes
+						// up this thread, as does the internal worker when the monitor is
+						// canceled. The blocker was running or blocked by a running job,
+						// so if it has changed state since, it no longer blocks us and
+						// we try again at once. This includes a yielding blocker, which
+						// might have yielded to me.
+						int state = blockingJob.internalGetState();
+						if (state == Job.RUNNING || state == InternalJob.ABOUT_TO_RUN || state == InternalJob.BLOCKED) {
+							threadJob.waitLock = blockingJob.jobStateLock;
+							// a thread that cannot block must be kept alive to check the monitor
+							if (canBlock)
+								blockingJob.jobStateLock.wait();
+							else
+								blockingJob.jobStateLock.wait(250);
+						}
 					} catch (InterruptedException e) {
 						// This thread may be interrupted via two common scenarios. 1) If
 						// the UISynchronizer is in use and this thread is a UI thread
 						// and a syncExec() is performed, this thread will be interrupted
-						// every 1000ms. 2) If this thread is allowed to be blocked and 
-						// the progress monitor was canceled, the internal JobManager 
-						// worker thread will interrupt this thread so cancellation can
-						// be carried out. 
+						// every 1000ms. 2) Some other code interrupted this thread,
+						// which must be preserved.
 						interrupted = true;
+					} finally {
+						threadJob.waitLock = null;
 					}
 				}
 				// Going around the loop again.  Ensure we're not marked as waiting for the thread
@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.jobs;
+
+import java.util.*;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+
+/**
+ * Index of the jobs waiting in a queue, grouped by the identity of their scheduling
+ * rule. Looking for a waiting job that conflicts with a given job only needs one
+ * conflict check per distinct rule rather than one per waiting job, and no check at
+ * all when no job with a rule is waiting. Jobs without a rule never conflict, so
+ * they are not indexed.
+ * <p>
+ * The groups are kept in the order their first job started waiting, so the search
+ * stops at the first conflicting group. When no waiting job conflicts, the search
+ * still checks every distinct waiting rule: scheduling rules are arbitrary
+ * implementations of {@link ISchedulingRule#isConflicting(ISchedulingRule)}, and
+ * the jobs bundle has no rule type that could be indexed by a key or a path
+ * prefix. Checks between immutable rules are answered by the
+ * {@link RuleConflictCache}.
+ * </p>
+ * All access must be synchronized on the job manager lock.
+ */
+class WaiterIndex {
+	/**
+	 * A waiting job, with the wait queue stamp it had when it was added. The job
+	 * stamp is reset when it stops waiting, possibly before it is removed.
+	 */
+	private static class Waiter {
+		final InternalJob job;
+		final long stamp;
+
+		Waiter(InternalJob job) {
+			this.job = job;
+			this.stamp = job.getWaitQueueStamp();
+		}
+	}
+
+	/**
+	 * The waiting jobs sharing a rule, in wait queue order.
+	 */
+	private static class Group extends ArrayList<Waiter> {
+		private static final long serialVersionUID = 1L;
+		final ISchedulingRule rule;
+
+		Group(ISchedulingRule rule) {
+			super(2);
+			this.rule = rule;
+		}
+
+		long getStamp() {
+			return get(0).stamp;
+		}
+
+		int indexOf(InternalJob job) {
+			for (int i = 0; i < size(); i++)
+				if (get(i).job == job)
+					return i;
+			return -1;
+		}
+	}
+
+	/**
+	 * The groups of waiting jobs, by rule.
+	 */
+	private final Map<ISchedulingRule, Group> waiters = new IdentityHashMap<ISchedulingRule, Group>();
+
+	/**
+	 * The same groups, by the stamp of their first job.
+	 */
+	private final TreeMap<Long, Group> order = new TreeMap<Long, Group>();
+
+	/**
+	 * Adds a job to the index.
+	 */
+	void add(InternalJob job) {
+		ISchedulingRule rule = job.getRule();
+		if (rule == null)
+			return;
+		Waiter waiter = new Waiter(job);
+		Group group = waiters.get(rule);
+		if (group == null) {
+			group = new Group(rule);
+			waiters.put(rule, group);
+		} else if (group.getStamp() > waiter.stamp) {
+			order.remove(group.getStamp());
+		}
+		//jobs are usually added in stamp order, so this rarely needs to look far
+		int index = group.size();
+		while (index > 0 && group.get(index - 1).stamp > waiter.stamp)
+			index--;
+		group.add(index, waiter);
+		if (index == 0)
+			order.put(group.getStamp(), group);
+	}
+
+	/**
+	 * Returns the job that has been waiting the longest of all the waiting
+	 * jobs whose scheduling rule conflicts with the rule of the given job, or
+	 * <code>null</code> if no such job exists.
+	 */
+	InternalJob findConflicting(InternalJob job) {
+		if (waiters.isEmpty() || job.getRule() == null)
+			return null;
+		for (Iterator<Group> it = order.values().iterator(); it.hasNext();) {
+			//all jobs in a group share the same rule, so checking the first one is enough
+			InternalJob candidate = it.next().get(0).job;
+			if (candidate.isConflicting(job))
+				return candidate;
+		}
+		return null;
+	}
+
+	/**
+	 * Removes a job from the index. Has no effect if the job is not indexed.
+	 */
+	void remove(InternalJob job) {
+		ISchedulingRule rule = job.getRule();
+		if (rule == null)
+			return;
+		Group group = waiters.get(rule);
+		if (group != null && remove(group, job))
+			return;
+		//the rule of the job has changed while it was waiting
+		for (Iterator<Group> it = order.values().iterator(); it.hasNext();)
+			if (remove(it.next(), job))
+				return;
+	}
+
+	/**
+	 * Removes a job from the given group, and returns whether it was there.
+	 */
+	private boolean remove(Group group, InternalJob job) {
+		int index = group.indexOf(job);
+		if (index == -1)
+			return false;
+		if (index == 0)
+			order.remove(group.getStamp());
+		group.remove(index);
+		if (group.isEmpty())
+			waiters.remove(group.rule);
+		else if (index == 0)
+			order.put(group.getStamp(), group);
+		return true;
+	}
+}
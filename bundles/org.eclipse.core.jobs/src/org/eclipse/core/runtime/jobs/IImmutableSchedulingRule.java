@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime.jobs;
+
+/**
+ * A scheduling rule whose conflicts never change. For any two immutable rules
+ * <code>a</code> and <code>b</code>, <code>a.isConflicting(b)</code> must
+ * return the same result every time it is called.
+ * <p>
+ * The job manager remembers the result of conflict checks between immutable
+ * rules, so that it does not need to evaluate them again every time it looks
+ * for a job to run. This is worthwhile for rules with expensive conflict checks,
+ * such as rules comparing paths. A {@link MultiRule} is treated as immutable
+ * when all of its children are immutable.
+ * </p>
+ * <p>
+ * Clients may implement this interface.
+ * </p>
+ *
+ * @see ISchedulingRule#isConflicting(ISchedulingRule)
+ * @since 3.6
+ */
+public interface IImmutableSchedulingRule extends ISchedulingRule {
+	//marker interface
+}
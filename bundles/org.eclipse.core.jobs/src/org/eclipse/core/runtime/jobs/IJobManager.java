@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2012 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -46,6 +46,55 @@ public interface IJobManager {
 	 */
 	public static final String PROP_USE_DAEMON_THREADS = "eclipse.jobs.daemon"; //$NON-NLS-1$
 
+	/**
+	 * Event mask bit for {@link IJobChangeListener#aboutToRun(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, int)
+	 * @since 3.6
+	 */
+	public static final int EVENT_ABOUT_TO_RUN = 0x01;
+
+	/**
+	 * Event mask bit for {@link IJobChangeListener#awake(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, int)
+	 * @since 3.6
+	 */
+	public static final int EVENT_AWAKE = 0x02;
+
+	/**
+	 * Event mask bit for {@link IJobChangeListener#done(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, int)
+	 * @since 3.6
+	 */
+	public static final int EVENT_DONE = 0x04;
+
+	/**
+	 * Event mask bit for {@link IJobChangeListener#running(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, int)
+	 * @since 3.6
+	 */
+	public static final int EVENT_RUNNING = 0x08;
+
+	/**
+	 * Event mask bit for {@link IJobChangeListener#scheduled(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, int)
+	 * @since 3.6
+	 */
+	public static final int EVENT_SCHEDULED = 0x10;
+
+	/**
+	 * Event mask bit for {@link IJobChangeListener#sleeping(IJobChangeEvent)}.
+	 * @see #addJobChangeListener(IJobChangeListener, int)
+	 * @since 3.6
+	 */
+	public static final int EVENT_SLEEPING = 0x20;
+
+	/**
+	 * Event mask including all job change event types.
+	 * @see #addJobChangeListener(IJobChangeListener, int)
+	 * @since 3.6
+	 */
+	public static final int EVENT_ALL = EVENT_ABOUT_TO_RUN | EVENT_AWAKE | EVENT_DONE | EVENT_RUNNING | EVENT_SCHEDULED | EVENT_SLEEPING;
+
 	/**
 	 * Registers a job listener with the job manager.  
 	 * Has no effect if an identical listener is already registered.
@@ -56,6 +105,22 @@ public interface IJobManager {
 	 */
 	public void addJobChangeListener(IJobChangeListener listener);
 
+	/**
+	 * Registers a job listener with the job manager that is only notified of the
+	 * given types of job change events. Listeners that are only interested in a few
+	 * event types should be registered with this method, because the job manager
+	 * does not create events that no listener is interested in.
+	 * If an identical listener is already registered, only its event mask is changed.
+	 * 
+	 * @param listener the listener to be added
+	 * @param eventMask a bit mask of the <code>EVENT_*</code> constants on this
+	 * interface, describing the events the listener should be notified of
+	 * @see #addJobChangeListener(IJobChangeListener)
+	 * @see #removeJobChangeListener(IJobChangeListener)
+	 * @since 3.6
+	 */
+	public void addJobChangeListener(IJobChangeListener listener, int eventMask);
+
 	/**
 	 * Begins applying this rule in the calling thread.  If the rule conflicts with another
 	 * rule currently running in another thread, this method blocks until there are
@@ -242,6 +307,59 @@ public interface IJobManager {
 	 */
 	public void join(Object family, IProgressMonitor monitor) throws InterruptedException, OperationCanceledException;
 
+	/**
+	 * Waits until all of the given jobs are finished, or until the given timeout
+	 * has elapsed.  This method will block the calling thread until all such jobs have
+	 * finished executing, the timeout elapses, or this thread is interrupted.  Jobs
+	 * that are not waiting, running, or sleeping when this method is called are
+	 * ignored, unless they are scheduled while waiting.  Rescheduling a job does not
+	 * count as finishing it.  Feedback on how many of the jobs have finished is
+	 * provided to a progress monitor.
+	 * <p>
+	 * If this method is called while the job manager is suspended, only jobs
+	 * that are currently running will be joined.
+	 * </p>
+	 * <p>
+	 * Note that there is a deadlock risk when using join.  If the calling thread owns
+	 * a lock or object monitor that a joined thread is waiting for, deadlock 
+	 * will occur unless a timeout is given.
+	 * </p>
+	 * 
+	 * @param jobs the jobs to join
+	 * @param timeoutMillis the maximum amount of time to wait in milliseconds, 
+	 * or <code>0</code> to wait until all jobs are finished
+	 * @param monitor Progress monitor for reporting progress on how the
+	 * wait is progressing, or <code>null</code> if no progress monitoring is required.
+	 * @return <code>true</code> if all jobs are finished, and <code>false</code>
+	 * if the timeout elapsed first
+	 * @exception InterruptedException if this thread is interrupted while waiting
+	 * @exception OperationCanceledException if the progress monitor is canceled while waiting
+	 * @see #joinFamilies(Object[], long, IProgressMonitor)
+	 * @since 3.6
+	 */
+	public boolean joinAll(Job[] jobs, long timeoutMillis, IProgressMonitor monitor) throws InterruptedException, OperationCanceledException;
+
+	/**
+	 * Waits until all jobs of the given families are finished, or until the given 
+	 * timeout has elapsed.  This method behaves like {@link #join(Object, IProgressMonitor)} 
+	 * for all of the families at once, reporting progress on all of their jobs to a
+	 * single progress monitor.
+	 * 
+	 * @param families the job families to join
+	 * @param timeoutMillis the maximum amount of time to wait in milliseconds, 
+	 * or <code>0</code> to wait until all jobs are finished
+	 * @param monitor Progress monitor for reporting progress on how the
+	 * wait is progressing, or <code>null</code> if no progress monitoring is required.
+	 * @return <code>true</code> if all jobs are finished, and <code>false</code>
+	 * if the timeout elapsed first
+	 * @exception InterruptedException if this thread is interrupted while waiting
+	 * @exception OperationCanceledException if the progress monitor is canceled while waiting
+	 * @see Job#belongsTo(Object)
+	 * @see #suspend()
+	 * @since 3.6
+	 */
+	public boolean joinFamilies(Object[] families, long timeoutMillis, IProgressMonitor monitor) throws InterruptedException, OperationCanceledException;
+
 	/**
 	 * Creates a new lock object.  All lock objects supplied by the job manager
 	 * know about each other and will always avoid circular deadlock amongst
@@ -318,6 +436,21 @@ public interface IJobManager {
 	 */
 	public void setProgressProvider(ProgressProvider provider);
 
+	/**
+	 * Registers the policy controlling how running jobs are treated when the
+	 * job manager is shut down.  If there was a policy already registered, it is
+	 * replaced.
+	 * <p>
+	 * This method is intended for use by the currently executing Eclipse application.
+	 * Plug-ins outside the currently running application should not call this method.
+	 * </p>
+	 * 
+	 * @param policy the new policy, or <code>null</code> to use the default policy
+	 * @see ShutdownPolicy
+	 * @since 3.6
+	 */
+	public void setShutdownPolicy(ShutdownPolicy policy);
+
 	/**
 	 * Suspends execution of all jobs.  Jobs that are already running
 	 * when this method is invoked will complete as usual, but all sleeping and
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.runtime.jobs;
+
+/**
+ * A shutdown policy controls how the job manager treats the jobs that are
+ * still running when it is shut down.
+ * <p>
+ * On shutdown, the job manager stops accepting new jobs, discards the jobs
+ * that are waiting or sleeping, and cancels all running jobs. It then waits
+ * for the running jobs to end until the drain timeout has elapsed. The worker 
+ * threads of jobs that are still running at that point can be interrupted,
+ * in which case the job manager waits for another drain timeout. Finally, 
+ * the policy is told how long each of the jobs that were running delayed
+ * the shutdown.
+ * </p>
+ * <p>
+ * This class is intended for use by the currently executing Eclipse application.
+ * Plug-ins outside the currently running application should not reference
+ * or subclass this class.
+ * </p>
+ * 
+ * @see IJobManager#setShutdownPolicy(ShutdownPolicy)
+ * @since 3.6
+ */
+public class ShutdownPolicy {
+	/**
+	 * The drain timeout of the default policy, in milliseconds.
+	 */
+	public static final long DEFAULT_DRAIN_TIMEOUT = 300;
+
+	/**
+	 * Returns the maximum amount of time in milliseconds that the job manager
+	 * waits for canceled jobs to end.
+	 * <p>
+	 * This default implementation returns {@link #DEFAULT_DRAIN_TIMEOUT}.
+	 * Subclasses may override.
+	 * </p>
+	 * 
+	 * @return the drain timeout in milliseconds
+	 */
+	public long getDrainTimeout() {
+		return DEFAULT_DRAIN_TIMEOUT;
+	}
+
+	/**
+	 * Returns whether the worker thread running the given job should be
+	 * interrupted, because the job did not end before the drain timeout
+	 * elapsed. Only worker threads of the job manager are interrupted; jobs
+	 * running in other threads are never interrupted.
+	 * <p>
+	 * This default implementation always returns <code>false</code>.
+	 * Subclasses may override.
+	 * </p>
+	 * 
+	 * @param job a job that is still running
+	 * @return <code>true</code> to interrupt the thread running the job, and 
+	 * <code>false</code> otherwise
+	 */
+	public boolean shouldInterrupt(Job job) {
+		return false;
+	}
+
+	/**
+	 * Notification that the job manager is done waiting for a job that was
+	 * running when it was shut down. This method is called once for each such
+	 * job, after the job manager stopped waiting.
+	 * <p>
+	 * This default implementation does nothing. Subclasses may override.
+	 * </p>
+	 * 
+	 * @param job a job that was running when the job manager was shut down
+	 * @param delay the time in milliseconds that the job manager waited for 
+	 * the job to end
+	 * @param ended <code>true</code> if the job ended while the job manager was
+	 * waiting, and <code>false</code> if it was still running when the job
+	 * manager stopped waiting
+	 */
+	public void shutdownDelayed(Job job, long delay, boolean ended) {
+		//do nothing
+	}
+}
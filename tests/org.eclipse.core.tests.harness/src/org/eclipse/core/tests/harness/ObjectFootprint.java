@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.harness;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * Estimates the memory used by the objects reachable from other objects,
+ * assuming 8 byte object headers and 4 byte references. Objects are counted
+ * once, however many times they are reached.
+ * <pre>
+ * ObjectFootprint footprint = new ObjectFootprint();
+ * footprint.ignore(shared);
+ * footprint.measure(root);
+ * int size = footprint.getSize();
+ * </pre>
+ */
+public class ObjectFootprint {
+	public static final int ARRAY_HEADER_SIZE = 12;
+	public static final int OBJECT_HEADER_SIZE = 8;
+	public static final int POINTER_SIZE = 4;
+
+	// objects already counted or ignored
+	private final Map visited = new IdentityHashMap();
+	// Class -> Integer, the shallow size of all the instances of the class
+	private final Map sizes = new HashMap();
+	private int size;
+
+	private static int sizeOfPrimitive(Class type) {
+		if (type == long.class || type == double.class)
+			return 8;
+		if (type == char.class || type == short.class)
+			return 2;
+		if (type == byte.class || type == boolean.class)
+			return 1;
+		return 4;
+	}
+
+	private void count(Class type, int shallowSize) {
+		Integer existing = (Integer) sizes.get(type);
+		sizes.put(type, new Integer(shallowSize + (existing == null ? 0 : existing.intValue())));
+		size += shallowSize;
+	}
+
+	/**
+	 * Returns the size of the objects measured so far, in bytes.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the shallow size of the instances of the given class measured
+	 * so far, in bytes.
+	 */
+	public int getSize(Class type) {
+		Integer result = (Integer) sizes.get(type);
+		return result == null ? 0 : result.intValue();
+	}
+
+	/**
+	 * Excludes the given object, and the objects only reachable from it, from
+	 * the objects measured.
+	 */
+	public void ignore(Object object) {
+		visited.put(object, object);
+	}
+
+	/**
+	 * Adds the size of the given object and of the objects reachable from it.
+	 */
+	public void measure(Object object) {
+		LinkedList pending = new LinkedList();
+		pending.add(object);
+		while (!pending.isEmpty()) {
+			Object next = pending.removeFirst();
+			if (next == null || visited.containsKey(next))
+				continue;
+			visited.put(next, next);
+			Class type = next.getClass();
+			if (type.isArray())
+				measureArray(type, next, pending);
+			else
+				measureObject(type, next, pending);
+		}
+	}
+
+	private void measureArray(Class type, Object array, List pending) {
+		int length = Array.getLength(array);
+		Class componentType = type.getComponentType();
+		if (componentType.isPrimitive()) {
+			count(type, ARRAY_HEADER_SIZE + length * sizeOfPrimitive(componentType));
+			return;
+		}
+		count(type, ARRAY_HEADER_SIZE + length * POINTER_SIZE);
+		pending.addAll(Arrays.asList((Object[]) array));
+	}
+
+	private void measureObject(Class type, Object object, List pending) {
+		int shallowSize = OBJECT_HEADER_SIZE;
+		for (Class clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+			Field[] fields = clazz.getDeclaredFields();
+			for (int i = 0; i < fields.length; i++) {
+				if (Modifier.isStatic(fields[i].getModifiers()))
+					continue;
+				Class fieldType = fields[i].getType();
+				if (fieldType.isPrimitive()) {
+					shallowSize += sizeOfPrimitive(fieldType);
+					continue;
+				}
+				shallowSize += POINTER_SIZE;
+				try {
+					fields[i].setAccessible(true);
+					pending.add(fields[i].get(object));
+				} catch (IllegalAccessException e) {
+					throw new IllegalStateException(e.toString());
+				}
+			}
+		}
+		count(type, shallowSize);
+	}
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.content;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.*;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.content.BinarySignatureDescriber;
+import org.eclipse.core.runtime.content.IContentDescriber;
+import org.eclipse.core.tests.harness.CoreTest;
+
+/**
+ * Tests binary signature describers sharing the header of some contents, so
+ * that the contents are read once for all of them.
+ */
+public class BinarySignatureDescriberTest extends CoreTest {
+	private static final int SIZE = 2000;
+
+	/**
+	 * Contents counting how many bytes were read from them.
+	 */
+	static class CountingInputStream extends ByteArrayInputStream {
+		int read;
+
+		CountingInputStream(byte[] contents) {
+			super(contents);
+		}
+
+		public synchronized int read() {
+			int next = super.read();
+			if (next != -1)
+				read++;
+			return next;
+		}
+
+		public synchronized int read(byte[] b, int off, int len) {
+			int count = super.read(b, off, len);
+			if (count > 0)
+				read += count;
+			return count;
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(BinarySignatureDescriberTest.class);
+	}
+
+	public BinarySignatureDescriberTest(String name) {
+		super(name);
+	}
+
+	private byte[] getContents(int size) {
+		byte[] result = new byte[size];
+		for (int i = 0; i < result.length; i++)
+			result[i] = (byte) i;
+		return result;
+	}
+
+	/**
+	 * Returns the signature of the given contents at the given offset, in the
+	 * format of the describer parameters.
+	 */
+	private String getSignature(byte[] contents, int offset, int length) {
+		StringBuffer result = new StringBuffer();
+		for (int i = offset; i < offset + length; i++)
+			result.append(Integer.toHexString(contents[i] & 0xFF)).append(' ');
+		return result.toString();
+	}
+
+	private BinarySignatureDescriber createDescriber(String signature, int offset, boolean required) {
+		Hashtable parameters = new Hashtable();
+		parameters.put("signature", signature);
+		parameters.put("offset", Integer.toString(offset));
+		parameters.put("required", Boolean.toString(required));
+		BinarySignatureDescriber describer = new BinarySignatureDescriber();
+		try {
+			describer.setInitializationData(null, null, parameters);
+		} catch (CoreException e) {
+			fail("0.0", e);
+		}
+		return describer;
+	}
+
+	/**
+	 * Describes the contents with the given describer, both from the shared
+	 * header and on its own, and checks both answers are the same.
+	 */
+	private int describe(String message, BinarySignatureDescriber describer, CountingInputStream contents, Map properties) throws IOException {
+		contents.reset();
+		int result = describer.describe(contents, null, properties);
+		contents.reset();
+		int read = contents.read;
+		assertEquals(message, describer.describe(contents, null), result);
+		contents.read = read;
+		contents.reset();
+		return result;
+	}
+
+	public void testSharedHeader() throws IOException {
+		byte[] bytes = getContents(SIZE);
+		CountingInputStream contents = new CountingInputStream(bytes);
+		Map properties = new HashMap();
+		assertEquals("1.0", IContentDescriber.VALID, describe("1.1", createDescriber(getSignature(bytes, 0, 4), 0, true), contents, properties));
+		int read = contents.read;
+		assertTrue("1.2", read >= 4);
+		assertEquals("2.0", IContentDescriber.VALID, describe("2.1", createDescriber(getSignature(bytes, 100, 8), 100, true), contents, properties));
+		assertEquals("2.2", IContentDescriber.INVALID, describe("2.3", createDescriber(getSignature(bytes, 0, 4), 100, true), contents, properties));
+		assertEquals("2.4", IContentDescriber.INDETERMINATE, describe("2.5", createDescriber(getSignature(bytes, 0, 4), 100, false), contents, properties));
+		// the header was read once
+		assertEquals("2.6", read, contents.read);
+	}
+
+	/**
+	 * A describer needing more than the header read by the previous ones reads
+	 * the contents again, and the longer header is shared from then on.
+	 */
+	public void testLongerHeader() throws IOException {
+		byte[] bytes = getContents(SIZE);
+		CountingInputStream contents = new CountingInputStream(bytes);
+		Map properties = new HashMap();
+		assertEquals("1.0", IContentDescriber.VALID, describe("1.1", createDescriber(getSignature(bytes, 0, 4), 0, true), contents, properties));
+		int read = contents.read;
+		assertTrue("1.2", read < SIZE - 10);
+		int offset = read + 5;
+		assertEquals("2.0", IContentDescriber.VALID, describe("2.1", createDescriber(getSignature(bytes, offset, 4), offset, true), contents, properties));
+		assertTrue("2.2", contents.read >= read + offset + 4);
+		read = contents.read;
+		assertEquals("3.0", IContentDescriber.VALID, describe("3.1", createDescriber(getSignature(bytes, 10, 4), 10, true), contents, properties));
+		assertEquals("3.2", IContentDescriber.VALID, describe("3.3", createDescriber(getSignature(bytes, offset, 4), offset, true), contents, properties));
+		assertEquals("3.4", read, contents.read);
+		// beyond the end of the contents
+		assertEquals("4.0", IContentDescriber.INVALID, describe("4.1", createDescriber(getSignature(bytes, 0, 4), SIZE - 2, true), contents, properties));
+		assertEquals("4.2", IContentDescriber.VALID, describe("4.3", createDescriber(getSignature(bytes, SIZE - 4, 4), SIZE - 4, true), contents, properties));
+	}
+
+	/**
+	 * Contents shorter than the offset and length of a signature are read once,
+	 * and never match the signature.
+	 */
+	public void testShortContents() throws IOException {
+		byte[] bytes = getContents(10);
+		CountingInputStream contents = new CountingInputStream(bytes);
+		Map properties = new HashMap();
+		assertEquals("1.0", IContentDescriber.INVALID, describe("1.1", createDescriber("00 01 02 03", 8, true), contents, properties));
+		assertEquals("1.2", bytes.length, contents.read);
+		assertEquals("2.0", IContentDescriber.INDETERMINATE, describe("2.1", createDescriber("00 01 02 03", 8, false), contents, properties));
+		assertEquals("2.2", IContentDescriber.INVALID, describe("2.3", createDescriber("00 01 02 03", 20, true), contents, properties));
+		assertEquals("2.4", IContentDescriber.VALID, describe("2.5", createDescriber(getSignature(bytes, 6, 4), 6, true), contents, properties));
+		assertEquals("2.6", IContentDescriber.VALID, describe("2.7", createDescriber(getSignature(bytes, 0, 2), 0, true), contents, properties));
+		assertEquals("2.8", bytes.length, contents.read);
+		// empty contents
+		contents = new CountingInputStream(new byte[0]);
+		properties = new HashMap();
+		assertEquals("3.0", IContentDescriber.INVALID, describe("3.1", createDescriber("00", 0, true), contents, properties));
+		assertEquals("3.2", IContentDescriber.INDETERMINATE, describe("3.3", createDescriber("00", 0, false), contents, properties));
+	}
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.content;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.content.*;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.content.IContentDescriber;
+import org.eclipse.core.runtime.content.IContentDescription;
+import org.eclipse.core.tests.harness.CoreTest;
+
+/**
+ * Tests reading the byte order mark and the XML declaration of some contents
+ * once for all the describers looking at them.
+ */
+public class CharsetSnifferTest extends CoreTest {
+	private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-16\"?>";
+	private static final String DOCUMENT = DECLARATION + "<root/>";
+
+	public static Test suite() {
+		return new TestSuite(CharsetSnifferTest.class);
+	}
+
+	public CharsetSnifferTest(String name) {
+		super(name);
+	}
+
+	private byte[] concat(byte[] first, byte[] second) {
+		byte[] result = new byte[first.length + second.length];
+		System.arraycopy(first, 0, result, 0, first.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	private CharsetSniffer sniff(byte[] contents) throws IOException {
+		return CharsetSniffer.sniff(new ByteArrayInputStream(contents), new HashMap());
+	}
+
+	public void testByteOrderMark() throws IOException {
+		assertSame("1.0", IContentDescription.BOM_UTF_8, sniff(concat(IContentDescription.BOM_UTF_8, DOCUMENT.getBytes("UTF-8"))).getByteOrderMark());
+		assertSame("1.1", IContentDescription.BOM_UTF_16BE, sniff(concat(IContentDescription.BOM_UTF_16BE, DOCUMENT.getBytes("UTF-16BE"))).getByteOrderMark());
+		assertSame("1.2", IContentDescription.BOM_UTF_16LE, sniff(concat(IContentDescription.BOM_UTF_16LE, DOCUMENT.getBytes("UTF-16LE"))).getByteOrderMark());
+		assertNull("1.3", sniff(DOCUMENT.getBytes("UTF-8")).getByteOrderMark());
+		assertNull("1.4", sniff(DOCUMENT.getBytes("UTF-16LE")).getByteOrderMark());
+		// incomplete byte order marks
+		assertNull("2.0", sniff(new byte[] {(byte) 0xEF, (byte) 0xBB}).getByteOrderMark());
+		assertNull("2.1", sniff(new byte[] {(byte) 0xFE}).getByteOrderMark());
+		assertNull("2.2", sniff(new byte[0]).getByteOrderMark());
+	}
+
+	public void testUTF16Declaration() throws IOException {
+		assertEquals("1.0", DECLARATION, sniff(concat(IContentDescription.BOM_UTF_16BE, DOCUMENT.getBytes("UTF-16BE"))).getXMLDeclaration());
+		assertEquals("1.1", DECLARATION, sniff(concat(IContentDescription.BOM_UTF_16LE, DOCUMENT.getBytes("UTF-16LE"))).getXMLDeclaration());
+		// only the declaration, up to the end of the contents
+		assertEquals("2.0", DECLARATION, sniff(concat(IContentDescription.BOM_UTF_16LE, DECLARATION.getBytes("UTF-16LE"))).getXMLDeclaration());
+		String truncated = DECLARATION.substring(0, 20);
+		assertEquals("2.1", truncated, sniff(concat(IContentDescription.BOM_UTF_16BE, truncated.getBytes("UTF-16BE"))).getXMLDeclaration());
+	}
+
+	public void testDeclaration() throws IOException {
+		String declaration = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>";
+		assertEquals("1.0", declaration, sniff((declaration + "<root/>").getBytes("UTF-8")).getXMLDeclaration());
+		assertEquals("1.1", declaration, sniff(concat(IContentDescription.BOM_UTF_8, (declaration + "<root/>").getBytes("UTF-8"))).getXMLDeclaration());
+		assertEquals("1.2", "", sniff(new byte[0]).getXMLDeclaration());
+		assertEquals("1.3", "", sniff(IContentDescription.BOM_UTF_16LE).getXMLDeclaration());
+		// without a declaration, the beginning of the contents, in any encoding
+		StringBuffer text = new StringBuffer();
+		for (int i = 0; i < 20; i++)
+			text.append("Some text ");
+		assertEquals("2.0", text.substring(0, 100), sniff(text.toString().getBytes("UTF-8")).getXMLDeclaration());
+		assertEquals("2.1", text.substring(0, 100), sniff(concat(IContentDescription.BOM_UTF_16BE, text.toString().getBytes("UTF-16BE"))).getXMLDeclaration());
+	}
+
+	/**
+	 * Describers sharing the properties sniff the contents once, and leave them
+	 * at their beginning.
+	 */
+	public void testShared() throws IOException {
+		byte[] bytes = concat(IContentDescription.BOM_UTF_16LE, DOCUMENT.getBytes("UTF-16LE"));
+		InputStream contents = new ByteArrayInputStream(bytes);
+		Map properties = new HashMap();
+		CharsetSniffer sniffer = CharsetSniffer.sniff(contents, properties);
+		assertEquals("1.0", bytes[0] & 0xFF, contents.read());
+		contents.reset();
+		assertSame("1.1", sniffer, CharsetSniffer.sniff(contents, properties));
+		assertEquals("1.2", bytes[0] & 0xFF, contents.read());
+		contents.reset();
+
+		QualifiedName[] options = {IContentDescription.CHARSET, IContentDescription.BYTE_ORDER_MARK};
+		ContentDescription description = new ContentDescription(options, null);
+		assertEquals("2.0", IContentDescriber.VALID, new org.eclipse.core.runtime.content.XMLContentDescriber().describe(contents, description, properties));
+		assertSame("2.1", IContentDescription.BOM_UTF_16LE, description.getProperty(IContentDescription.BYTE_ORDER_MARK));
+		assertEquals("2.2", "UTF-16", description.getProperty(IContentDescription.CHARSET));
+		description = new ContentDescription(options, null);
+		assertEquals("3.0", IContentDescriber.INDETERMINATE, new TextContentDescriber().describe(contents, description, properties));
+		assertSame("3.1", IContentDescription.BOM_UTF_16LE, description.getProperty(IContentDescription.BYTE_ORDER_MARK));
+		assertSame("3.2", sniffer, CharsetSniffer.sniff(contents, properties));
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.content;
+
+import java.util.Random;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.content.ContentType;
+import org.eclipse.core.internal.content.ContentTypeCatalog;
+import org.eclipse.core.internal.content.ContentTypeManager;
+import org.eclipse.core.runtime.content.IContentType;
+import org.eclipse.core.tests.harness.CoreTest;
+
+/**
+ * Tests the numbering of the content type hierarchy answers the same as
+ * walking up the base types of the content types.
+ */
+public class ContentTypeHierarchyTest extends CoreTest {
+	private static final int TYPE_COUNT = 2000;
+	private static final String[] NO_SPECS = new String[0];
+	// the aliases created by the last call to createHierarchy
+	private boolean[] aliases;
+
+	public static Test suite() {
+		return new TestSuite(ContentTypeHierarchyTest.class);
+	}
+
+	public ContentTypeHierarchyTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Returns whether the given content type is the other one, or one of its sub-types.
+	 */
+	private boolean isKindOf(IContentType type, IContentType other) {
+		for (IContentType current = type; current != null; current = current.getBaseType())
+			if (current == other)
+				return true;
+		return false;
+	}
+
+	private int getDepth(IContentType type) {
+		int depth = 0;
+		for (IContentType current = type.getBaseType(); current != null; current = current.getBaseType())
+			depth++;
+		return depth;
+	}
+
+	/**
+	 * Builds a catalog of content types whose base types are picked at random
+	 * among the previous ones. Some content types are aliases, some have an
+	 * unknown base type, and some have an alias as their base type.
+	 */
+	private ContentType[] createHierarchy(ContentTypeCatalog catalog, long seed) {
+		Random random = new Random(seed);
+		ContentType[] types = new ContentType[TYPE_COUNT];
+		aliases = new boolean[TYPE_COUNT];
+		for (int i = 0; i < TYPE_COUNT; i++) {
+			String baseTypeId = null;
+			String aliasTargetId = null;
+			int kind = random.nextInt(20);
+			if (i > 0 && kind == 0) {
+				aliasTargetId = "type" + random.nextInt(i);
+				aliases[i] = true;
+			} else if (kind == 1)
+				baseTypeId = "missing" + i;
+			else if (i > 0 && kind > 4)
+				baseTypeId = "type" + random.nextInt(i);
+			types[i] = ContentType.createContentType(catalog, "type" + i, "Type " + i, (byte) 0, NO_SPECS, NO_SPECS, baseTypeId, aliasTargetId, null, null);
+			catalog.addContentType(types[i]);
+		}
+		catalog.organize();
+		return types;
+	}
+
+	private void assertHierarchy(String message, ContentType[] types, ContentType[] others) {
+		for (int i = 0; i < types.length; i++) {
+			assertEquals(message + ".0." + i, getDepth(types[i]), types[i].getDepth());
+			for (int j = 0; j < others.length; j++)
+				if (types[i].isKindOf(others[j]) != isKindOf(types[i], others[j]))
+					fail(message + ".1 " + types[i] + " " + others[j]);
+		}
+	}
+
+	public void testRandomHierarchy() {
+		ContentTypeCatalog older = new ContentTypeCatalog(ContentTypeManager.getInstance(), 0);
+		ContentType[] olderTypes = createHierarchy(older, 1);
+		ContentTypeCatalog catalog = new ContentTypeCatalog(ContentTypeManager.getInstance(), 1);
+		ContentType[] types = createHierarchy(catalog, 1);
+
+		int valid = 0;
+		int aliasCount = 0;
+		int invalid = 0;
+		for (int i = 0; i < types.length; i++) {
+			if (aliases[i])
+				aliasCount++;
+			else if (catalog.getContentType(types[i].getId()) == null)
+				invalid++;
+			else
+				valid++;
+		}
+		assertEquals("1.0", valid, catalog.getAllContentTypes().length);
+		assertTrue("1.1", aliasCount > 0);
+		assertTrue("1.2", invalid > 0);
+
+		assertHierarchy("2", types, types);
+		// content types of another generation are never kinds of each other
+		assertHierarchy("3", types, olderTypes);
+		assertHierarchy("4", olderTypes, types);
+	}
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.content;
+
+import java.io.*;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.content.*;
+import org.eclipse.core.tests.harness.CoreTest;
+
+/**
+ * Tests how the lazy sources stop reading their contents once the budget of
+ * a lookup is exhausted.
+ */
+public class ReadBudgetTest extends CoreTest {
+	private static final int BLOCK_SIZE = 8;
+	private static final int LIMIT = 20;
+	private static final int SIZE = 100;
+
+	public static Test suite() {
+		return new TestSuite(ReadBudgetTest.class);
+	}
+
+	public ReadBudgetTest(String name) {
+		super(name);
+	}
+
+	private byte[] getBytes() {
+		byte[] result = new byte[SIZE];
+		for (int i = 0; i < result.length; i++)
+			result[i] = (byte) i;
+		return result;
+	}
+
+	/**
+	 * Reads the given stream to its end, one byte at a time.
+	 */
+	private byte[] readAll(InputStream contents) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		int next;
+		while ((next = contents.read()) != -1)
+			result.write(next);
+		return result.toByteArray();
+	}
+
+	/**
+	 * Reads the given stream to its end, as many bytes at a time as possible,
+	 * and returns how many bytes were read.
+	 */
+	private int readAllBlocks(InputStream contents) throws IOException {
+		byte[] buffer = new byte[SIZE];
+		int total = 0;
+		int read;
+		while ((read = contents.read(buffer)) != -1)
+			total += read;
+		return total;
+	}
+
+	private void assertTruncated(String message, byte[] read) {
+		assertEquals(message + ".0", LIMIT, read.length);
+		byte[] expected = getBytes();
+		for (int i = 0; i < read.length; i++)
+			assertEquals(message + ".1." + i, expected[i], read[i]);
+	}
+
+	public void testNoLimit() {
+		assertNull("1.0", ReadBudget.create(0, 0));
+		assertNull("1.1", ReadBudget.create(-1, -1));
+	}
+
+	public void testFileInputStream() throws IOException {
+		File file = getRandomLocation().toFile();
+		createFileInFileSystem(file, new ByteArrayInputStream(getBytes()));
+		LazyFileInputStream contents = new LazyFileInputStream(file, BLOCK_SIZE);
+		try {
+			contents.setBudget(ReadBudget.create(LIMIT, 0));
+			assertTruncated("1", readAll(contents));
+			assertEquals("1.2", 0, contents.available());
+			contents.rewind();
+			assertEquals("2.0", LIMIT, readAllBlocks(contents));
+			// without a budget, the whole file is read
+			contents.setBudget(null);
+			contents.rewind();
+			assertEquals("3.0", SIZE, readAll(contents).length);
+		} finally {
+			contents.close();
+			file.delete();
+		}
+	}
+
+	public void testInputStream() throws IOException {
+		LazyInputStream contents = new LazyInputStream(new ByteArrayInputStream(getBytes()), BLOCK_SIZE);
+		contents.setBudget(ReadBudget.create(LIMIT, 0));
+		assertTruncated("1", readAll(contents));
+		assertEquals("1.2", 0, contents.available());
+		// what was read is still there
+		contents.rewind();
+		assertEquals("2.0", LIMIT, readAllBlocks(contents));
+		assertEquals("2.1", 0, contents.skip(1));
+	}
+
+	public void testReader() throws IOException {
+		char[] chars = new char[SIZE];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = (char) ('a' + i % 26);
+		LazyReader contents = new LazyReader(new CharArrayReader(chars), BLOCK_SIZE);
+		contents.setBudget(ReadBudget.create(LIMIT, 0));
+		StringBuffer read = new StringBuffer();
+		int next;
+		while ((next = contents.read()) != -1)
+			read.append((char) next);
+		assertEquals("1.0", new String(chars, 0, LIMIT), read.toString());
+		assertFalse("1.1", contents.ready());
+		contents.rewind();
+		char[] buffer = new char[SIZE];
+		assertEquals("2.0", LIMIT, contents.read(buffer));
+		assertEquals("2.1", -1, contents.read(buffer));
+	}
+
+	public void testTimeLimit() throws IOException, InterruptedException {
+		ReadBudget budget = ReadBudget.create(0, 1);
+		Thread.sleep(50);
+		LazyInputStream contents = new LazyInputStream(new ByteArrayInputStream(getBytes()), BLOCK_SIZE);
+		contents.setBudget(budget);
+		assertEquals("1.0", -1, contents.read());
+		assertEquals("1.1", 0, contents.available());
+	}
+}
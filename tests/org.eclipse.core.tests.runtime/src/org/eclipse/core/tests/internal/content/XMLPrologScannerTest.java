@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.internal.content;
+
+import java.io.*;
+import javax.xml.parsers.ParserConfigurationException;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.content.XMLPrologScanner;
+import org.eclipse.core.internal.content.XMLRootHandler;
+import org.eclipse.core.tests.harness.CoreTest;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Tests the XML prolog scanner finds the same root element, DTD and namespace
+ * as a SAX parser, or gives up and leaves the contents to the parser.
+ */
+public class XMLPrologScannerTest extends CoreTest {
+	// the ways of encoding the contents of a case
+	private static final String UTF_8 = "UTF-8";
+	private static final String UTF_8_BOM = "UTF-8 with BOM";
+	private static final String UTF_16BE_BOM = "UTF-16BE with BOM";
+	private static final String UTF_16LE_BOM = "UTF-16LE with BOM";
+	private static final String UTF_16BE = "UTF-16BE";
+	private static final String UTF_16LE = "UTF-16LE";
+	private static final String ISO_8859_1 = "ISO-8859-1";
+
+	// the columns of the cases
+	private static final int NAME = 0;
+	private static final int ENCODING = 1;
+	private static final int CONTENTS = 2;
+	private static final int ROOT = 3;
+	private static final int DTD = 4;
+	private static final int NAMESPACE = 5;
+
+	private static final String NS = "http://www.example.org/ns";
+	private static final String DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+	private static final String DECLARATION_16 = "<?xml version=\"1.0\" encoding=\"UTF-16\"?>";
+
+	/**
+	 * Contents the scanner handles by itself.
+	 */
+	private static final String[][] FOUND = { //
+	{"declaration", UTF_8, DECLARATION + "<root/>", "root", null, ""}, //
+			{"no declaration", UTF_8, "<root/>", "root", null, ""}, //
+			{"UTF-8 BOM", UTF_8_BOM, DECLARATION + "<root/>", "root", null, ""}, //
+			{"UTF-8 BOM, no declaration", UTF_8_BOM, "<root/>", "root", null, ""}, //
+			{"UTF-16 BOM", UTF_16BE_BOM, DECLARATION_16 + "<root/>", "root", null, ""}, //
+			{"UTF-16LE BOM", UTF_16LE_BOM, DECLARATION_16 + "<root/>", "root", null, ""}, //
+			{"UTF-16BE", UTF_16BE, DECLARATION_16 + "<root/>", "root", null, ""}, //
+			{"UTF-16LE", UTF_16LE, DECLARATION_16 + "<root/>", "root", null, ""}, //
+			{"declared encoding", ISO_8859_1, "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><root a=\"\u00E9t\u00E9\"/>", "root", null, ""}, //
+			{"comments and PIs", UTF_8, DECLARATION + "\n<!-- a comment -->\n<?pi some data?>\n<!-- another - comment --><?pi?>\n<root>", "root", null, ""}, //
+			{"system DTD", UTF_8, "<!DOCTYPE root SYSTEM \"root.dtd\">\n<root/>", "root", "root.dtd", ""}, //
+			{"public DTD", UTF_8, "<!DOCTYPE root PUBLIC \"-//Test//DTD Root//EN\" \"http://www.example.org/root.dtd\"><root/>", "root", "http://www.example.org/root.dtd", ""}, //
+			{"DTD between comments", UTF_16BE_BOM, DECLARATION_16 + "<!-- before --><!DOCTYPE root SYSTEM 'root.dtd' ><?pi data?><!-- after --><root/>", "root", "root.dtd", ""}, //
+			{"default namespace", UTF_8, "<root a='1' xmlns=\"" + NS + "\"/>", "root", null, NS}, //
+			{"prefixed root", UTF_8, "<p:root xmlns:p=\"" + NS + "\"/>", "root", null, NS}, //
+			{"prefixed root, other declarations", UTF_8, "<p:root q:a=\"1\" xmlns=\"http://www.example.org/default\" xmlns:q=\"http://www.example.org/q\"\n xmlns:p=\"" + NS + "\">", "root", null, NS}, //
+			{"prefixed root, UTF-16", UTF_16LE_BOM, DECLARATION_16 + "<!DOCTYPE p:root SYSTEM \"root.dtd\"><p:root xmlns:p=\"" + NS + "\">", "root", "root.dtd", NS}, //
+	};
+
+	/**
+	 * Contents the scanner leaves to a parser.
+	 */
+	private static final String[][] FALLBACK = { //
+	{"internal subset", UTF_8, "<!DOCTYPE root [<!ELEMENT root EMPTY>]><root/>", "root", null, ""}, //
+			{"internal subset and system DTD", UTF_8, "<!DOCTYPE root SYSTEM \"root.dtd\" [<!ENTITY e \"value\">]><root a=\"&e;\"/>", "root", "root.dtd", ""}, //
+			{"entity reference", UTF_8, "<root xmlns=\"" + NS + "/&amp;\"/>", "root", null, NS + "/&"}, //
+			{"non-ASCII name", UTF_8, DECLARATION + "<r\u00F6\u00F6t/>", "r\u00F6\u00F6t", null, ""}, //
+			{"non-ASCII prefixed name", UTF_16BE_BOM, "<p:r\u00F6\u00F6t xmlns:p=\"" + NS + "\"/>", "r\u00F6\u00F6t", null, NS}, //
+			{"attribute on several lines", UTF_8, "<root a=\"1\n2\" xmlns=\"" + NS + "\"/>", "root", null, NS}, //
+			{"XML 1.1", UTF_8, "<?xml version=\"1.1\"?><root/>", "root", null, ""}, //
+	};
+
+	/**
+	 * Contents the scanner leaves to a parser, which fails on them.
+	 */
+	private static final String[][] MALFORMED = { //
+	{"undeclared prefix", UTF_8, "<p:root/>"}, //
+			{"double hyphen in a comment", UTF_8, "<!-- a -- b --><root/>"}, //
+			{"late declaration", UTF_8, " " + DECLARATION + "<root/>"}, //
+			{"unterminated DTD", UTF_8, "<!DOCTYPE root SYSTEM \"root.dtd\""}, //
+			{"duplicate attribute", UTF_8, "<root a=\"1\" a=\"2\"/>"}, //
+			{"undeclared UTF-16", UTF_8, DECLARATION_16 + "<root/>"}, //
+	};
+
+	public static Test suite() {
+		return new TestSuite(XMLPrologScannerTest.class);
+	}
+
+	public XMLPrologScannerTest(String name) {
+		super(name);
+	}
+
+	private byte[] encode(String[] row) throws UnsupportedEncodingException {
+		String contents = row[CONTENTS];
+		if (row[ENCODING] == UTF_8_BOM)
+			return concat(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, contents.getBytes(UTF_8));
+		if (row[ENCODING] == UTF_16BE_BOM)
+			return concat(new byte[] {(byte) 0xFE, (byte) 0xFF}, contents.getBytes(UTF_16BE));
+		if (row[ENCODING] == UTF_16LE_BOM)
+			return concat(new byte[] {(byte) 0xFF, (byte) 0xFE}, contents.getBytes(UTF_16LE));
+		return contents.getBytes(row[ENCODING]);
+	}
+
+	private byte[] concat(byte[] first, byte[] second) {
+		byte[] result = new byte[first.length + second.length];
+		System.arraycopy(first, 0, result, 0, first.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	/**
+	 * Parses the given contents with a SAX parser, and returns the handler, or
+	 * <code>null</code> if the contents could not be parsed.
+	 */
+	private XMLRootHandler parse(String message, byte[] contents) throws IOException {
+		XMLRootHandler handler = new XMLRootHandler(true);
+		try {
+			assertTrue(message, handler.parseContents(new InputSource(new ByteArrayInputStream(contents))));
+		} catch (SAXException e) {
+			return null;
+		} catch (ParserConfigurationException e) {
+			fail(message, e);
+		}
+		return handler;
+	}
+
+	private void assertFound(String message, String[] row, String root, String dtd, String namespace) {
+		assertEquals(message + ".0", row[ROOT], root);
+		assertEquals(message + ".1", row[DTD], dtd);
+		assertEquals(message + ".2", row[NAMESPACE], namespace);
+	}
+
+	public void testFound() throws IOException {
+		for (int i = 0; i < FOUND.length; i++) {
+			String[] row = FOUND[i];
+			String message = "1." + i + " " + row[NAME];
+			byte[] contents = encode(row);
+			XMLPrologScanner scanner = new XMLPrologScanner();
+			assertEquals(message + ".0", XMLPrologScanner.FOUND, scanner.scan(new ByteArrayInputStream(contents)));
+			assertFound(message + ".1", row, scanner.getRootName(), scanner.getDTD(), scanner.getRootNamespace());
+			XMLRootHandler handler = parse(message + ".2", contents);
+			assertNotNull(message + ".3", handler);
+			assertFound(message + ".4", row, handler.getRootName(), handler.getDTD(), handler.getRootNamespace());
+			// the same from characters
+			scanner = new XMLPrologScanner();
+			assertEquals(message + ".5", XMLPrologScanner.FOUND, scanner.scan(new StringReader(row[CONTENTS])));
+			assertFound(message + ".6", row, scanner.getRootName(), scanner.getDTD(), scanner.getRootNamespace());
+		}
+	}
+
+	public void testFallback() throws IOException {
+		for (int i = 0; i < FALLBACK.length; i++) {
+			String[] row = FALLBACK[i];
+			String message = "1." + i + " " + row[NAME];
+			byte[] contents = encode(row);
+			assertEquals(message + ".0", XMLPrologScanner.UNKNOWN, new XMLPrologScanner().scan(new ByteArrayInputStream(contents)));
+			assertEquals(message + ".1", XMLPrologScanner.UNKNOWN, new XMLPrologScanner().scan(new StringReader(row[CONTENTS])));
+			XMLRootHandler handler = parse(message + ".2", contents);
+			assertNotNull(message + ".3", handler);
+			assertFound(message + ".4", row, handler.getRootName(), handler.getDTD(), handler.getRootNamespace());
+		}
+	}
+
+	public void testMalformed() throws IOException {
+		for (int i = 0; i < MALFORMED.length; i++) {
+			String[] row = MALFORMED[i];
+			String message = "1." + i + " " + row[NAME];
+			byte[] contents = encode(row);
+			assertEquals(message + ".0", XMLPrologScanner.UNKNOWN, new XMLPrologScanner().scan(new ByteArrayInputStream(contents)));
+			assertNull(message + ".1", parse(message + ".2", contents));
+		}
+	}
+
+	/**
+	 * Text is not an XML document, unless its encoding may have been guessed wrong.
+	 */
+	public void testNotXML() throws IOException {
+		assertEquals("1.0", XMLPrologScanner.NOT_XML, new XMLPrologScanner().scan(new ByteArrayInputStream((DECLARATION + "text").getBytes(UTF_8))));
+		assertEquals("1.1", XMLPrologScanner.NOT_XML, new XMLPrologScanner().scan(new StringReader("text")));
+		assertEquals("1.2", XMLPrologScanner.UNKNOWN, new XMLPrologScanner().scan(new ByteArrayInputStream("text".getBytes(UTF_8))));
+		assertNull("1.3", parse("1.4", (DECLARATION + "text").getBytes(UTF_8)));
+		assertNull("1.5", parse("1.6", "text".getBytes(UTF_8)));
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -26,6 +26,7 @@ public class AllTests extends TestCase {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
 		suite.addTest(CoreExceptionTest.suite());
 		suite.addTest(IAdapterManagerTest.suite());
+		suite.addTest(IContentTypeManagerTest.suite());
 		suite.addTest(IAdapterManagerServiceTest.suite());
 		suite.addTest(AdapterManagerDynamicTest.suite());
 		suite.addTest(OperationCanceledExceptionTest.suite());
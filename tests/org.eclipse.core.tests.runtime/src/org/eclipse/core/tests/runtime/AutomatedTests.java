@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -40,6 +40,7 @@ public class AutomatedTests extends TestCase {
 		suite.addTest(org.eclipse.core.tests.runtime.jobs.AllTests.suite());
 		suite.addTest(org.eclipse.core.tests.runtime.model.AllTests.suite());
 		suite.addTest(org.eclipse.core.tests.internal.preferences.AllTests.suite());
+		suite.addTest(org.eclipse.core.tests.internal.content.AllTests.suite());
 
 		// Moved to the top: bug 124867
 		//suite.addTest(org.eclipse.core.tests.internal.runtime.AllTests.suite());
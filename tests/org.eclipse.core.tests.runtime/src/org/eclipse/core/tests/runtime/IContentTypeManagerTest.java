@@ -0,0 +1,870 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime;
+
+import java.io.*;
+import java.util.*;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.content.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.content.*;
+import org.eclipse.core.runtime.preferences.*;
+import org.eclipse.core.tests.runtime.perf.SyntheticContentTypes;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
+import org.osgi.service.prefs.BackingStoreException;
+import org.osgi.service.prefs.Preferences;
+
+/**
+ * Tests the content type manager API working on files and on batches of
+ * files, batching changes to content type settings, how matchers use
+ * selection policies, and rebuilding the catalog as content types change.
+ */
+public class IContentTypeManagerTest extends RuntimeTest {
+	private static final String TEST_DATA_ID = "org.eclipse.core.tests.runtime.contenttype.matcher";
+	private static final String TEXT_CONTENTS = "Some text contents";
+	private static final String CT_XML = "org.eclipse.core.runtime.xml";
+	private static final String XML_CONTENTS = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><root/>";
+
+	/**
+	 * Remembers how many candidates it was given, and selects all of them.
+	 */
+	static class BestMatchPolicy implements IContentTypeManager.IBestMatchSelectionPolicy {
+		int candidates = -1;
+
+		public IContentType[] select(IContentType[] types, boolean fileName, boolean content) {
+			candidates = types.length;
+			return types;
+		}
+	}
+
+	/**
+	 * Counts how many times it is asked to select content types, and selects
+	 * all candidates.
+	 */
+	static class CountingPolicy implements IContentTypeManager.ISelectionPolicy {
+		int calls;
+
+		public IContentType[] select(IContentType[] candidates, boolean fileName, boolean content) {
+			calls++;
+			return candidates;
+		}
+	}
+
+	static class CacheableCountingPolicy extends CountingPolicy implements IContentTypeManager.ICacheableSelectionPolicy {
+		// nothing to add
+	}
+
+	/**
+	 * Remembers the content types it is told have changed, and whether their
+	 * new file extensions were already saved when they were.
+	 */
+	static class RecordingListener implements IContentTypeManager.IContentTypeChangeListener {
+		final List changed = new ArrayList();
+		private final String extension;
+		boolean saved = true;
+
+		RecordingListener(String extension) {
+			this.extension = extension;
+		}
+
+		public void contentTypeChanged(IContentTypeManager.ContentTypeChangeEvent event) {
+			String id = event.getContentType().getId();
+			changed.add(id);
+			saved &= getSavedFileExtensions(id).indexOf(extension) >= 0;
+		}
+	}
+
+	/**
+	 * Remembers the files it is told about, and stops matching once it has
+	 * accepted a given number of them.
+	 */
+	static class RecordingRequestor implements IContentTypeMatcher.IContentTypeRequestor {
+		final List accepted = new ArrayList();
+		final List contentTypes = new ArrayList();
+		final List failed = new ArrayList();
+		final List exceptions = new ArrayList();
+		private int remaining;
+
+		RecordingRequestor(int limit) {
+			this.remaining = limit;
+		}
+
+		public boolean acceptContentTypes(File file, IContentType[] types) {
+			accepted.add(file);
+			contentTypes.add(types);
+			return --remaining > 0;
+		}
+
+		public boolean acceptException(File file, IOException exception) {
+			failed.add(file);
+			exceptions.add(exception);
+			return --remaining > 0;
+		}
+	}
+
+	// the bundles installed by the test, in installation order
+	private final List installed = new ArrayList();
+	private File root;
+
+	public static Test suite() {
+		return new TestSuite(IContentTypeManagerTest.class);
+	}
+
+	public IContentTypeManagerTest(String name) {
+		super(name);
+	}
+
+	private File createFile(String name, String contents) {
+		File file = new File(root, name);
+		try {
+			createFileInFileSystem(file, new ByteArrayInputStream(contents.getBytes("ISO-8859-1")));
+		} catch (IOException e) {
+			fail("0.0", e);
+		}
+		return file;
+	}
+
+	private String[] getIds(IContentType[] types) {
+		String[] result = new String[types.length];
+		for (int i = 0; i < types.length; i++)
+			result[i] = types[i].getId();
+		return result;
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = getRandomLocation().toFile();
+		root.mkdirs();
+	}
+
+	/**
+	 * Contributes a new content type, which makes the content type manager
+	 * build a new catalog.
+	 */
+	private void installContentType() {
+		installContentTypes(null);
+	}
+
+	/**
+	 * Contributes the given content types, or a synthetic one if none are given.
+	 */
+	private void installContentTypes(String contentTypes) {
+		installContentTypes(TEST_DATA_ID, contentTypes);
+	}
+
+	/**
+	 * Contributes the given content types from a plug-in with the given id, or
+	 * a synthetic one if none are given.
+	 */
+	private Bundle installContentTypes(String pluginId, String contentTypes) {
+		Bundle bundle = null;
+		try {
+			IPath location = getTempDir().append(pluginId);
+			if (contentTypes == null)
+				bundle = new SyntheticContentTypes(pluginId, 1).install(location, PI_RUNTIME_TESTS);
+			else
+				bundle = SyntheticContentTypes.installPlugin(location, pluginId, PI_RUNTIME_TESTS, contentTypes);
+			installed.add(bundle);
+		} catch (IOException e) {
+			fail("0.1", e);
+		} catch (BundleException e) {
+			fail("0.2", e);
+		}
+		return bundle;
+	}
+
+	private void uninstall(Bundle bundle) {
+		installed.remove(bundle);
+		try {
+			SyntheticContentTypes.uninstallPlugin(bundle);
+		} catch (BundleException e) {
+			fail("0.3", e);
+		}
+		ensureDoesNotExistInFileSystem(getTempDir().append(bundle.getSymbolicName()).toFile());
+	}
+
+	protected void tearDown() throws Exception {
+		while (!installed.isEmpty())
+			uninstall((Bundle) installed.get(installed.size() - 1));
+		ensureDoesNotExistInFileSystem(root);
+		super.tearDown();
+	}
+
+	/**
+	 * Returns the file extensions of the given content type as saved in the
+	 * backing store of the preferences, rather than as known in memory.
+	 */
+	static String getSavedFileExtensions(String contentTypeId) {
+		IPath location = ContentTypeManager.getInstance().getContext().getLocation();
+		File file = location.append(".settings").append(IContentConstants.RUNTIME_NAME + ".prefs").toFile();
+		Properties saved = new Properties();
+		if (file.exists()) {
+			InputStream input = null;
+			try {
+				input = new FileInputStream(file);
+				saved.load(input);
+			} catch (IOException e) {
+				fail("0.4", e);
+			} finally {
+				if (input != null)
+					try {
+						input.close();
+					} catch (IOException e) {
+						// ignore
+					}
+			}
+		}
+		String key = "content-types" + IPath.SEPARATOR + contentTypeId + IPath.SEPARATOR + ContentType.PREF_FILE_EXTENSIONS;
+		return saved.getProperty(key, "");
+	}
+
+	private void removeFileSpecs(IContentType[] types, String extension) {
+		for (int i = 0; i < types.length; i++)
+			try {
+				types[i].removeFileSpec(extension, IContentType.FILE_EXTENSION_SPEC);
+			} catch (CoreException e) {
+				fail("9." + i, e);
+			}
+	}
+
+	/**
+	 * Listeners are notified once for each content type changed in a batch,
+	 * once the batch is over and its settings are saved, even if it failed.
+	 */
+	public void testBatchSettingsChanges() {
+		IContentTypeManager manager = Platform.getContentTypeManager();
+		final IContentType text = manager.getContentType(IContentTypeManager.CT_TEXT);
+		final IContentType xml = manager.getContentType(CT_XML);
+		final String extension = "batch" + System.currentTimeMillis();
+		final RecordingListener listener = new RecordingListener(extension);
+		manager.addContentTypeChangeListener(listener);
+		try {
+			manager.batchSettingsChanges(new IContentTypeManager.ISettingsRunnable() {
+				public void run() throws CoreException {
+					text.addFileSpec(extension, IContentType.FILE_EXTENSION_SPEC);
+					xml.addFileSpec(extension, IContentType.FILE_EXTENSION_SPEC);
+					text.addFileSpec(extension + "2", IContentType.FILE_EXTENSION_SPEC);
+					assertTrue("1.0", listener.changed.isEmpty());
+					// not saved until the batch is over
+					assertEquals("1.3", -1, getSavedFileExtensions(IContentTypeManager.CT_TEXT).indexOf(extension));
+					assertEquals("1.4", -1, getSavedFileExtensions(CT_XML).indexOf(extension));
+					throw new CoreException(new Status(IStatus.ERROR, PI_RUNTIME_TESTS, "Batch failed"));
+				}
+			});
+			fail("1.1");
+		} catch (CoreException e) {
+			assertEquals("1.2", "Batch failed", e.getStatus().getMessage());
+		} finally {
+			manager.removeContentTypeChangeListener(listener);
+			removeFileSpecs(new IContentType[] {text, xml}, extension);
+			removeFileSpecs(new IContentType[] {text}, extension + "2");
+		}
+		assertEquals("2.0", new Object[] {IContentTypeManager.CT_TEXT, CT_XML}, listener.changed.toArray(), false);
+		assertTrue("2.1", listener.saved);
+	}
+
+	/**
+	 * A batch started while another one runs is part of the outer batch.
+	 */
+	public void testBatchSettingsChangesNested() {
+		final IContentTypeManager manager = Platform.getContentTypeManager();
+		final IContentType text = manager.getContentType(IContentTypeManager.CT_TEXT);
+		final String extension = "batch" + System.currentTimeMillis();
+		final RecordingListener listener = new RecordingListener(extension);
+		manager.addContentTypeChangeListener(listener);
+		try {
+			manager.batchSettingsChanges(new IContentTypeManager.ISettingsRunnable() {
+				public void run() throws CoreException {
+					manager.batchSettingsChanges(new IContentTypeManager.ISettingsRunnable() {
+						public void run() throws CoreException {
+							text.addFileSpec(extension, IContentType.FILE_EXTENSION_SPEC);
+						}
+					});
+					assertTrue("1.0", listener.changed.isEmpty());
+					assertEquals("1.2", -1, getSavedFileExtensions(IContentTypeManager.CT_TEXT).indexOf(extension));
+					text.addFileSpec(extension + "2", IContentType.FILE_EXTENSION_SPEC);
+				}
+			});
+		} catch (CoreException e) {
+			fail("1.1", e);
+		} finally {
+			manager.removeContentTypeChangeListener(listener);
+			removeFileSpecs(new IContentType[] {text}, extension);
+			removeFileSpecs(new IContentType[] {text}, extension + "2");
+		}
+		assertEquals("2.0", new Object[] {IContentTypeManager.CT_TEXT}, listener.changed.toArray());
+		assertTrue("2.1", listener.saved);
+	}
+
+	private void assertBestMatch(String message, IContentTypeMatcher matcher, BestMatchPolicy policy, byte[] contents, String fileName, String expected) {
+		try {
+			IContentType[] all = Platform.getContentTypeManager().findContentTypesFor(new ByteArrayInputStream(contents), fileName);
+			assertTrue(message + ".0", all.length > 0);
+			assertEquals(message + ".1", TEST_DATA_ID + '.' + expected, all[0].getId());
+			IContentType[] best = matcher.findContentTypesFor(new ByteArrayInputStream(contents), fileName);
+			assertEquals(message + ".2", new String[] {all[0].getId()}, getIds(best));
+			assertEquals(message + ".3", 1, policy.candidates);
+			assertEquals(message + ".4", all[0].getId(), matcher.getDescriptionFor(new ByteArrayInputStream(contents), fileName, IContentDescription.ALL).getContentType().getId());
+		} catch (IOException e) {
+			fail(message + ".5", e);
+		}
+	}
+
+	/**
+	 * A matcher with a best match policy finds the same best match as a full
+	 * evaluation, but only that one. Other matchers find all content types.
+	 */
+	public void testBestMatchSelectionPolicy() {
+		String describer = "describer=\"" + BinarySignatureDescriber.class.getName() + ":";
+		StringBuffer contentTypes = new StringBuffer();
+		contentTypes.append("<content-type id=\"base\" name=\"Base\" file-extensions=\"bestmatch\" " + describer + "ca fe\"/>");
+		contentTypes.append("<content-type id=\"child\" name=\"Child\" base-type=\"" + TEST_DATA_ID + ".base\" file-extensions=\"bestmatch\" " + describer + "ca fe\"/>");
+		contentTypes.append("<content-type id=\"high\" name=\"High\" priority=\"high\" file-extensions=\"bestmatch\" " + describer + "ca fe\"/>");
+		contentTypes.append("<content-type id=\"low\" name=\"Low\" priority=\"low\" file-extensions=\"bestmatch\" " + describer + "ca fe\"/>");
+		contentTypes.append("<content-type id=\"byname\" name=\"By Name\" priority=\"low\" file-names=\"file.bestmatch\" " + describer + "ca fe\"/>");
+		contentTypes.append("<content-type id=\"other\" name=\"Other\" file-extensions=\"bestmatch\" " + describer + "00 01\"/>");
+		contentTypes.append("<content-type id=\"plain\" name=\"Plain\" file-extensions=\"bestmatch\"/>");
+		installContentTypes(contentTypes.toString());
+
+		byte[] cafe = new byte[] {(byte) 0xCA, (byte) 0xFE, 0, 0};
+		try {
+			// all valid and indeterminate content types are found by default
+			assertEquals("1.0", 6, Platform.getContentTypeManager().findContentTypesFor(new ByteArrayInputStream(cafe), "file.bestmatch").length);
+		} catch (IOException e) {
+			fail("1.1", e);
+		}
+		BestMatchPolicy policy = new BestMatchPolicy();
+		IContentTypeMatcher matcher = Platform.getContentTypeManager().getMatcher(policy, new InstanceScope());
+		// file names come before file extensions
+		assertBestMatch("2", matcher, policy, cafe, "file.bestmatch", "byname");
+		// then the most specific content types, then the highest priorities
+		assertBestMatch("3", matcher, policy, cafe, "other.bestmatch", "child");
+		assertBestMatch("4", matcher, policy, new byte[] {0, 1, 0, 0}, "other.bestmatch", "other");
+		// without a valid content type, the indeterminate ones are found
+		try {
+			IContentType[] found = matcher.findContentTypesFor(new ByteArrayInputStream(new byte[] {(byte) 0xFF, (byte) 0xFF}), "other.bestmatch");
+			assertEquals("5.0", new String[] {TEST_DATA_ID + ".plain"}, getIds(found));
+		} catch (IOException e) {
+			fail("5.1", e);
+		}
+		// file names alone are matched as usual
+		assertEquals("6.0", 6, matcher.findContentTypesFor("other.bestmatch").length);
+	}
+
+	/**
+	 * Asserts the current catalog, built incrementally, has the same content
+	 * types, file specs, base types and describers as a catalog built from
+	 * scratch.
+	 */
+	private void assertSameCatalog(String message) {
+		ContentTypeManager manager = ContentTypeManager.getInstance();
+		ContentTypeCatalog full = new ContentTypeCatalog(manager, -1);
+		new ContentTypeBuilder(full).buildCatalog();
+		full.organize();
+		assertSameCatalog(message, full, manager.getCatalog());
+	}
+
+	/**
+	 * Asserts the given catalogs have the same content types, with the same
+	 * names, file specs, base types, describers and default charsets.
+	 */
+	private void assertSameCatalog(String message, ContentTypeCatalog expectedCatalog, ContentTypeCatalog actualCatalog) {
+		IContentType[] expected = expectedCatalog.getAllContentTypes();
+		assertEquals(message + ".0", getIds(expected), getIds(actualCatalog.getAllContentTypes()), false);
+		for (int i = 0; i < expected.length; i++) {
+			ContentType expectedType = (ContentType) expected[i];
+			ContentType actualType = actualCatalog.getContentType(expectedType.getId());
+			String id = expectedType.getId();
+			assertNotNull(message + ".1 " + id, actualType);
+			assertEquals(message + ".2 " + id, expectedType.getFileSpecs(IContentType.FILE_NAME_SPEC), actualType.getFileSpecs(IContentType.FILE_NAME_SPEC), false);
+			assertEquals(message + ".3 " + id, expectedType.getFileSpecs(IContentType.FILE_EXTENSION_SPEC), actualType.getFileSpecs(IContentType.FILE_EXTENSION_SPEC), false);
+			IContentType expectedBase = expectedType.getBaseType();
+			IContentType actualBase = actualType.getBaseType();
+			assertEquals(message + ".4 " + id, expectedBase == null ? null : expectedBase.getId(), actualBase == null ? null : actualBase.getId());
+			IContentDescriber expectedDescriber = expectedType.getDescriber();
+			IContentDescriber actualDescriber = actualType.getDescriber();
+			assertEquals(message + ".5 " + id, expectedDescriber == null ? null : expectedDescriber.getClass(), actualDescriber == null ? null : actualDescriber.getClass());
+			assertEquals(message + ".6 " + id, expectedType.getName(), actualType.getName());
+			assertEquals(message + ".7 " + id, expectedType.getDefaultCharset(), actualType.getDefaultCharset());
+		}
+	}
+
+	/**
+	 * Catalogs built from the previous one when plug-ins come and go, or when
+	 * preferences are imported, are the same as catalogs built from scratch.
+	 */
+	public void testBuildCatalogIncrementally() {
+		String describer = "describer=\"" + BinarySignatureDescriber.class.getName() + ":";
+		String base = TEST_DATA_ID + ".base";
+		String later = TEST_DATA_ID + ".later.type";
+		Bundle first = installContentTypes(TEST_DATA_ID, "<content-type id=\"base\" name=\"Base\" file-extensions=\"incremental\" " + describer + "ca fe\"/>");
+		assertSameCatalog("1");
+		assertNotNull("1.6", Platform.getContentTypeManager().getContentType(base));
+
+		// a content type, file associations to an existing content type and to a missing one
+		StringBuffer contentTypes = new StringBuffer();
+		contentTypes.append("<content-type id=\"child\" name=\"Child\" base-type=\"" + base + "\" file-names=\"file.incremental\"/>");
+		contentTypes.append("<file-association content-type=\"" + base + "\" file-names=\"base.incremental\"/>");
+		contentTypes.append("<file-association content-type=\"" + IContentTypeManager.CT_TEXT + "\" file-extensions=\"incrementaltext\"/>");
+		contentTypes.append("<file-association content-type=\"" + later + "\" file-extensions=\"incrementallater\"/>");
+		Bundle second = installContentTypes(TEST_DATA_ID + ".associations", contentTypes.toString());
+		assertSameCatalog("2");
+		IContentType child = Platform.getContentTypeManager().getContentType(TEST_DATA_ID + ".associations.child");
+		assertNotNull("2.6", child);
+		assertEquals("2.7", base, child.getBaseType().getId());
+		assertTrue("2.8", Platform.getContentTypeManager().getContentType(base).isAssociatedWith("base.incremental"));
+		assertTrue("2.9", Platform.getContentTypeManager().getContentType(IContentTypeManager.CT_TEXT).isAssociatedWith("file.incrementaltext"));
+
+		// the content type of an earlier file association
+		Bundle third = installContentTypes(TEST_DATA_ID + ".later", "<content-type id=\"type\" name=\"Later\" " + describer + "00 01\"/>");
+		assertSameCatalog("3");
+		assertTrue("3.6", Platform.getContentTypeManager().getContentType(later).isAssociatedWith("file.incrementallater"));
+
+		// file associations imported from preferences
+		IPreferencesService service = Platform.getPreferencesService();
+		Preferences node = ContentTypeManager.getInstance().getContext().getNode(ContentTypeManager.CONTENT_TYPE_PREF_NODE).node(later);
+		try {
+			node.put(ContentType.PREF_FILE_EXTENSIONS, "incrementalimported");
+			ByteArrayOutputStream exported = new ByteArrayOutputStream();
+			assertTrue("4.0", service.exportPreferences((IEclipsePreferences) node, exported, null).isOK());
+			node.removeNode();
+			service.importPreferences(new ByteArrayInputStream(exported.toByteArray()));
+			assertSameCatalog("4");
+			assertTrue("4.6", Platform.getContentTypeManager().getContentType(later).isAssociatedWith("file.incrementalimported"));
+		} catch (CoreException e) {
+			fail("4.7", e);
+		} catch (BackingStoreException e) {
+			fail("4.8", e);
+		} finally {
+			try {
+				ContentTypeManager.getInstance().getContext().getNode(ContentTypeManager.CONTENT_TYPE_PREF_NODE).node(later).removeNode();
+			} catch (BackingStoreException e) {
+				fail("4.9", e);
+			}
+		}
+
+		// content types and file associations going away
+		uninstall(second);
+		assertSameCatalog("5");
+		assertTrue("5.6", !Platform.getContentTypeManager().getContentType(later).isAssociatedWith("file.incrementallater"));
+		assertTrue("5.7", !Platform.getContentTypeManager().getContentType(IContentTypeManager.CT_TEXT).isAssociatedWith("file.incrementaltext"));
+		uninstall(first);
+		assertSameCatalog("6");
+		assertNull("6.6", Platform.getContentTypeManager().getContentType(base));
+		uninstall(third);
+		assertSameCatalog("7");
+	}
+
+	/**
+	 * The content types saved in the catalog cache are loaded as they were, and
+	 * their describers are created from the registry once needed. Contributing
+	 * content types makes the cache stale.
+	 */
+	public void testCatalogCache() {
+		ContentTypeManager manager = ContentTypeManager.getInstance();
+		CatalogCache cache = new CatalogCache(new File(root, "catalog.cache"));
+		ContentTypeCatalog loaded = new ContentTypeCatalog(manager, -1);
+		assertTrue("1.0", !cache.load(loaded));
+		ContentTypeCatalog current = manager.getCatalog();
+		cache.save(current);
+		assertTrue("1.1", cache.load(loaded));
+		loaded.organize();
+		assertSameCatalog("2", current, loaded);
+
+		installContentType();
+		assertTrue("3.0", !cache.load(new ContentTypeCatalog(manager, -1)));
+		cache.save(manager.getCatalog());
+		loaded = new ContentTypeCatalog(manager, -1);
+		assertTrue("3.1", cache.load(loaded));
+		loaded.organize();
+		assertSameCatalog("4", manager.getCatalog(), loaded);
+	}
+
+	/**
+	 * A matcher does not ask a cacheable policy again to select among the same
+	 * candidates, but asks other policies every time.
+	 */
+	public void testCacheableSelectionPolicy() {
+		IContentTypeManager manager = Platform.getContentTypeManager();
+		CountingPolicy policy = new CacheableCountingPolicy();
+		IContentTypeMatcher matcher = manager.getMatcher(policy, new InstanceScope());
+		IContentType[] selected = matcher.findContentTypesFor("file.txt");
+		assertTrue("1.0", selected.length > 0);
+		assertEquals("1.1", 1, policy.calls);
+		assertEquals("1.2", getIds(selected), getIds(matcher.findContentTypesFor("file.txt")));
+		// other file names with the same candidates share the selection
+		assertEquals("1.3", getIds(selected), getIds(matcher.findContentTypesFor("other.txt")));
+		assertEquals("1.4", 1, policy.calls);
+		// matching contents is another kind of selection
+		try {
+			matcher.findContentTypesFor(getContents(TEXT_CONTENTS), "file.txt");
+			assertEquals("2.0", 2, policy.calls);
+			matcher.findContentTypesFor(getContents(TEXT_CONTENTS), "file.txt");
+			assertEquals("2.1", 2, policy.calls);
+		} catch (IOException e) {
+			fail("2.2", e);
+		}
+
+		policy = new CountingPolicy();
+		matcher = manager.getMatcher(policy, new InstanceScope());
+		matcher.findContentTypesFor("file.txt");
+		matcher.findContentTypesFor("file.txt");
+		assertEquals("3.0", 2, policy.calls);
+	}
+
+	/**
+	 * The selections a cacheable policy made are forgotten when the content
+	 * types change.
+	 */
+	public void testCacheableSelectionPolicyCatalogChange() {
+		CountingPolicy policy = new CacheableCountingPolicy();
+		IContentTypeMatcher matcher = Platform.getContentTypeManager().getMatcher(policy, new InstanceScope());
+		IContentType[] selected = matcher.findContentTypesFor("file.txt");
+		matcher.findContentTypesFor("file.txt");
+		assertEquals("1.0", 1, policy.calls);
+		installContentType();
+		assertEquals("2.0", getIds(selected), getIds(matcher.findContentTypesFor("file.txt")));
+		assertEquals("2.1", 2, policy.calls);
+		matcher.findContentTypesFor("file.txt");
+		assertEquals("2.2", 2, policy.calls);
+	}
+
+	private DescriberStats getStats(String contentTypeId) {
+		DescriberStats[] all = DescriberStats.getAllStats();
+		for (int i = 0; i < all.length; i++)
+			if (all[i].getContentTypeId().equals(contentTypeId))
+				return all[i];
+		return null;
+	}
+
+	/**
+	 * Describer statistics count the calls made to find content types apart from
+	 * the calls made to describe contents, and remember why describers were disabled.
+	 */
+	public void testDescriberStats() {
+		String describer = "describer=\"" + BinarySignatureDescriber.class.getName() + ":";
+		StringBuffer contentTypes = new StringBuffer();
+		contentTypes.append("<content-type id=\"stats\" name=\"Stats\" file-extensions=\"stats\" " + describer + "ca fe\"/>");
+		contentTypes.append("<content-type id=\"broken\" name=\"Broken\" file-extensions=\"broken\" describer=\"org.eclipse.core.tests.runtime.NoSuchDescriber\"/>");
+		installContentTypes(contentTypes.toString());
+		IContentTypeManager manager = Platform.getContentTypeManager();
+		IContentType stats = manager.getContentType(TEST_DATA_ID + ".stats");
+		byte[] valid = new byte[] {(byte) 0xCA, (byte) 0xFE, 0, 0};
+		byte[] invalid = new byte[] {0, 0, 0, 0};
+		boolean wasEnabled = DescriberStats.isEnabled();
+		DescriberStats.setEnabled(true);
+		DescriberStats.clear();
+		try {
+			assertEquals("1.0", new String[] {stats.getId()}, getIds(manager.findContentTypesFor(new ByteArrayInputStream(valid), "file.stats")));
+			DescriberStats collected = getStats(stats.getId());
+			assertNotNull("1.1", collected);
+			assertEquals("1.2", BinarySignatureDescriber.class.getName(), collected.getDescriberClass());
+			assertEquals("1.3", 1, collected.getCallCount());
+			assertEquals("1.4", 1, collected.getValidCount());
+			assertEquals("1.5", 0, collected.getDescriptionCount());
+			assertTrue("1.6", collected.getMaxRead() >= 2);
+
+			// describing the contents is not finding their content type
+			assertNotNull("2.0", stats.getDescriptionFor(new ByteArrayInputStream(valid), IContentDescription.ALL));
+			assertEquals("2.1", 1, collected.getCallCount());
+			assertEquals("2.2", 1, collected.getValidCount());
+			assertEquals("2.3", 1, collected.getDescriptionCount());
+			assertNotNull("2.4", manager.getDescriptionFor(new ByteArrayInputStream(valid), "file.stats", IContentDescription.ALL));
+			assertEquals("2.5", 1, collected.getCallCount());
+			assertEquals("2.6", 1, collected.getValidCount());
+			assertEquals("2.7", 2, collected.getDescriptionCount());
+
+			assertEquals("3.0", 0, manager.findContentTypesFor(new ByteArrayInputStream(invalid), "file.stats").length);
+			assertEquals("3.1", 2, collected.getCallCount());
+			assertEquals("3.2", 1, collected.getInvalidCount());
+			assertEquals("3.3", 0, collected.getIndeterminateCount());
+			assertEquals("3.4", 2, collected.getDescriptionCount());
+			assertNull("3.5", collected.getInvalidationReason());
+
+			// a describer that cannot be created is disabled
+			manager.findContentTypesFor(new ByteArrayInputStream(valid), "file.broken");
+			collected = getStats(TEST_DATA_ID + ".broken");
+			assertNotNull("4.0", collected);
+			assertNotNull("4.1", collected.getInvalidationReason());
+
+			DescriberStats.clear();
+			assertNull("5.0", getStats(stats.getId()));
+		} catch (IOException e) {
+			fail("6.0", e);
+		} finally {
+			DescriberStats.setEnabled(wasEnabled);
+			DescriberStats.clear();
+		}
+	}
+
+	/**
+	 * Descriptions of files are cached until the files or the content types change.
+	 */
+	public void testDescriptionCache() {
+		IContentTypeManager manager = Platform.getContentTypeManager();
+		IContentType text = manager.getContentType(IContentTypeManager.CT_TEXT);
+		File file = createFile("file.xml", XML_CONTENTS);
+		int previous = DescriptionCache.setMaxSize(10);
+		try {
+			IContentDescription description = manager.getDescriptionFor(file, IContentDescription.ALL);
+			assertNotNull("1.0", description);
+			assertEquals("1.1", "ISO-8859-1", description.getCharset());
+			assertSame("1.2", description, manager.getDescriptionFor(file, IContentDescription.ALL));
+
+			// the length changed
+			long lastModified = file.lastModified();
+			file = createFile("file.xml", "<?xml version=\"1.0\" encoding=\"US-ASCII\"?><root/>");
+			assertTrue("2.0", file.setLastModified(lastModified));
+			IContentDescription changed = manager.getDescriptionFor(file, IContentDescription.ALL);
+			assertNotSame("2.1", description, changed);
+			assertEquals("2.2", "US-ASCII", changed.getCharset());
+			description = changed;
+			assertSame("2.3", description, manager.getDescriptionFor(file, IContentDescription.ALL));
+
+			// the modification time changed
+			assertTrue("3.0", file.setLastModified(lastModified + 10000));
+			changed = manager.getDescriptionFor(file, IContentDescription.ALL);
+			assertNotSame("3.1", description, changed);
+			description = changed;
+			assertSame("3.2", description, manager.getDescriptionFor(file, IContentDescription.ALL));
+
+			// file associations changed
+			text.addFileSpec("descriptioncache", IContentType.FILE_EXTENSION_SPEC);
+			changed = manager.getDescriptionFor(file, IContentDescription.ALL);
+			assertNotSame("4.0", description, changed);
+			description = changed;
+			assertSame("4.1", description, manager.getDescriptionFor(file, IContentDescription.ALL));
+			text.removeFileSpec("descriptioncache", IContentType.FILE_EXTENSION_SPEC);
+			changed = manager.getDescriptionFor(file, IContentDescription.ALL);
+			assertNotSame("4.2", description, changed);
+			description = changed;
+
+			// the catalog was built again
+			installContentType();
+			changed = manager.getDescriptionFor(file, IContentDescription.ALL);
+			assertNotSame("5.0", description, changed);
+			description = changed;
+			assertSame("5.1", description, manager.getDescriptionFor(file, IContentDescription.ALL));
+
+			// not cached any more
+			DescriptionCache.setMaxSize(0);
+			assertNotSame("6.0", description, manager.getDescriptionFor(file, IContentDescription.ALL));
+		} catch (IOException e) {
+			fail("7.0", e);
+		} catch (CoreException e) {
+			fail("7.1", e);
+		} finally {
+			DescriptionCache.setMaxSize(previous);
+		}
+	}
+
+	/**
+	 * Asserts content types are found in the same order, and described the
+	 * same, whether describers are evaluated in parallel or not.
+	 */
+	private void assertSameInParallel(String message, byte[] contents, String fileName, boolean reader) {
+		IContentTypeManager manager = Platform.getContentTypeManager();
+		String[][] found = new String[2][];
+		String[] described = new String[2];
+		String[] charsets = new String[2];
+		int previous = DescriberExecutor.setThreadCount(0);
+		try {
+			for (int i = 0; i < 2; i++) {
+				// sequentially first, then in parallel
+				DescriberExecutor.setThreadCount(i * 2);
+				found[i] = getIds(manager.findContentTypesFor(new ByteArrayInputStream(contents), fileName));
+				IContentDescription description;
+				if (reader)
+					description = manager.getDescriptionFor(new InputStreamReader(new ByteArrayInputStream(contents), "UTF-8"), fileName, IContentDescription.ALL);
+				else
+					description = manager.getDescriptionFor(new ByteArrayInputStream(contents), fileName, IContentDescription.ALL);
+				described[i] = description == null ? null : description.getContentType().getId();
+				charsets[i] = description == null ? null : description.getCharset();
+			}
+		} catch (IOException e) {
+			fail(message + ".0", e);
+		} finally {
+			DescriberExecutor.setThreadCount(previous);
+		}
+		assertTrue(message + ".1", found[0].length > 1);
+		assertEquals(message + ".2", found[0], found[1]);
+		assertEquals(message + ".3", described[0], described[1]);
+		assertEquals(message + ".4", charsets[0], charsets[1]);
+	}
+
+	/**
+	 * Evaluating describers in parallel finds the same content types, in the
+	 * same order, as evaluating them one after the other.
+	 */
+	public void testDescribeInParallel() {
+		String describer = "describer=\"" + BinarySignatureDescriber.class.getName() + ":";
+		StringBuffer contentTypes = new StringBuffer();
+		contentTypes.append("<content-type id=\"base\" name=\"Base\" file-extensions=\"parallel\" " + describer + "ca fe\"/>");
+		contentTypes.append("<content-type id=\"child\" name=\"Child\" base-type=\"" + TEST_DATA_ID + ".base\" file-extensions=\"parallel\" " + describer + "ca fe\"/>");
+		contentTypes.append("<content-type id=\"high\" name=\"High\" priority=\"high\" file-extensions=\"parallel\" " + describer + "ca fe ba be\"/>");
+		contentTypes.append("<content-type id=\"low\" name=\"Low\" priority=\"low\" file-extensions=\"parallel\" " + describer + "ca fe\"/>");
+		contentTypes.append("<content-type id=\"other\" name=\"Other\" file-extensions=\"parallel\" " + describer + "00 01\"/>");
+		contentTypes.append("<content-type id=\"plain\" name=\"Plain\" file-extensions=\"parallel\"/>");
+		contentTypes.append("<content-type id=\"text\" name=\"Text\" base-type=\"" + IContentTypeManager.CT_TEXT + "\" file-extensions=\"paralleltext\"/>");
+		contentTypes.append("<content-type id=\"hightext\" name=\"High Text\" priority=\"high\" base-type=\"" + IContentTypeManager.CT_TEXT + "\" file-extensions=\"paralleltext\"/>");
+		installContentTypes(contentTypes.toString());
+
+		try {
+			assertSameInParallel("1", XML_CONTENTS.getBytes("UTF-8"), "file.xml", false);
+			assertSameInParallel("2", new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE}, "file.parallel", false);
+			assertSameInParallel("3", new byte[] {(byte) 0xCA, (byte) 0xFE, 0, 0}, "file.parallel", false);
+			assertSameInParallel("4", new byte[] {0, 1}, "file.parallel", false);
+			assertSameInParallel("5", TEXT_CONTENTS.getBytes("UTF-8"), "file.paralleltext", false);
+			byte[] text = TEXT_CONTENTS.getBytes("UTF-8");
+			byte[] withBom = new byte[text.length + 3];
+			withBom[0] = (byte) 0xEF;
+			withBom[1] = (byte) 0xBB;
+			withBom[2] = (byte) 0xBF;
+			System.arraycopy(text, 0, withBom, 3, text.length);
+			assertSameInParallel("6", withBom, "file.paralleltext", false);
+			// from characters
+			assertSameInParallel("7", XML_CONTENTS.getBytes("UTF-8"), "file.xml", true);
+			assertSameInParallel("8", TEXT_CONTENTS.getBytes("UTF-8"), "file.paralleltext", true);
+		} catch (UnsupportedEncodingException e) {
+			fail("9.0", e);
+		}
+	}
+
+	/**
+	 * The content types reported for each file are the ones found from its
+	 * contents and name. Files sharing an extension are reported together, in
+	 * the order they were given.
+	 */
+	public void testFindContentTypesForFiles() {
+		IContentTypeManager manager = Platform.getContentTypeManager();
+		File[] files = new File[] {createFile("b.xml", XML_CONTENTS), createFile("a.txt", TEXT_CONTENTS), createFile("c.xml", XML_CONTENTS), createFile("d.txt", TEXT_CONTENTS)};
+		RecordingRequestor requestor = new RecordingRequestor(Integer.MAX_VALUE);
+		manager.findContentTypesFor(files, requestor);
+		assertEquals("1.0", new Object[] {files[1], files[3], files[0], files[2]}, requestor.accepted.toArray());
+		assertTrue("1.1", requestor.failed.isEmpty());
+		for (int i = 0; i < requestor.accepted.size(); i++) {
+			File file = (File) requestor.accepted.get(i);
+			IContentType[] expected = null;
+			InputStream contents = null;
+			try {
+				contents = new FileInputStream(file);
+				expected = manager.findContentTypesFor(contents, file.getName());
+			} catch (IOException e) {
+				fail("2.0." + i, e);
+			} finally {
+				assertClose(contents);
+			}
+			assertTrue("2.1." + i, expected.length > 0);
+			assertEquals("2.2." + i, getIds(expected), getIds((IContentType[]) requestor.contentTypes.get(i)));
+		}
+	}
+
+	private void assertSameDescription(String message, IContentTypeManager manager, File file) {
+		IContentDescription fromFile = null;
+		IContentDescription fromStream = null;
+		InputStream contents = null;
+		try {
+			fromFile = manager.getDescriptionFor(file, IContentDescription.ALL);
+			contents = new FileInputStream(file);
+			fromStream = manager.getDescriptionFor(contents, file.getName(), IContentDescription.ALL);
+		} catch (IOException e) {
+			fail(message + ".0", e);
+		} finally {
+			assertClose(contents);
+		}
+		assertNotNull(message + ".1", fromStream);
+		assertNotNull(message + ".2", fromFile);
+		assertEquals(message + ".3", fromStream.getContentType().getId(), fromFile.getContentType().getId());
+		assertEquals(message + ".4", fromStream.getCharset(), fromFile.getCharset());
+		assertSame(message + ".5", fromStream.getProperty(IContentDescription.BYTE_ORDER_MARK), fromFile.getProperty(IContentDescription.BYTE_ORDER_MARK));
+	}
+
+	/**
+	 * Describing a file gives the same description as describing its contents
+	 * and name.
+	 */
+	public void testGetDescriptionForFile() {
+		IContentTypeManager manager = Platform.getContentTypeManager();
+		File xml = createFile("file.xml", XML_CONTENTS);
+		assertSameDescription("1", manager, xml);
+		try {
+			assertEquals("1.6", "ISO-8859-1", manager.getDescriptionFor(xml, IContentDescription.ALL).getCharset());
+		} catch (IOException e) {
+			fail("1.7", e);
+		}
+
+		File text = new File(root, "file.txt");
+		try {
+			byte[] textContents = TEXT_CONTENTS.getBytes("UTF-8");
+			byte[] withBOM = new byte[IContentDescription.BOM_UTF_8.length + textContents.length];
+			System.arraycopy(IContentDescription.BOM_UTF_8, 0, withBOM, 0, IContentDescription.BOM_UTF_8.length);
+			System.arraycopy(textContents, 0, withBOM, IContentDescription.BOM_UTF_8.length, textContents.length);
+			createFileInFileSystem(text, new ByteArrayInputStream(withBOM));
+		} catch (IOException e) {
+			fail("2.0", e);
+		}
+		assertSameDescription("2", manager, text);
+		try {
+			assertSame("2.6", IContentDescription.BOM_UTF_8, manager.getDescriptionFor(text, IContentDescription.ALL).getProperty(IContentDescription.BYTE_ORDER_MARK));
+		} catch (IOException e) {
+			fail("2.7", e);
+		}
+
+		// no content type is associated to the file name
+		try {
+			assertNull("3.0", manager.getDescriptionFor(createFile("file.unknownextension", TEXT_CONTENTS), IContentDescription.ALL));
+		} catch (IOException e) {
+			fail("3.1", e);
+		}
+
+		// errors reading the file flow to the caller
+		try {
+			manager.getDescriptionFor(new File(root, "missing.txt"), IContentDescription.ALL);
+			fail("4.0");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Files that cannot be read are reported as failures, and do not stop the
+	 * other files from being matched.
+	 */
+	public void testFindContentTypesForMissingFile() {
+		File missing = new File(root, "missing.txt");
+		File existing = createFile("existing.txt", TEXT_CONTENTS);
+		RecordingRequestor requestor = new RecordingRequestor(Integer.MAX_VALUE);
+		Platform.getContentTypeManager().findContentTypesFor(new File[] {missing, existing}, requestor);
+		assertEquals("1.0", new Object[] {missing}, requestor.failed.toArray());
+		assertTrue("1.1", requestor.exceptions.get(0) instanceof FileNotFoundException);
+		assertEquals("1.2", new Object[] {existing}, requestor.accepted.toArray());
+	}
+
+	/**
+	 * Matching stops as soon as the requestor returns <code>false</code>,
+	 * whether it was given content types or an error.
+	 */
+	public void testFindContentTypesForStops() {
+		IContentTypeManager manager = Platform.getContentTypeManager();
+		File[] files = new File[] {createFile("b.xml", XML_CONTENTS), createFile("a.txt", TEXT_CONTENTS), createFile("c.xml", XML_CONTENTS), createFile("d.txt", TEXT_CONTENTS)};
+		RecordingRequestor requestor = new RecordingRequestor(3);
+		manager.findContentTypesFor(files, requestor);
+		assertEquals("1.0", new Object[] {files[1], files[3], files[0]}, requestor.accepted.toArray());
+
+		File missing = new File(root, "missing.txt");
+		requestor = new RecordingRequestor(1);
+		manager.findContentTypesFor(new File[] {missing, files[1]}, requestor);
+		assertEquals("2.0", new Object[] {missing}, requestor.failed.toArray());
+		assertTrue("2.1", requestor.accepted.isEmpty());
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2003, 2013 IBM Corporation and others.
+ *  Copyright (c) 2003, 2014 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -43,6 +43,9 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(Bug_316839.class);
 		suite.addTestSuite(Bug_320329.class);
 		suite.addTest(Bug_412138.suite());
+		suite.addTestSuite(JobTraceTest.class);
+		suite.addTestSuite(JobFootprintTest.class);
+		suite.addTest(ShutdownPolicyTest.suite());
 		return suite;
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2012 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -466,6 +466,40 @@ public class BeginEndRuleTest extends AbstractJobManagerTest {
 		manager.endRule(rule);
 	}
 
+	/**
+	 * Tests that a thread waiting in beginRule is woken up when its monitor is canceled,
+	 * and is not left interrupted.
+	 */
+	public void testCancelBlockedBeginRule() throws InterruptedException {
+		final ISchedulingRule rule = new IdentityRule();
+		final IProgressMonitor monitor = new NullProgressMonitor();
+		final boolean[] result = new boolean[2];
+		manager.beginRule(rule, null);
+		try {
+			Thread waiter = new Thread("testCancelBlockedBeginRule") {
+				public void run() {
+					try {
+						manager.beginRule(rule, monitor);
+						manager.endRule(rule);
+					} catch (OperationCanceledException e) {
+						result[0] = true;
+					}
+					result[1] = Thread.currentThread().isInterrupted();
+				}
+			};
+			waiter.start();
+			//give the thread a chance to enter the wait loop
+			Thread.sleep(100);
+			monitor.setCanceled(true);
+			waiter.join(10000);
+			assertFalse("1.0", waiter.isAlive());
+			assertTrue("1.1", result[0]);
+			assertFalse("1.2", result[1]);
+		} finally {
+			manager.endRule(rule);
+		}
+	}
+
 	public void testRuleContainment() {
 		ISchedulingRule rules[] = new ISchedulingRule[4];
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2013 IBM Corporation and others.
+ * Copyright (c) 2003, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -402,6 +402,72 @@ public class IJobManagerTest extends AbstractJobManagerTest {
 		}
 	}
 
+	/**
+	 * Tests that the conflict checks between immutable rules are only done once.
+	 */
+	public void testImmutableRuleConflicts() throws InterruptedException {
+		class CountingRule implements IImmutableSchedulingRule {
+			int checks;
+
+			public boolean contains(ISchedulingRule rule) {
+				return rule == this;
+			}
+
+			public synchronized boolean isConflicting(ISchedulingRule rule) {
+				if (rule instanceof CountingRule && rule != this)
+					checks++;
+				return rule instanceof CountingRule;
+			}
+		}
+		CountingRule first = new CountingRule();
+		CountingRule second = new CountingRule();
+		TestJob blocking = new TestJob("testImmutableRuleConflicts", 1000000, 10);
+		blocking.setRule(first);
+		blocking.schedule();
+		waitForStart(blocking);
+		final int JOB_COUNT = 5;
+		TestJob[] jobs = new TestJob[JOB_COUNT];
+		for (int i = 0; i < JOB_COUNT; i++) {
+			jobs[i] = new TestJob("testImmutableRuleConflicts", 1, 1);
+			jobs[i].setRule(second);
+			jobs[i].schedule();
+		}
+		Thread.sleep(100);
+		for (int i = 0; i < JOB_COUNT; i++)
+			assertState("1." + i, jobs[i], Job.WAITING);
+		blocking.cancel();
+		for (int i = 0; i < JOB_COUNT; i++) {
+			jobs[i].join();
+			assertEquals("2." + i, 1, jobs[i].getRunCount());
+		}
+		//each rule was asked about the other one at most once
+		synchronized (first) {
+			assertTrue("3.0: " + first.checks, first.checks <= 1);
+		}
+		synchronized (second) {
+			assertTrue("3.1: " + second.checks, second.checks <= 1);
+		}
+		//the results are remembered after the jobs using the rules are done
+		blocking = new TestJob("testImmutableRuleConflicts", 1000000, 10);
+		blocking.setRule(first);
+		blocking.schedule();
+		waitForStart(blocking);
+		TestJob job = new TestJob("testImmutableRuleConflicts", 1, 1);
+		job.setRule(second);
+		job.schedule();
+		Thread.sleep(100);
+		assertState("4.0", job, Job.WAITING);
+		blocking.cancel();
+		job.join();
+		assertEquals("4.1", 1, job.getRunCount());
+		synchronized (first) {
+			assertTrue("4.2: " + first.checks, first.checks <= 1);
+		}
+		synchronized (second) {
+			assertTrue("4.3: " + second.checks, second.checks <= 1);
+		}
+	}
+
 	public void testJobFamilyCancel() {
 		//test the cancellation of a family of jobs
 		final int NUM_JOBS = 20;
@@ -1502,6 +1568,118 @@ public class IJobManagerTest extends AbstractJobManagerTest {
 			assertState("9.2." + i, family2[i], Job.NONE);
 	}
 
+	public void testJoinAll() throws InterruptedException {
+		final int JOB_COUNT = 20;
+		Job[] jobs = new Job[JOB_COUNT];
+		for (int i = 0; i < JOB_COUNT; i++) {
+			jobs[i] = new TestJob("testJoinAll", 10, 1);
+			jobs[i].schedule();
+		}
+		//a job that is not scheduled is ignored
+		Job idle = new TestJob("testJoinAll", 10, 1);
+		Job[] all = new Job[JOB_COUNT + 1];
+		System.arraycopy(jobs, 0, all, 0, JOB_COUNT);
+		all[JOB_COUNT] = idle;
+		FussyProgressMonitor monitor = new FussyProgressMonitor();
+		monitor.prepare();
+		assertTrue("1.0", manager.joinAll(all, 0, monitor));
+		monitor.sanityCheck();
+		monitor.assertUsedUp();
+		for (int i = 0; i < JOB_COUNT; i++)
+			assertState("1.1." + i, jobs[i], Job.NONE);
+		assertEquals("1.2", 0, ((TestJob) idle).getRunCount());
+	}
+
+	public void testJoinAllTimeout() throws InterruptedException {
+		TestJob fast = new TestJob("testJoinAllTimeout", 1, 1);
+		TestJob slow = new TestJob("testJoinAllTimeout", 1000000, 10);
+		fast.schedule();
+		slow.schedule();
+		try {
+			long start = System.currentTimeMillis();
+			assertFalse("1.0", manager.joinAll(new Job[] {fast, slow}, 200, null));
+			assertTrue("1.1", System.currentTimeMillis() - start >= 200);
+			assertState("1.2", fast, Job.NONE);
+			assertState("1.3", slow, Job.RUNNING);
+		} finally {
+			slow.cancel();
+		}
+		assertTrue("2.0", manager.joinAll(new Job[] {fast, slow}, 0, null));
+		assertState("2.1", slow, Job.NONE);
+	}
+
+	public void testJoinFamilies() throws InterruptedException {
+		final int JOB_COUNT = 10;
+		TestJobFamily first = new TestJobFamily(TestJobFamily.TYPE_ONE);
+		TestJobFamily second = new TestJobFamily(TestJobFamily.TYPE_TWO);
+		TestJobFamily third = new TestJobFamily(TestJobFamily.TYPE_THREE);
+		Job[] jobs = new Job[JOB_COUNT * 2];
+		for (int i = 0; i < JOB_COUNT; i++) {
+			jobs[i] = new FamilyTestJob("testJoinFamilies", 10, 1, TestJobFamily.TYPE_ONE);
+			jobs[i + JOB_COUNT] = new FamilyTestJob("testJoinFamilies", 10, 1, TestJobFamily.TYPE_TWO);
+		}
+		Job other = new FamilyTestJob("testJoinFamilies", 1000000, 10, TestJobFamily.TYPE_THREE);
+		other.schedule();
+		try {
+			for (int i = 0; i < jobs.length; i++)
+				jobs[i].schedule();
+			assertTrue("1.0", manager.joinFamilies(new Object[] {first, second}, 0, null));
+			for (int i = 0; i < jobs.length; i++)
+				assertState("1.1." + i, jobs[i], Job.NONE);
+			//the job of another family is still running
+			assertState("1.2", other, Job.RUNNING);
+			assertFalse("1.3", manager.joinFamilies(new Object[] {third}, 100, null));
+		} finally {
+			other.cancel();
+		}
+		assertTrue("2.0", manager.joinFamilies(new Object[] {third}, 0, null));
+	}
+
+	public void testListenerEventMask() throws InterruptedException {
+		final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+		final Job job = new TestJob("testListenerEventMask", 1, 1);
+		IJobChangeListener listener = new JobChangeAdapter() {
+			public void aboutToRun(IJobChangeEvent event) {
+				if (event.getJob() == job)
+					events.add("aboutToRun");
+			}
+
+			public void done(IJobChangeEvent event) {
+				if (event.getJob() == job)
+					events.add("done");
+			}
+
+			public void running(IJobChangeEvent event) {
+				if (event.getJob() == job)
+					events.add("running");
+			}
+
+			public void scheduled(IJobChangeEvent event) {
+				if (event.getJob() == job)
+					events.add("scheduled");
+			}
+		};
+		manager.addJobChangeListener(listener, IJobManager.EVENT_SCHEDULED | IJobManager.EVENT_DONE);
+		try {
+			job.schedule();
+			job.join();
+			assertEquals("1.0", Arrays.asList(new String[] {"scheduled", "done"}), events);
+			//adding the listener again replaces its mask
+			events.clear();
+			manager.addJobChangeListener(listener, IJobManager.EVENT_RUNNING);
+			job.schedule();
+			job.join();
+			assertEquals("1.1", Arrays.asList(new String[] {"running"}), events);
+		} finally {
+			manager.removeJobChangeListener(listener);
+		}
+		//a removed listener is not notified
+		events.clear();
+		job.schedule();
+		job.join();
+		assertTrue("1.2", events.isEmpty());
+	}
+
 	public void testMutexRule() {
 		final int JOB_COUNT = 10;
 		TestJob[] jobs = new TestJob[JOB_COUNT];
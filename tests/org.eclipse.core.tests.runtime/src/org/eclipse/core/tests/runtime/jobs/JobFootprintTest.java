@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.jobs;
+
+import junit.framework.TestCase;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.*;
+import org.eclipse.core.tests.harness.ObjectFootprint;
+
+/**
+ * Tests the memory footprint of job instances, as computed by {@link ObjectFootprint}.
+ */
+public class JobFootprintTest extends TestCase {
+	/**
+	 * A job without any fields of its own. Must be static so that the size
+	 * of the enclosing test is not included.
+	 */
+	static class EmptyJob extends Job {
+		public EmptyJob() {
+			super("EmptyJob");
+		}
+
+		protected IStatus run(IProgressMonitor monitor) {
+			return Status.OK_STATUS;
+		}
+	}
+
+	public JobFootprintTest() {
+		super();
+	}
+
+	public JobFootprintTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Returns the footprint of the given job, excluding its name.
+	 */
+	private ObjectFootprint sizeOf(Job job, Object[] ignored) {
+		ObjectFootprint result = new ObjectFootprint();
+		result.ignore(job.getName());
+		for (int i = 0; i < ignored.length; i++)
+			result.ignore(ignored[i]);
+		result.measure(job);
+		return result;
+	}
+
+	public void testEmptyJob() {
+		//header, two ints, ten references, two longs and the job state lock
+		int expected = ObjectFootprint.OBJECT_HEADER_SIZE + 2 * 4 + 10 * ObjectFootprint.POINTER_SIZE + 2 * 8 + ObjectFootprint.OBJECT_HEADER_SIZE;
+		int size = sizeOf(new EmptyJob(), new Object[0]).getSize();
+		assertTrue("1.0 job too large: " + size, size <= expected);
+	}
+
+	public void testListenersAllocatedLazily() {
+		Job job = new EmptyJob();
+		IJobChangeListener listener = new JobChangeAdapter();
+		int empty = sizeOf(job, new Object[0]).getSize();
+		job.addJobChangeListener(listener);
+		int withListener = sizeOf(job, new Object[] {listener}).getSize();
+		assertTrue("1.0", empty < withListener);
+	}
+
+	public void testPropertyFootprint() {
+		Job job = new EmptyJob();
+		QualifiedName key = new QualifiedName("org.eclipse.core.tests.runtime", "testPropertyFootprint");
+		job.setProperty(key, "value");
+		ObjectFootprint size = sizeOf(job, new Object[] {key, "value"});
+		//a single property must only need a table of two key/value slots
+		assertEquals("1.0", ObjectFootprint.ARRAY_HEADER_SIZE + 4 * ObjectFootprint.POINTER_SIZE, size.getSize(Object[].class));
+		//removing the last property discards the table
+		job.setProperty(key, null);
+		assertEquals("1.1", sizeOf(new EmptyJob(), new Object[0]).getSize(), sizeOf(job, new Object[0]).getSize());
+	}
+}
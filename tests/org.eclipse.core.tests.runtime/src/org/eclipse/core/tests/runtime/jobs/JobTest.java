@@ -1277,6 +1277,43 @@ public class JobTest extends AbstractJobTest {
 		}
 	}
 
+	/**
+	 * Changing the priority, system and user flags of a job from different
+	 * threads must not lose any of the changes.
+	 */
+	public void testSetPriorityConcurrently() throws InterruptedException {
+		final Job job = new TestJob("testSetPriorityConcurrently");
+		final int count = 100000;
+		Thread priority = new Thread("priority") {
+			public void run() {
+				for (int i = 0; i < count; i++)
+					job.setPriority(i % 2 == 0 ? Job.SHORT : Job.BUILD);
+			}
+		};
+		Thread system = new Thread("system") {
+			public void run() {
+				for (int i = 0; i < count; i++)
+					job.setSystem(i % 2 == 0);
+			}
+		};
+		Thread user = new Thread("user") {
+			public void run() {
+				for (int i = 0; i < count; i++)
+					job.setUser(i % 2 != 0);
+			}
+		};
+		priority.start();
+		system.start();
+		user.start();
+		priority.join();
+		system.join();
+		user.join();
+		assertEquals("1.0", Job.BUILD, job.getPriority());
+		assertTrue("1.1", !job.isSystem());
+		assertTrue("1.2", job.isUser());
+		assertEquals("1.3", Job.NONE, job.getState());
+	}
+
 	/**
 	 * Tests the API methods Job.setProgressGroup
 	 */
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM - Initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.jobs;
+
+import java.io.*;
+import org.eclipse.core.internal.jobs.JobTraceRecorder;
+import org.eclipse.core.internal.jobs.JobTraceReplayer;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Tests recording and replaying of job scheduling traces.
+ */
+public class JobTraceTest extends AbstractJobManagerTest {
+	class TraceJob extends Job {
+		private int reschedules;
+
+		public TraceJob(String name, ISchedulingRule rule, int reschedules) {
+			super(name);
+			setRule(rule);
+			this.reschedules = reschedules;
+		}
+
+		public boolean belongsTo(Object family) {
+			return family == JobTraceTest.this;
+		}
+
+		protected IStatus run(IProgressMonitor monitor) {
+			JobTraceTest.this.sleep(20);
+			if (reschedules-- > 0)
+				schedule(10);
+			return Status.OK_STATUS;
+		}
+	}
+
+	public JobTraceTest() {
+		super();
+	}
+
+	public JobTraceTest(String name) {
+		super(name);
+	}
+
+	private byte[] record(Job[] jobs) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		//only record the jobs of this test, other jobs may run at the same time
+		JobTraceRecorder recorder = new JobTraceRecorder(this);
+		recorder.start(bytes);
+		try {
+			assertTrue("1.0", recorder.isRecording());
+			for (int i = 0; i < jobs.length; i++)
+				jobs[i].schedule();
+			manager.join(this, null);
+		} finally {
+			recorder.stop();
+		}
+		assertFalse("1.1", recorder.isRecording());
+		return bytes.toByteArray();
+	}
+
+	public void testRecordAndReplay() throws Exception {
+		ISchedulingRule rule = new IdentityRule();
+		Job[] jobs = new Job[] {new TraceJob("TraceJob1", rule, 0), new TraceJob("TraceJob2", rule, 2), new TraceJob("TraceJob3", null, 0)};
+		jobs[2].setSystem(true);
+		byte[] trace = record(jobs);
+
+		JobTraceReplayer replayer = new JobTraceReplayer(new ByteArrayInputStream(trace));
+		assertEquals("1.0", 3, replayer.getJobCount());
+		assertEquals("1.1", 1, replayer.getRuleCount());
+		replayer.replay(2.0, null);
+		//the rescheduling job runs three times
+		assertEquals("1.2", 5, replayer.getRunCount());
+		assertEquals("1.3", 5, replayer.getScheduleCount());
+		assertEquals("1.4", 0, manager.find(replayer).length);
+	}
+
+	public void testConflictingRules() throws Exception {
+		ISchedulingRule parent = new PathRule("/testConflictingRules");
+		ISchedulingRule child = new PathRule("/testConflictingRules/child");
+		ISchedulingRule other = new PathRule("/testConflictingRulesOther");
+		Job[] jobs = new Job[] {new TraceJob("TraceJob1", parent, 0), new TraceJob("TraceJob2", child, 0), new TraceJob("TraceJob3", other, 0)};
+		byte[] trace = record(jobs);
+
+		JobTraceReplayer replayer = new JobTraceReplayer(new ByteArrayInputStream(trace));
+		assertEquals("1.0", 3, replayer.getRuleCount());
+		replayer.replay(1.0, null);
+		assertEquals("1.1", 3, replayer.getRunCount());
+	}
+
+	public void testPriorityAndRuleChanges() throws Exception {
+		ISchedulingRule rule = new IdentityRule();
+		ISchedulingRule otherRule = new IdentityRule();
+		TraceJob blocking = new TraceJob("TraceJob1", rule, 0);
+		TraceJob waiting = new TraceJob("TraceJob2", rule, 0);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		JobTraceRecorder recorder = new JobTraceRecorder(this);
+		recorder.start(bytes);
+		try {
+			blocking.schedule();
+			waiting.schedule();
+			//changes while the job is waiting
+			waiting.setPriority(Job.DECORATE);
+			waiting.setPriority(Job.SHORT);
+			manager.join(this, null);
+			//changes between the times the job is scheduled
+			waiting.setRule(otherRule);
+			waiting.setPriority(Job.LONG);
+			waiting.schedule();
+			manager.join(this, null);
+		} finally {
+			recorder.stop();
+		}
+
+		JobTraceReplayer replayer = new JobTraceReplayer(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals("1.0", 2, replayer.getJobCount());
+		assertEquals("1.1", 2, replayer.getRuleCount());
+		assertEquals("1.2", 4, replayer.getChangeCount());
+		replayer.replay(2.0, null);
+		assertEquals("1.3", 3, replayer.getRunCount());
+		assertEquals("1.4", 0, manager.find(replayer).length);
+	}
+
+	/**
+	 * Rules are asked about their conflicts without holding the monitor of the
+	 * recorder, which would keep other events from being recorded.
+	 */
+	public void testConflictsOutsideRecorder() throws Exception {
+		final JobTraceRecorder recorder = new JobTraceRecorder(this);
+		final boolean[] locked = new boolean[1];
+		ISchedulingRule first = new IdentityRule();
+		ISchedulingRule second = new IdentityRule() {
+			public boolean isConflicting(ISchedulingRule rule) {
+				if (Thread.holdsLock(recorder))
+					locked[0] = true;
+				return super.isConflicting(rule);
+			}
+		};
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		recorder.start(bytes);
+		try {
+			new TraceJob("TraceJob1", first, 0).schedule();
+			new TraceJob("TraceJob2", second, 0).schedule();
+			manager.join(this, null);
+		} finally {
+			recorder.stop();
+		}
+		assertFalse("1.0", locked[0]);
+		JobTraceReplayer replayer = new JobTraceReplayer(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals("1.1", 2, replayer.getRuleCount());
+	}
+
+	public void testInvalidTrace() {
+		try {
+			new JobTraceReplayer(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+			fail("1.0");
+		} catch (IOException e) {
+			//expected
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.jobs;
+
+import java.io.*;
+import java.util.*;
+import junit.framework.*;
+import org.eclipse.core.internal.jobs.JobManager;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.ShutdownPolicy;
+import org.eclipse.core.tests.harness.FileSystemHelper;
+import org.eclipse.core.tests.harness.TestBarrier;
+import org.eclipse.core.tests.runtime.RuntimeTestsPlugin;
+import org.eclipse.core.tests.session.SessionTestSuite;
+
+/**
+ * Tests how the job manager applies its shutdown policy to the jobs running
+ * when it is shut down. Shutting down the job manager leaves it unusable, so
+ * the scenario runs in its own session, and a second session reports its result.
+ */
+public class ShutdownPolicyTest extends TestCase {
+	private static final String FILE_NAME = FileSystemHelper.getTempDir().append(ShutdownPolicyTest.class.getName()).toOSString();
+	private static final long DRAIN_TIMEOUT = 500;
+
+	/**
+	 * A policy remembering how it was called, for the jobs of this test only.
+	 */
+	static class RecordingPolicy extends ShutdownPolicy {
+		final Set interruptible = new HashSet();
+		final List asked = Collections.synchronizedList(new ArrayList());
+		// job name -> Object[] {Long delay, Boolean ended}
+		final Map delayed = Collections.synchronizedMap(new HashMap());
+
+		public long getDrainTimeout() {
+			return DRAIN_TIMEOUT;
+		}
+
+		public boolean shouldInterrupt(Job job) {
+			asked.add(job.getName());
+			return interruptible.contains(job.getName());
+		}
+
+		public void shutdownDelayed(Job job, long delay, boolean ended) {
+			delayed.put(job.getName(), new Object[] {new Long(delay), Boolean.valueOf(ended)});
+		}
+	}
+
+	public static Test suite() {
+		SessionTestSuite suite = new SessionTestSuite(RuntimeTestsPlugin.PI_RUNTIME_TESTS, ShutdownPolicyTest.class.getName());
+		suite.addTest(new ShutdownPolicyTest("testDefaultPolicy"));
+		suite.addCrashTest(new ShutdownPolicyTest("testRunScenario"));
+		suite.addTest(new ShutdownPolicyTest("testVerifyResult"));
+		return suite;
+	}
+
+	public ShutdownPolicyTest(String name) {
+		super(name);
+	}
+
+	private void assertDelayed(String message, RecordingPolicy policy, String jobName, long minDelay, long maxDelay, boolean ended) {
+		Object[] record = (Object[]) policy.delayed.get(jobName);
+		assertNotNull(message + ".0", record);
+		long delay = ((Long) record[0]).longValue();
+		assertTrue(message + ".1 delay: " + delay, delay >= minDelay && delay < maxDelay);
+		assertEquals(message + ".2", ended, ((Boolean) record[1]).booleanValue());
+	}
+
+	public void testDefaultPolicy() {
+		ShutdownPolicy policy = new ShutdownPolicy();
+		assertEquals("1.0", ShutdownPolicy.DEFAULT_DRAIN_TIMEOUT, policy.getDrainTimeout());
+		assertFalse("1.1", policy.shouldInterrupt(new Job("testDefaultPolicy") {
+			protected IStatus run(IProgressMonitor monitor) {
+				return Status.OK_STATUS;
+			}
+		}));
+	}
+
+	public void testRunScenario() {
+		// delete the file so that we don't report previous results
+		new File(FILE_NAME).delete();
+		final int[] status = {TestBarrier.STATUS_START, TestBarrier.STATUS_START, TestBarrier.STATUS_START};
+		final boolean[] release = {false};
+		// ends as soon as it is canceled
+		Job cooperative = new Job("Cooperative") {
+			protected IStatus run(IProgressMonitor monitor) {
+				status[0] = TestBarrier.STATUS_RUNNING;
+				while (!monitor.isCanceled())
+					Thread.yield();
+				return Status.CANCEL_STATUS;
+			}
+		};
+		// ignores cancelation, but ends when interrupted
+		Job interruptible = new Job("Interruptible") {
+			protected IStatus run(IProgressMonitor monitor) {
+				status[1] = TestBarrier.STATUS_RUNNING;
+				try {
+					Thread.sleep(60000);
+				} catch (InterruptedException e) {
+					// interrupted on shutdown
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		// ignores cancelation and interruption, until released
+		Job stubborn = new Job("Stubborn") {
+			protected IStatus run(IProgressMonitor monitor) {
+				status[2] = TestBarrier.STATUS_RUNNING;
+				synchronized (release) {
+					while (!release[0])
+						try {
+							release.wait();
+						} catch (InterruptedException e) {
+							// keep running
+						}
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		RecordingPolicy policy = new RecordingPolicy();
+		policy.interruptible.add(interruptible.getName());
+		policy.interruptible.add(stubborn.getName());
+		try {
+			Job.getJobManager().setShutdownPolicy(policy);
+			cooperative.schedule();
+			interruptible.schedule();
+			stubborn.schedule();
+			for (int i = 0; i < status.length; i++)
+				TestBarrier.waitForStatus(status, i, TestBarrier.STATUS_RUNNING);
+			long start = System.currentTimeMillis();
+			JobManager.shutdown();
+			long duration = System.currentTimeMillis() - start;
+			// the interruption makes the job manager wait a second time
+			assertTrue("1.0 shutdown took: " + duration, duration >= 2 * DRAIN_TIMEOUT && duration < 4 * DRAIN_TIMEOUT);
+			// only the jobs still running after the drain timeout may be interrupted
+			assertFalse("2.0", policy.asked.contains(cooperative.getName()));
+			assertTrue("2.1", policy.asked.contains(interruptible.getName()));
+			assertTrue("2.2", policy.asked.contains(stubborn.getName()));
+			assertDelayed("3", policy, cooperative.getName(), 0, DRAIN_TIMEOUT, true);
+			assertDelayed("4", policy, interruptible.getName(), DRAIN_TIMEOUT, 2 * DRAIN_TIMEOUT, true);
+			assertDelayed("5", policy, stubborn.getName(), 2 * DRAIN_TIMEOUT, 4 * DRAIN_TIMEOUT, false);
+		} catch (Throwable e) {
+			// the job manager can't be used anymore, so the test result can't be reported
+			// from this session; serialize the error to a helper file
+			try {
+				ObjectOutputStream stream = new ObjectOutputStream(new FileOutputStream(FILE_NAME));
+				stream.writeObject(e);
+				stream.close();
+			} catch (IOException e1) {
+				// we can't do anything if saving the error failed
+				// print the original error, so that there is at least some trace
+				e.printStackTrace();
+			}
+		} finally {
+			synchronized (release) {
+				release[0] = true;
+				release.notifyAll();
+			}
+			// make sure the test always crashes to satisfy addCrashTest method contract
+			// test result will be verified by the testVerifyResult method
+			System.exit(1);
+		}
+	}
+
+	public void testVerifyResult() throws Throwable {
+		File file = new File(FILE_NAME);
+		// if the file does not exist, the scenario passed
+		if (file.exists()) {
+			try {
+				ObjectInputStream stream = new ObjectInputStream(new FileInputStream(FILE_NAME));
+				Throwable e = (Throwable) stream.readObject();
+				stream.close();
+				throw e;
+			} finally {
+				// helper file is no longer needed
+				file.delete();
+			}
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.perf;
+
+import java.io.*;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.eclipse.core.internal.content.ContentTypeManager;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.content.*;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.core.tests.runtime.RuntimeTest;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
+
+/**
+ * Measures content type lookups against catalogs of synthetic content types
+ * of increasing size, so regressions in how lookups scale show up.
+ */
+public class ContentTypeBenchmarks extends RuntimeTest {
+	private static final int SMALL_CATALOG = 100;
+	private static final int MEDIUM_CATALOG = 1000;
+	private static final int LARGE_CATALOG = 5000;
+	// number of lookups made in each measurement, whatever the catalog size
+	private static final int NAME_LOOKUPS = 1000;
+	private static final int CONTENT_LOOKUPS = 20;
+	private static final int THREADS = 8;
+	private static final String TEST_DATA_ID = "org.eclipse.core.tests.runtime.contenttype.perf.synthetic";
+
+	private SyntheticContentTypes catalog;
+	private Bundle installed;
+
+	public static Test suite() {
+		return new TestSuite(ContentTypeBenchmarks.class);
+	}
+
+	public ContentTypeBenchmarks(String name) {
+		super(name);
+	}
+
+	private int countSyntheticContentTypes(IContentType[] all) {
+		String namespace = TEST_DATA_ID + '.';
+		int count = 0;
+		for (int i = 0; i < all.length; i++)
+			if (all[i].getId().startsWith(namespace))
+				count++;
+		return count;
+	}
+
+	private void findByContents(IContentTypeManager manager, int kind) throws IOException {
+		String fileName = catalog.getKindFileName(kind);
+		// spread the lookups over the content types of the kind
+		int step = Math.max(1, catalog.getSize() / CONTENT_LOOKUPS);
+		for (int i = kind; i < catalog.getSize(); i += step) {
+			if (catalog.getKind(i) != kind)
+				continue;
+			IContentType found = manager.findContentTypeFor(new ByteArrayInputStream(catalog.getContents(i)), fileName);
+			assertNotNull("1.0." + i, found);
+			if (kind == SyntheticContentTypes.TEXT)
+				assertTrue("1.1." + i, found.isKindOf(manager.getContentType(IContentTypeManager.CT_TEXT)));
+			else
+				assertEquals("1.2." + i, catalog.getContentTypeId(i), found.getId());
+		}
+	}
+
+	private void findByName(IContentTypeManager manager) {
+		for (int i = 0; i < NAME_LOOKUPS; i++) {
+			int number = (int) ((long) i * catalog.getSize() / NAME_LOOKUPS);
+			IContentType found = manager.findContentTypeFor(catalog.getFileName(number));
+			assertNotNull("1.0." + number, found);
+			assertEquals("1.1." + number, catalog.getContentTypeId(number), found.getId());
+		}
+	}
+
+	public IPath getExtraPluginLocation() {
+		return getTempDir().append(TEST_DATA_ID);
+	}
+
+	/**
+	 * Contributes a catalog of the given number of synthetic content types, and
+	 * warms up the content type manager with it.
+	 */
+	private IContentTypeManager installCatalog(int size) {
+		catalog = new SyntheticContentTypes(TEST_DATA_ID, size);
+		try {
+			installed = catalog.install(getExtraPluginLocation(), PI_RUNTIME_TESTS);
+		} catch (IOException e) {
+			fail("0.1", e);
+		} catch (BundleException e) {
+			fail("0.2", e);
+		}
+		IContentTypeManager manager = Platform.getContentTypeManager();
+		// sanity check to make sure we are running with good data
+		assertEquals("0.3", size, countSyntheticContentTypes(manager.getAllContentTypes()));
+		return manager;
+	}
+
+	protected void tearDown() throws Exception {
+		if (installed != null) {
+			SyntheticContentTypes.uninstallPlugin(installed);
+			installed = null;
+		}
+		ensureDoesNotExistInFileSystem(getExtraPluginLocation().toFile());
+		super.tearDown();
+	}
+
+	private void benchmarkNameLookup(int size) {
+		final IContentTypeManager manager = installCatalog(size);
+		// warm up
+		findByName(manager);
+		new PerformanceTestRunner() {
+			protected void test() {
+				findByName(manager);
+			}
+		}.run(this, 10, 20);
+	}
+
+	private void benchmarkContentLookup(final int kind) {
+		final IContentTypeManager manager = installCatalog(MEDIUM_CATALOG);
+		new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					findByContents(manager, kind);
+				} catch (IOException e) {
+					fail("2.0", e);
+				}
+			}
+		}.run(this, 10, 5);
+	}
+
+	private void benchmarkCatalogRebuild(int size) {
+		installCatalog(size);
+		new PerformanceTestRunner() {
+			protected void test() {
+				// a new manager has no catalog yet, any interaction builds one
+				new ContentTypeManager().getContentType(IContentTypeManager.CT_TEXT);
+			}
+		}.run(this, 10, 5);
+	}
+
+	public void testBinaryContentLookup() {
+		benchmarkContentLookup(SyntheticContentTypes.BINARY);
+	}
+
+	public void testCatalogRebuildLarge() {
+		benchmarkCatalogRebuild(LARGE_CATALOG);
+	}
+
+	public void testCatalogRebuildMedium() {
+		benchmarkCatalogRebuild(MEDIUM_CATALOG);
+	}
+
+	public void testCatalogRebuildSmall() {
+		benchmarkCatalogRebuild(SMALL_CATALOG);
+	}
+
+	/**
+	 * Many threads looking up content types in the same catalog at once, by
+	 * name and by contents.
+	 */
+	public void testConcurrentLookup() {
+		final IContentTypeManager manager = installCatalog(MEDIUM_CATALOG);
+		final Throwable[] failure = new Throwable[1];
+		new PerformanceTestRunner() {
+			protected void test() {
+				Thread[] threads = new Thread[THREADS];
+				for (int i = 0; i < threads.length; i++) {
+					final int kind = i % 2 == 0 ? SyntheticContentTypes.BINARY : SyntheticContentTypes.XML;
+					threads[i] = new Thread("Content type lookup " + i) {
+						public void run() {
+							try {
+								findByName(manager);
+								findByContents(manager, kind);
+							} catch (Throwable e) {
+								synchronized (failure) {
+									if (failure[0] == null)
+										failure[0] = e;
+								}
+							}
+						}
+					};
+				}
+				for (int i = 0; i < threads.length; i++)
+					threads[i].start();
+				for (int i = 0; i < threads.length; i++)
+					try {
+						threads[i].join();
+					} catch (InterruptedException e) {
+						fail("3.0", e);
+					}
+			}
+		}.run(this, 10, 1);
+		if (failure[0] != null)
+			fail("3.1", failure[0]);
+	}
+
+	/** Content descriptions asking for the charset and the byte order mark. */
+	public void testDescriptionWithOptions() {
+		final IContentTypeManager manager = installCatalog(MEDIUM_CATALOG);
+		final QualifiedName[] options = new QualifiedName[] {IContentDescription.CHARSET, IContentDescription.BYTE_ORDER_MARK};
+		// the first content type of each kind is numbered after its kind
+		final int xmlType = SyntheticContentTypes.XML;
+		final int textType = SyntheticContentTypes.TEXT;
+		new PerformanceTestRunner() {
+			protected void test() {
+				try {
+					IContentDescription description = manager.getDescriptionFor(new ByteArrayInputStream(catalog.getContents(xmlType)), catalog.getKindFileName(xmlType), options);
+					assertNotNull("4.0", description);
+					assertEquals("4.1", "ISO-8859-1", description.getCharset());
+					description = manager.getDescriptionFor(new ByteArrayInputStream(catalog.getContents(textType)), catalog.getKindFileName(textType), options);
+					assertNotNull("4.2", description);
+					assertEquals("4.3", IContentDescription.BOM_UTF_8, description.getProperty(IContentDescription.BYTE_ORDER_MARK));
+				} catch (IOException e) {
+					fail("4.4", e);
+				}
+			}
+		}.run(this, 10, 20);
+	}
+
+	public void testNameLookupLarge() {
+		benchmarkNameLookup(LARGE_CATALOG);
+	}
+
+	public void testNameLookupMedium() {
+		benchmarkNameLookup(MEDIUM_CATALOG);
+	}
+
+	public void testNameLookupSmall() {
+		benchmarkNameLookup(SMALL_CATALOG);
+	}
+
+	public void testTextContentLookup() {
+		benchmarkContentLookup(SyntheticContentTypes.TEXT);
+	}
+
+	public void testXMLContentLookup() {
+		benchmarkContentLookup(SyntheticContentTypes.XML);
+	}
+}
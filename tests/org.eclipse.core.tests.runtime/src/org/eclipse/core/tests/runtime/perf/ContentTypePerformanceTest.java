@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2012 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,7 +12,6 @@ package org.eclipse.core.tests.runtime.perf;
 
 import java.io.*;
 import java.net.MalformedURLException;
-import java.net.URL;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.internal.content.*;
@@ -164,49 +163,20 @@ public class ContentTypePerformanceTest extends RuntimeTest {
 	}
 
 	private Bundle installContentTypes(String tag, int numberOfLevels, int nodesPerLevel) {
-		TestRegistryChangeListener listener = new TestRegistryChangeListener(Platform.PI_RUNTIME, ContentTypeBuilder.PT_CONTENTTYPES, null, null);
+		StringWriter contentTypes = new StringWriter();
+		try {
+			String root = createContentType(contentTypes, 0, null);
+			createContentTypes(contentTypes, root, 1, numberOfLevels, nodesPerLevel);
+		} catch (IOException e) {
+			fail(tag + ".1.0", e);
+		}
 		Bundle installed = null;
-		listener.register();
 		try {
-			IPath pluginLocation = getExtraPluginLocation();
-			pluginLocation.toFile().mkdirs();
-			URL installURL = null;
-			try {
-				installURL = pluginLocation.toFile().toURL();
-			} catch (MalformedURLException e) {
-				fail(tag + ".0.5", e);
-			}
-			Writer writer = null;
-			try {
-				writer = new BufferedWriter(new FileWriter(pluginLocation.append("plugin.xml").toFile()), 0x10000);
-				writer.write("<plugin id=\"" + TEST_DATA_ID + "\" name=\"Content Type Performance Test Data\" version=\"1\">");
-				writer.write(System.getProperty("line.separator"));
-				writer.write("<requires><import plugin=\"" + PI_RUNTIME_TESTS + "\"/></requires>");
-				writer.write(System.getProperty("line.separator"));
-				writer.write("<extension point=\"org.eclipse.core.runtime.contentTypes\">");
-				writer.write(System.getProperty("line.separator"));
-				String root = createContentType(writer, 0, null);
-				createContentTypes(writer, root, 1, numberOfLevels, nodesPerLevel);
-				writer.write("</extension></plugin>");
-			} catch (IOException e) {
-				fail(tag + ".1.0", e);
-			} finally {
-				if (writer != null)
-					try {
-						writer.close();
-					} catch (IOException e) {
-						fail("1.1", e);
-					}
-			}
-			try {
-				installed = RuntimeTestsPlugin.getContext().installBundle(installURL.toExternalForm());
-			} catch (BundleException e) {
-				fail(tag + ".3.0", e);
-			}
-			BundleTestingHelper.refreshPackages(RuntimeTestsPlugin.getContext(), new Bundle[] {installed});
-			assertTrue(tag + ".4.0", listener.eventReceived(10000));
-		} finally {
-			listener.unregister();
+			installed = SyntheticContentTypes.installPlugin(getExtraPluginLocation(), TEST_DATA_ID, PI_RUNTIME_TESTS, contentTypes.toString());
+		} catch (IOException e) {
+			fail(tag + ".2.0", e);
+		} catch (BundleException e) {
+			fail(tag + ".3.0", e);
 		}
 		return installed;
 	}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.tests.runtime.perf;
+
+import java.io.*;
+import junit.framework.Assert;
+import org.eclipse.core.internal.content.ContentTypeBuilder;
+import org.eclipse.core.internal.content.TextContentDescriber;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.content.*;
+import org.eclipse.core.tests.harness.BundleTestingHelper;
+import org.eclipse.core.tests.harness.TestRegistryChangeListener;
+import org.eclipse.core.tests.runtime.RuntimeTestsPlugin;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
+
+/**
+ * Generates a plug-in contributing a catalog of synthetic content types of any
+ * size, so the cost of lookups can be measured as the catalog grows.
+ * <p>
+ * Content types come in three kinds, in turn: binary types recognized by a
+ * signature, XML types recognized by their root element and text types that
+ * cannot be told apart by their contents. Each content type has its own file
+ * extension, and shares another one with all the types of its kind, so lookups
+ * for the shared extension have to run the describers of the whole kind.
+ * </p>
+ * <p>
+ * Also installs and uninstalls the plug-ins contributing content types to
+ * the running platform, for any content type tests.
+ * </p>
+ */
+public class SyntheticContentTypes {
+	public static final int BINARY = 0;
+	public static final int XML = 1;
+	public static final int TEXT = 2;
+	private static final String CT_XML = "org.eclipse.core.runtime.xml";
+	private static final String[] KIND_EXTENSIONS = {"synthbin", "synthxml", "synthtxt"};
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	// how long to wait for the registry to see the content types of a plug-in
+	private static final long REGISTRY_TIMEOUT = 10000;
+
+	private final String pluginId;
+	private final int size;
+
+	/**
+	 * Installs a plug-in contributing the given elements to the content types
+	 * extension point, and waits until the registry has seen them.
+	 * 
+	 * @param location where to create the plug-in
+	 * @param pluginId the id of the plug-in
+	 * @param requiredPluginId the id of the plug-in it requires
+	 * @param contentTypes the elements of its content types extension
+	 * @return the installed plug-in
+	 */
+	public static Bundle installPlugin(IPath location, String pluginId, String requiredPluginId, String contentTypes) throws IOException, BundleException {
+		location.toFile().mkdirs();
+		Writer writer = new BufferedWriter(new FileWriter(location.append("plugin.xml").toFile()), 0x10000);
+		try {
+			writer.write("<plugin id=\"" + pluginId + "\" name=\"" + pluginId + "\" version=\"1\">");
+			writer.write(LINE_SEPARATOR);
+			writer.write("<requires><import plugin=\"" + requiredPluginId + "\"/></requires>");
+			writer.write(LINE_SEPARATOR);
+			writer.write("<extension point=\"org.eclipse.core.runtime.contentTypes\">");
+			writer.write(LINE_SEPARATOR);
+			writer.write(contentTypes);
+			writer.write("</extension></plugin>");
+		} finally {
+			writer.close();
+		}
+		TestRegistryChangeListener listener = new TestRegistryChangeListener(Platform.PI_RUNTIME, ContentTypeBuilder.PT_CONTENTTYPES, null, null);
+		listener.register();
+		try {
+			Bundle installed = RuntimeTestsPlugin.getContext().installBundle(location.toFile().toURL().toExternalForm());
+			BundleTestingHelper.refreshPackages(RuntimeTestsPlugin.getContext(), new Bundle[] {installed});
+			Assert.assertTrue("Content types not contributed: " + pluginId, listener.eventReceived(REGISTRY_TIMEOUT));
+			return installed;
+		} finally {
+			listener.unregister();
+		}
+	}
+
+	/**
+	 * Uninstalls a plug-in installed by {@link #installPlugin(IPath, String, String, String)},
+	 * and waits until the registry has seen its content types go.
+	 */
+	public static void uninstallPlugin(Bundle installed) throws BundleException {
+		TestRegistryChangeListener listener = new TestRegistryChangeListener(Platform.PI_RUNTIME, ContentTypeBuilder.PT_CONTENTTYPES, null, null);
+		listener.register();
+		try {
+			installed.uninstall();
+			BundleTestingHelper.refreshPackages(RuntimeTestsPlugin.getContext(), new Bundle[] {installed});
+			Assert.assertTrue("Content types not removed: " + installed.getSymbolicName(), listener.eventReceived(REGISTRY_TIMEOUT));
+		} finally {
+			listener.unregister();
+		}
+	}
+
+	public SyntheticContentTypes(String pluginId, int size) {
+		this.pluginId = pluginId;
+		this.size = size;
+	}
+
+	/**
+	 * Returns contents recognized by the given content type only, among the
+	 * types of its kind. Text contents are the same for all text types.
+	 */
+	public byte[] getContents(int number) {
+		try {
+			switch (getKind(number)) {
+				case BINARY :
+					byte[] signature = getSignature(number);
+					byte[] result = new byte[signature.length + 64];
+					System.arraycopy(signature, 0, result, 0, signature.length);
+					return result;
+				case XML :
+					return ("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>" + LINE_SEPARATOR + "<root" + number + "><child/></root" + number + ">").getBytes("ISO-8859-1");
+				default :
+					byte[] text = "Some synthetic text contents".getBytes("UTF-8");
+					byte[] withBOM = new byte[IContentDescription.BOM_UTF_8.length + text.length];
+					System.arraycopy(IContentDescription.BOM_UTF_8, 0, withBOM, 0, IContentDescription.BOM_UTF_8.length);
+					System.arraycopy(text, 0, withBOM, IContentDescription.BOM_UTF_8.length, text.length);
+					return withBOM;
+			}
+		} catch (UnsupportedEncodingException e) {
+			// both encodings are always supported
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
+	public String getContentTypeId(int number) {
+		return pluginId + ".synthetic" + number;
+	}
+
+	/**
+	 * Returns a file name associated with the given content type only.
+	 */
+	public String getFileName(int number) {
+		return "file.synth" + number;
+	}
+
+	public int getKind(int number) {
+		return number % KIND_EXTENSIONS.length;
+	}
+
+	/**
+	 * Returns a file name associated with all the content types of the given kind.
+	 */
+	public String getKindFileName(int kind) {
+		return "file." + KIND_EXTENSIONS[kind];
+	}
+
+	private byte[] getSignature(int number) {
+		byte[] result = new byte[4];
+		for (int i = 0; i < result.length; i++)
+			result[i] = (byte) ((number >> (i * 8)) & 0xFFL);
+		return result;
+	}
+
+	private String getSignatureString(int number) {
+		byte[] signature = getSignature(number);
+		StringBuffer result = new StringBuffer(signature.length * 3 - 1);
+		for (int i = 0; i < signature.length; i++) {
+			result.append(Integer.toHexString(0xFF & signature[i]));
+			result.append(' ');
+		}
+		result.deleteCharAt(result.length() - 1);
+		return result.toString();
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	private void writeContentType(Writer writer, int number) throws IOException {
+		int kind = getKind(number);
+		writer.write("<content-type id=\"synthetic" + number + "\" name=\"Synthetic " + number + "\" ");
+		writer.write("file-extensions=\"synth" + number + "," + KIND_EXTENSIONS[kind] + "\" ");
+		switch (kind) {
+			case BINARY :
+				writer.write("describer=\"" + BinarySignatureDescriber.class.getName() + ":" + getSignatureString(number) + "\"");
+				break;
+			case XML :
+				writer.write("base-type=\"" + CT_XML + "\" ");
+				writer.write("describer=\"" + XMLRootElementContentDescriber2.class.getName() + ":root" + number + "\"");
+				break;
+			default :
+				writer.write("base-type=\"" + IContentTypeManager.CT_TEXT + "\" ");
+				writer.write("describer=\"" + TextContentDescriber.class.getName() + "\"");
+		}
+		writer.write("/>");
+		writer.write(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Installs a plug-in contributing the catalog.
+	 * 
+	 * @see #installPlugin(IPath, String, String, String)
+	 */
+	public Bundle install(IPath location, String requiredPluginId) throws IOException, BundleException {
+		StringWriter contentTypes = new StringWriter();
+		for (int i = 0; i < size; i++)
+			writeContentType(contentTypes, i);
+		return installPlugin(location, pluginId, requiredPluginId, contentTypes.toString());
+	}
+}